@@ -0,0 +1,23 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//Точка входа benchmarks.jar. Принимает обычные ключи JMH и всегда включает профилировщик аллокаций (-prof gc).
+//Примеры:
+//  java -jar target/benchmarks.jar CatalogBenchmark -p catalogSize=12,100000 -t 4
+//  java -jar target/benchmarks.jar -rf json -rff baseline.json    (сохранить базовую линию для сравнения)
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(cmdOptions)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,70 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Горячие пути каталога: выдача товара со списанием остатка, чтение остатка и поиск.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CatalogBenchmark {
+
+    @Benchmark
+    public Item getItemById(CatalogState state, CatalogState.Cursor cursor) {
+        return state.catalog.getItemById(state.id(cursor.next()));
+    }
+
+    @Benchmark
+    public int getCountForItem(CatalogState state, CatalogState.Cursor cursor) {
+        return state.catalog.getCountForItem(state.item(cursor.next()));
+    }
+
+    //"Ноутбуки в наличии дешевле 90000, по цене, страница 3"
+    @Benchmark
+    public List<Item> findItems(CatalogState state) {
+        return state.catalog.findItems(Category.LAPTOPS, 0, 9_000_000, true, 2, 20);
+    }
+
+    //Автодополнение: пользователь набрал начало слова
+    @Benchmark
+    public List<Item> searchByPrefix(CatalogState state) {
+        return state.catalog.searchItems("тов", 10);
+    }
+
+    //Несколько слов, последнее - префикс, которому соответствует много разных слов словаря
+    @Benchmark
+    public List<Item> searchByWords(CatalogState state) {
+        return state.catalog.searchItems("товар 1234", 10);
+    }
+
+    //Распродажа: все потоки покупают и возвращают один и тот же товар (запускать с -t по числу ядер).
+    //split=true - остаток товара заранее разделён на шарды по ядрам.
+    @State(Scope.Benchmark)
+    public static class HotItemState {
+        @Param({"false", "true"})
+        public boolean split;
+
+        public Catalog catalog;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            catalog = new Catalog();
+            catalog.addItem(catalog.getItemInfo(1), 1 << 30);
+            if (split) catalog.splitStock(1);
+        }
+    }
+
+    @Benchmark
+    public boolean reserveHotItem(HotItemState state) {
+        boolean reserved = state.catalog.tryReserve(1, 1);
+        if (reserved) state.catalog.release(1, 1);
+        return reserved;
+    }
+}
@@ -0,0 +1,67 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.util.SplittableRandom;
+
+//Общий для бенчмарков каталог заданного размера.
+//Размер задаётся параметром catalogSize (например, -p catalogSize=12,100000,10000000).
+@State(Scope.Benchmark)
+public class CatalogState {
+    //Размер выборки случайных id: степень двойки, чтобы индекс вычислялся маской
+    static final int ID_SAMPLE = 1 << 12;
+
+    @Param({"12", "100000", "10000000"})
+    public int catalogSize;
+
+    public Catalog catalog;
+    public Item[] items;    //Товары каталога, items[i] - товар с id i + 1
+    public int[] ids;       //Случайные id товаров в порядке обращения
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = new Catalog();
+        items = new Item[Math.max(catalogSize, 12)];
+        Category[] categories = Category.values();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int id = 1; id <= items.length; id++) {
+            Item item = id <= 12
+                    ? catalog.getItemById(id)   //Товары из стандартного наполнения каталога
+                    : new Item(id, "Товар " + id, categories[id % categories.length], 1000 + random.nextInt(200_000));
+            //Остаток с запасом, чтобы товар не закончился за время замера
+            catalog.addItem(item, Integer.MAX_VALUE);
+            items[id - 1] = item;
+        }
+        catalog.searchItems("товар", 1);     //Поисковый индекс строится заранее, а не во время замера
+        ids = new int[ID_SAMPLE];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1 + random.nextInt(items.length);
+        }
+    }
+
+    public Item item(int cursor) {
+        return items[ids[cursor & (ID_SAMPLE - 1)] - 1];
+    }
+
+    public int id(int cursor) {
+        return ids[cursor & (ID_SAMPLE - 1)];
+    }
+
+    //Позиция потока в выборке случайных id
+    @State(Scope.Thread)
+    public static class Cursor {
+        public int value;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            value = (int) Thread.currentThread().threadId() * 7919;
+        }
+
+        public int next() {
+            return value++;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.CatalogUpdate;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.util.concurrent.TimeUnit;
+
+//Переоценка всего каталога одной версией (Catalog.update): сборка обновления и публикация.
+//Группа repriceWhileSelling - переоценка и списания одновременно: списания не ждут публикации версии,
+//время списания в группе сравнимо с одиночным getItemById из CatalogBenchmark.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CatalogUpdateBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class UpdateState {
+        @Param({"1000000"})
+        public int catalogSize;
+
+        public Catalog catalog;
+        public long round;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            catalog = new Catalog();
+            Category[] categories = Category.values();
+            for (int id = 13; id <= catalogSize; id++) {
+                catalog.addItem(Item.ofKopecks(id, "Товар " + id, categories[id % categories.length], 1000 + id), Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    @Benchmark
+    public long repriceAll(UpdateState state) {
+        return reprice(state);
+    }
+
+    @Benchmark
+    @Group("repriceWhileSelling")
+    public long repriceInGroup(UpdateState state) {
+        return reprice(state);
+    }
+
+    @Benchmark
+    @Group("repriceWhileSelling")
+    public Item sell(UpdateState state, CatalogState.Cursor cursor) {
+        return state.catalog.getItemById(13 + (cursor.next() & 0xFFFF));
+    }
+
+    private static long reprice(UpdateState state) {
+        long round = ++state.round;
+        CatalogUpdate update = state.catalog.update();
+        for (int id = 13; id <= state.catalogSize; id++) update.price(id, 1000 + id + round);
+        return update.publish().getNumber();
+    }
+}
@@ -0,0 +1,47 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.core.ChangeEvent;
+import ru.inno.market.core.ChangeEventBus;
+
+import java.util.concurrent.TimeUnit;
+
+//Цена публикации события в шину ChangeEventBus на пути изменения.
+//publish - без подписчиков: захват ячейки, запись полей, публикация номера.
+//publishAndDrain - с подписчиком, который разбирает кольцо пачками в том же потоке (цена включает чтение).
+//С -prof gc видно, что публикация не создаёт объектов.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EventBusBenchmark {
+
+    @State(Scope.Thread)
+    public static class BusState {
+        public ChangeEventBus bus;
+        public ChangeEventBus drained;
+        public ChangeEventBus.Subscription subscription;
+        public long sum;
+        public int itemId;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            bus = new ChangeEventBus(ChangeEventBus.DEFAULT_CAPACITY, ChangeEventBus.Backpressure.DROP);
+            drained = new ChangeEventBus(ChangeEventBus.DEFAULT_CAPACITY, ChangeEventBus.Backpressure.DROP);
+            subscription = drained.subscribe((event, endOfBatch) -> sum += event.getAmount());
+        }
+    }
+
+    @Benchmark
+    public boolean publish(BusState state) {
+        return state.bus.publish(ChangeEvent.Type.ITEM_ADDED, 1, 1, ++state.itemId, 1, 10_000);
+    }
+
+    @Benchmark
+    public int publishAndDrain(BusState state) {
+        int itemId = ++state.itemId;
+        state.drained.publish(ChangeEvent.Type.ITEM_ADDED, 1, 1, itemId, 1, 10_000);
+        return (itemId & 1023) == 0 ? state.subscription.drain(1024) : 0;
+    }
+}
@@ -0,0 +1,54 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Стоимость hashCode/equals товара - они вызываются на каждом обращении к Map<Item, ...>.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemBenchmark {
+    private Item item;
+    private Item sameItem;
+    private Item otherItem;
+    private Map<Item, Integer> cart;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        item = new Item(12, "Лаборатория Касперского Kaspersky Premium", Category.SOFTWARE, 2039);
+        sameItem = new Item(12, "Лаборатория Касперского Kaspersky Premium", Category.SOFTWARE, 2039);
+        otherItem = new Item(11, "1С: Бухгалтерия 8", Category.SOFTWARE, 2530);
+        cart = new HashMap<>();
+        cart.put(item, 1);
+        cart.put(otherItem, 2);
+    }
+
+    @Benchmark
+    public int hashCodeItem() {
+        return item.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsSameItem() {
+        return item.equals(sameItem);
+    }
+
+    @Benchmark
+    public boolean equalsOtherItem() {
+        return item.equals(otherItem);
+    }
+
+    //Поиск товара в корзине по равному, но не тому же самому объекту
+    @Benchmark
+    public Integer cartLookup() {
+        return cart.get(sameItem);
+    }
+}
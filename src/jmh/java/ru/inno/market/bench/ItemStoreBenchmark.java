@@ -0,0 +1,66 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.ItemStore;
+import ru.inno.market.core.ItemView;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//Чтение товаров по случайным id: каталог в куче (Item) против столбцов ItemStore через ItemView.
+//Списание остатка CAS прямо в столбце хранилища. С -prof gc видно, что чтение через ItemView не создаёт объектов.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ItemStoreBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class StoreState {
+        @Param({"1000000"})
+        public int catalogSize;
+
+        public Catalog catalog;
+        public ItemStore store;
+        public int[] ids;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            catalog = new Catalog();
+            store = ItemStore.inMemory(catalogSize + 1, 32 * catalogSize);
+            Category[] categories = Category.values();
+            SplittableRandom random = new SplittableRandom(42);
+            for (int id = 13; id <= catalogSize; id++) {
+                Item item = Item.ofKopecks(id, "Товар " + id, categories[id % categories.length], 1000 + random.nextInt(200_000));
+                catalog.addItem(item, Integer.MAX_VALUE);
+            }
+            store.putAll(catalog);
+            ids = new int[CatalogState.ID_SAMPLE];
+            for (int i = 0; i < ids.length; i++) ids[i] = 1 + random.nextInt(catalogSize);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ViewState {
+        public final ItemView view = new ItemView();
+    }
+
+    @Benchmark
+    public long heapPrice(StoreState state, CatalogState.Cursor cursor) {
+        return state.catalog.getItemInfo(state.ids[cursor.next() & (CatalogState.ID_SAMPLE - 1)]).getPriceKopecks();
+    }
+
+    @Benchmark
+    public long storePrice(StoreState state, ViewState view, CatalogState.Cursor cursor) {
+        return state.store.view(state.ids[cursor.next() & (CatalogState.ID_SAMPLE - 1)], view.view).priceKopecks();
+    }
+
+    @Benchmark
+    public boolean storeReserve(StoreState state, CatalogState.Cursor cursor) {
+        return state.store.tryReserve(state.ids[cursor.next() & (CatalogState.ID_SAMPLE - 1)], 1);
+    }
+}
@@ -0,0 +1,82 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.core.MarketService;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.Order;
+import ru.inno.market.model.OrderSnapshot;
+import ru.inno.market.model.PromoCodes;
+
+import java.util.concurrent.TimeUnit;
+
+//Горячие пути сервиса заказов. Количество потоков задаётся ключом -t,
+//размер корзины - параметром cartSize: после cartSize добавлений заказ сменяется новым.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MarketServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ServiceState {
+        public MarketService service;
+        public Client client;
+
+        //Сервис пересоздаётся на каждой итерации, чтобы хранилище заказов не росло бесконечно
+        @Setup(Level.Iteration)
+        public void setUp() {
+            service = new MarketService();
+            client = new Client(1, "Dima");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OrderState {
+        @Param({"1", "16", "50"})
+        public int cartSize;
+
+        public int orderId;
+        public int itemsInCart;
+
+        @Setup(Level.Iteration)
+        public void setUp(ServiceState state) {
+            orderId = state.service.createOrderFor(state.client);
+            itemsInCart = 0;
+        }
+
+        int orderFor(ServiceState state) {
+            if (itemsInCart == cartSize) {
+                orderId = state.service.createOrderFor(state.client);
+                itemsInCart = 0;
+            }
+            itemsInCart++;
+            return orderId;
+        }
+    }
+
+    @Benchmark
+    public int createOrderFor(ServiceState state) {
+        return state.service.createOrderFor(state.client);
+    }
+
+    @Benchmark
+    public void addItemToOrder(ServiceState state, OrderState order, CatalogState catalog, CatalogState.Cursor cursor) {
+        state.service.addItemToOrder(catalog.item(cursor.next()), order.orderFor(state));
+    }
+
+    @Benchmark
+    public double applyDiscountForOrder(ServiceState state, OrderState order) {
+        return state.service.applyDiscountForOrder(order.orderId, PromoCodes.FIRST_ORDER);
+    }
+
+    @Benchmark
+    public Order getOrderInfo(ServiceState state, OrderState order) {
+        return state.service.getOrderInfo(order.orderId);
+    }
+
+    @Benchmark
+    public OrderSnapshot getOrderSnapshot(ServiceState state, OrderState order) {
+        return state.service.getOrderSnapshot(order.orderId);
+    }
+}
@@ -0,0 +1,39 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.Order;
+
+import java.util.concurrent.TimeUnit;
+
+//Наполнение корзины заказа: cartSize различных товаров на заказ.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OrderBenchmark {
+
+    @State(Scope.Thread)
+    public static class CartState {
+        @Param({"1", "16", "50"})
+        public int cartSize;
+
+        public Client client;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            client = new Client(1, "Dima");
+        }
+    }
+
+    //Создание заказа и добавление в него cartSize товаров
+    @Benchmark
+    public Order addItem(CartState cart, CatalogState catalog, CatalogState.Cursor cursor) {
+        Order order = new Order(1, cart.client);
+        for (int i = 0; i < cart.cartSize; i++) {
+            order.addItem(catalog.item(cursor.next()));
+        }
+        return order;
+    }
+}
@@ -0,0 +1,67 @@
+package ru.inno.market.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.inno.market.core.PromotionEngine;
+import ru.inno.market.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//Расчёт скидки на корзину из cartSize строк при rules активных правилах: треть - на отдельные товары,
+//треть - на категории по промокодам, остальные - автоматические по категориям со ступенями.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PromotionBenchmark {
+    private static final int ITEMS = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class EngineState {
+        @Param({"100", "5000"})
+        public int rules;
+
+        @Param({"50"})
+        public int cartSize;
+
+        public PromotionEngine engine;
+        public OrderSnapshot cart;
+        public List<String> codes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Category[] categories = Category.values();
+            SplittableRandom random = new SplittableRandom(42);
+            List<Promotion> promotions = new ArrayList<>();
+            for (int i = 0; i < rules; i++) {
+                Category category = categories[i % categories.length];
+                Promotion promotion = switch (i % 3) {
+                    case 0 -> Promotion.percent("item-" + i, 500 + random.nextInt(1000)).forItem(1 + random.nextInt(ITEMS));
+                    case 1 -> Promotion.percent("code-" + i, 1000).withCode("CODE" + i).inCategory(category);
+                    default -> Promotion.percent("auto-" + i, 0).inCategory(category)
+                            .withTier(2, 300).withTier(5, 700).withPriority(random.nextInt(10)).stackable();
+                };
+                promotions.add(promotion);
+            }
+            engine = new PromotionEngine();
+            engine.addAll(promotions);
+
+            Order order = new Order(1, new Client(1, "Dima"));
+            for (int line = 0; line < cartSize; line++) {
+                int id = 1 + random.nextInt(ITEMS);
+                order.addItem(new Item(id, "Товар " + id, categories[id % categories.length], 1000 + random.nextInt(200_000)),
+                        1 + random.nextInt(6));
+            }
+            cart = order.snapshot();
+            codes = List.of("CODE1");
+        }
+    }
+
+    @Benchmark
+    public long discountKopecks(EngineState state) {
+        return state.engine.discountKopecks(state.cart, state.codes, true);
+    }
+}
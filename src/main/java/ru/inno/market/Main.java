@@ -2,20 +2,36 @@ package ru.inno.market;
 
 import ru.inno.market.core.Catalog;
 import ru.inno.market.core.MarketService;
+import ru.inno.market.http.MarketHttpServer;
+import ru.inno.market.load.LoadGenerator;
+import ru.inno.market.load.LoadProfile;
+import ru.inno.market.load.Trace;
 import ru.inno.market.model.Client;
 import ru.inno.market.model.Item;
+import ru.inno.market.model.Money;
 import ru.inno.market.model.Order;
 import ru.inno.market.model.PromoCodes;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 public class Main {
 
     public static void main(String[] args) {
-        // сервис маркета. Создает заказы и управляет ими
-        MarketService service = new MarketService();
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("load")) {
+            load(args);
+            return;
+        }
         // каталог товаров. Знает, какие и сколько товаров есть
         Catalog catalog = new Catalog();
+        // сервис маркета. Создает заказы и управляет ими
+        MarketService service = new MarketService(catalog);
 
-        Client client = new Client(1, "Dima");
+        Client client = service.getClients().register(1, "Dima");
         Item item =  catalog.getItemById(1);
         int id = service.createOrderFor(client);
         service.addItemToOrder(item, id);
@@ -24,6 +40,33 @@ public class Main {
 
         System.out.println(order);
         System.out.println(order.getCart().size() == 1);
-        System.out.println(order.getTotalPrice() == item.getPrice()*0.8);
+        System.out.println(order.getTotalKopecks() == Money.applyDiscount(item.getPriceKopecks(), PromoCodes.FIRST_ORDER.getDiscountBps()));
+    }
+
+    //HTTP-интерфейс маркета: java ru.inno.market.Main serve [порт]
+    private static void serve(int port) {
+        MarketHttpServer server = MarketHttpServer.start(new MarketService(new Catalog()), port);
+        System.out.println("Маркет слушает порт " + server.getPort());
+    }
+
+    //Синтетическая нагрузка: java ru.inno.market.Main load [сессий/с] [сессий] [seed] [файл трассы]
+    //Если файл трассы есть - проигрывается он, иначе трасса строится по seed и сохраняется в файл
+    private static void load(String[] args) {
+        int items = 100_000;
+        LoadProfile profile = LoadProfile.defaults()
+                .withRate(args.length > 1 ? Double.parseDouble(args[1]) : 1000)
+                .withSessions(args.length > 2 ? Integer.parseInt(args[2]) : 10_000)
+                .withSeed(args.length > 3 ? Long.parseLong(args[3]) : 42);
+        Path file = args.length > 4 ? Path.of(args[4]) : null;
+        Trace trace;
+        if (file != null && Files.exists(file)) {
+            trace = Trace.read(file);
+        } else {
+            trace = Trace.generate(profile, LoadGenerator.itemIds(items));
+            if (file != null) trace.write(file);
+        }
+        MarketService service = new MarketService(LoadGenerator.syntheticCatalog(items, 1_000, trace.getSeed()));
+        System.out.println(profile);
+        System.out.print(new LoadGenerator(service).run(trace).format());
     }
 }
@@ -3,79 +3,441 @@ package ru.inno.market.core;
 import ru.inno.market.model.Category;
 import ru.inno.market.model.Item;
 
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Optional;
+import java.util.Objects;
 
 public class Catalog {
-    private Map<Item, Integer> storage;
+    private static final int INITIAL_CAPACITY = 16;
+    public static final int MAX_IN_STOCK_OFFSET = 10_000;     //Сколько товаров в наличии findItems готов пропустить до страницы
+
+    //Первичный индекс по id товара: товары с ценами - в текущей версии каталога (CatalogVersion), stock - их остатки.
+    //Наполнение каталога (addItem) не потокобезопасно, резервирование и возврат товара - потокобезопасны.
+    //Цены и ассортимент работающего каталога меняются через update: новая версия публикуется целиком,
+    //читатели не блокируются и не видят половины обновления.
+    private volatile CatalogVersion current;
+    private final StockTable stock;
+    private final Object updateLock = new Object();     //Обновления публикуются по одному
+    private volatile OrderJournal journal;     //Журнал резервирований; null - каталог не сохраняется
+    private volatile ChangeEventBus events;    //Шина событий изменения остатков; null - события не публикуются
+    private volatile SearchIndex searchIndex;  //Поиск по названиям; строится при первом поиске и дальше пополняется в addItem
+    private final MarketMetrics metrics = new MarketMetrics();     //Общие метрики каталога и сервисов поверх него
 
     public Catalog() {
-        storage = new HashMap<>();
-        storage.put(
+        this(INITIAL_CAPACITY);
+        putItem(
                 new Item(1, "Apple iPhone SE", Category.SMARTPHONES, 97990), // товар
                 10 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(2, "Xiaomi POCO M5s", Category.SMARTPHONES, 19490), // товар
                 8 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(3, "Samsung Galaxy S23+", Category.SMARTPHONES, 72490), // товар
                 15 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(4, "Samsung Galaxy S20 Ultra", Category.SMARTPHONES, 48890), // товар
                 15 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(5, "Apple MacBook Air 13 2020", Category.LAPTOPS, 89990), // товар
                 5 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(6, "MSI GP66 11UG-699XRU Leopard 9S7-154322-699", Category.LAPTOPS, 130000), // товар
                 4 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(7, "HUAWEI MateBook E", Category.LAPTOPS, 89999),
                 2 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(8, "Microsoft Windows 11 Pro", Category.SOFTWARE, 5200),
                 100 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(9, "Microsoft 365 Персональный, электронный ключ", Category.SOFTWARE, 3790),
                 90 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(10, "Яндекс Плюс на 12 месяцев", Category.SOFTWARE, 1990),
                 1500 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(11, "1С: Бухгалтерия 8", Category.SOFTWARE, 2530),
                 50 // количество товара на складе
         );
-        storage.put(
+        putItem(
                 new Item(12, "Лаборатория Касперского Kaspersky Premium", Category.SOFTWARE, 2039),
                 70 // количество товара на складе
         );
     }
 
+    //Пустой каталог, рассчитанный на товары с id меньше capacity
+    Catalog(int capacity) {
+        current = new CatalogVersion(1, new Item[Math.max(capacity, 1)]);
+        stock = new StockTable(Math.max(capacity, 1));
+    }
+
+    //Каталог, загруженный из файла (формат - см. CatalogLoader)
+    public static Catalog fromFile(Path file) {
+        return CatalogLoader.load(file).catalog();
+    }
+
+    //Каталог в куче из товаров хранилища ItemStore с их остатками: файл не разбирается, товары читаются из столбцов.
+    //Каждый товар становится объектом Item в куче - хранилище остаётся отдельным от каталога (см. ItemStore).
+    public static Catalog fromStore(ItemStore store) {
+        if (store == null) throw new NoSuchElementException("Попытка загрузить каталог из хранилища NULL!");
+        Catalog catalog = new Catalog(store.capacity());
+        store.forEach(view -> catalog.addItem(view.toItem(), view.stock()));
+        return catalog;
+    }
+
     public Item getItemById(int id){
-        Item item = storage.keySet().stream().filter(x -> x.getId() == id).findFirst().orElseThrow();
-        int count = storage.get(item);
-        if (count > 0){
-            count -= 1;
-            storage.put(item, count);
-            return item;
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Item item = findItem(id);
+            if (reserve(id, 1)){
+                failed = false;
+                return item;
+            }
+            throw new NoSuchElementException("Товар закончился");
+        } finally {
+            metrics.record(MarketMetrics.Operation.GET_ITEM, start, failed);
         }
-        throw new NoSuchElementException("Товар закончился");
+    }
 
+    //Получение товара по id без списания со склада
+    public Item getItemInfo(int id) {
+        return findItem(id);
+    }
+
+    //Текущая версия каталога: цены и ассортимент, согласованные между собой.
+    //Отданная версия закрепляется: наполнение (addItem) дальше пишет уже в копию, а не в неё.
+    public CatalogVersion version() {
+        CatalogVersion version = current;
+        version.pin();
+        return version;
+    }
+
+    //Новое обновление цен и ассортимента; каталог меняется только при CatalogUpdate.publish
+    public CatalogUpdate update() {
+        return new CatalogUpdate(this);
     }
 
     public int getCountForItem(Item i){
-        return storage.get(i);
+        if (i == null || !i.equals(findItem(i.getId())))
+            throw new NoSuchElementException("Товар отсутствует в каталоге!");
+        return stock.get(i.getId());
+    }
+
+    //Атомарно резервирует qty единиц товара. Возвращает false, если на складе недостаточно товара.
+    public boolean tryReserve(int itemId, int qty) {
+        findItem(itemId);
+        if (qty <= 0) throw new NoSuchElementException("Попытка зарезервировать некорректное количество товара!");
+        return reserve(itemId, qty);
+    }
+
+    //Поиск товаров категории (null - любой) с ценой в диапазоне [minPriceKopecks, maxPriceKopecks]
+    //по возрастанию цены, постранично: page - номер страницы с нуля, pageSize - размер страницы.
+    //С inStockOnly возвращаются только товары, которые есть на складе в момент запроса.
+    //Без inStockOnly страница находится сразу; с ним каждый пропущенный товар проверяется по складу,
+    //поэтому глубина такой выдачи ограничена MAX_IN_STOCK_OFFSET товарами - дальше нужно сузить диапазон цен.
+    public List<Item> findItems(Category category, long minPriceKopecks, long maxPriceKopecks, boolean inStockOnly, int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) throw new NoSuchElementException("Попытка запросить некорректную страницу каталога!");
+        long offset = (long) page * pageSize;
+        if (offset > Integer.MAX_VALUE) throw new NoSuchElementException("Попытка запросить страницу за пределами каталога!");
+        if (inStockOnly && offset > MAX_IN_STOCK_OFFSET)
+            throw new NoSuchElementException("Слишком глубокая страница товаров в наличии: сузьте диапазон цен!");
+        CatalogVersion version = current;
+        CatalogIndex index = version.index();
+        int[] ids = new int[Math.min(pageSize, index.size(category))];     //Страница не больше всей категории
+        int found = index.find(category, minPriceKopecks, maxPriceKopecks, stock, inStockOnly, (int) offset, ids);
+        List<Item> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) result.add(version.items()[ids[i]]);
+        return result;
+    }
+
+    //Поиск товаров по словам из названия без учёта регистра, по возрастанию id, не больше limit товаров.
+    //Нужны все слова запроса; последнее слово может быть началом слова ("ноут" найдёт "Ноутбук").
+    public List<Item> searchItems(String query, int limit) {
+        if (query == null) throw new NoSuchElementException("Попытка искать товары по запросу NULL!");
+        if (limit <= 0) throw new NoSuchElementException("Попытка запросить некорректное число товаров!");
+        int[] ids = new int[limit];
+        int found = searchIndex().search(query, ids);
+        CatalogVersion version = current;
+        List<Item> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            if (version.contains(ids[i])) result.add(version.getItem(ids[i]));     //Товар мог уйти из ассортимента после построения индекса
+        }
+        return result;
+    }
+
+    //Резервирует весь набор товаров (id товара -> количество) по принципу "всё или ничего".
+    //Если хотя бы одного товара не хватает, уже сделанные резервы возвращаются на склад и возвращается false.
+    public boolean tryReserveAll(Map<Integer, Integer> quantities) {
+        if (quantities == null) throw new NoSuchElementException("Попытка зарезервировать набор товаров NULL!");
+        for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+            findItem(line.getKey());
+            if (line.getValue() == null || line.getValue() <= 0)
+                throw new NoSuchElementException("Попытка зарезервировать некорректное количество товара!");
+        }
+        int reserved = 0;
+        for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+            if (!reserve(line.getKey(), line.getValue())) {
+                releaseFirst(quantities, reserved);
+                return false;
+            }
+            reserved++;
+        }
+        return true;
+    }
+
+    //Возвращает ранее зарезервированный товар на склад
+    public void release(int itemId, int qty) {
+        findItem(itemId);
+        if (qty <= 0) throw new NoSuchElementException("Попытка вернуть некорректное количество товара!");
+        releaseStock(itemId, qty);
+    }
+
+    //Заранее делит остаток товара на шарды по ядрам - например, перед распродажей. Обычно товар делится сам,
+    //когда за его остаток начинают драться потоки (см. StockTable). Новый остаток (addItem) снова хранится целиком.
+    public void splitStock(int itemId) {
+        findItem(itemId);
+        stock.split(itemId);
+    }
+
+    public boolean isStockSplit(int itemId) {
+        findItem(itemId);
+        return stock.isSplit(itemId);
+    }
+
+    public MarketMetrics getMetrics() {
+        return metrics;
+    }
+
+    //Добавляет товар в каталог (или заменяет товар с тем же id) с указанным остатком на складе.
+    //Наполнение каталога: пока текущую версию никто не получил (version), товар записывается в неё без новой версии.
+    //Закреплённая версия не меняется: товар записывается в копию, которая становится следующей версией.
+    //С подключённым журналом каталог уже работает - товар публикуется новой версией и попадает в журнал.
+    public void addItem(Item item, int count) {
+        if (item == null) throw new NoSuchElementException("Попытка добавить в каталог товар NULL!");
+        int id = item.getId();
+        if (id < 0) throw new NoSuchElementException("Попытка добавить в каталог товар с id меньше 0!");
+        if (count < 0) throw new NoSuchElementException("Попытка задать товару отрицательный остаток!");
+        if (journal != null) {
+            update().put(item, count).publish();
+            return;
+        }
+        putItem(item, count);
+    }
+
+    //Наполнение без журнала (см. addItem). Конструктор зовёт его напрямую, а не переопределяемый addItem.
+    private void putItem(Item item, int count) {
+        int id = item.getId();
+        CatalogVersion base = current;
+        Item[] items = base.items();
+        if (id >= items.length) {
+            int capacity = Math.max(id + 1, items.length * 2);
+            items = Arrays.copyOf(items, capacity);
+            stock.grow(capacity);
+        } else if (base.isPinned()) {
+            items = items.clone();
+        }
+        Item previous = items[id];
+        items[id] = item;
+        stock.set(id, count);
+        long number = base.isPinned() ? base.getNumber() + 1 : base.getNumber();
+        current = new CatalogVersion(number, items);     //Индекс по ценам перестроится при следующем запросе
+        SearchIndex search = searchIndex;
+        if (search != null) {
+            if (previous == null) search.add(item);
+            else if (!Objects.equals(previous.getName(), item.getName())) searchIndex = null;   //Переименование - перестроим при следующем поиске
+        }
+    }
+
+    //Списание и возврат товара. С подключённым журналом изменение и запись о нём делаются под блокировкой журнала.
+    private boolean reserve(int id, int qty) {
+        OrderJournal journal = this.journal;
+        if (journal == null) {
+            if (!stock.tryReserve(id, qty)) return stockOut();
+        } else {
+            journal.lock();
+            try {
+                if (!stock.tryReserve(id, qty)) return stockOut();
+                journal.stockReserved(id, qty);
+            } finally {
+                journal.unlock();
+            }
+        }
+        stockChanged(ChangeEvent.Type.STOCK_RESERVED, id, qty);
+        return true;
+    }
+
+    private void stockChanged(ChangeEvent.Type type, int id, int qty) {
+        ChangeEventBus events = this.events;
+        if (events != null) events.publish(type, ChangeEvent.NONE, ChangeEvent.NONE, id, qty, 0);
+    }
+
+    //Отказ из-за нехватки товара: учитывается в метриках, всегда false
+    private boolean stockOut() {
+        metrics.stockOut();
+        return false;
+    }
+
+    private void releaseStock(int id, int qty) {
+        OrderJournal journal = this.journal;
+        if (journal == null) {
+            stock.release(id, qty);
+        } else {
+            journal.lock();
+            try {
+                stock.release(id, qty);
+                journal.stockReleased(id, qty);
+            } finally {
+                journal.unlock();
+            }
+        }
+        stockChanged(ChangeEvent.Type.STOCK_RELEASED, id, qty);
+    }
+
+    //Возврат товара снятого или истёкшего резерва (StockReservations). С журналом - одна запись HOLD_RELEASED:
+    //по ней восстановление и вернёт товар, и узнает, что резерв закрыт. Товар, ушедший из ассортимента, тоже возвращается.
+    void releaseHold(long holdId, int itemId, int qty) {
+        OrderJournal journal = this.journal;
+        if (journal == null) {
+            stock.release(itemId, qty);
+        } else {
+            journal.lock();
+            try {
+                stock.release(itemId, qty);
+                journal.holdReleased(holdId, itemId, qty);
+            } finally {
+                journal.unlock();
+            }
+        }
+        stockChanged(ChangeEvent.Type.STOCK_RELEASED, itemId, qty);
+    }
+
+    private void releaseFirst(Map<Integer, Integer> quantities, int lines) {
+        for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+            if (lines-- == 0) return;
+            releaseStock(line.getKey(), line.getValue());
+        }
+    }
+
+    //Новая версия собирается из копии текущей и подменяет её одной записью. Массив товаров копируется целиком,
+    //а меняются только товары из обновления, поэтому переоценка миллиона товаров не останавливает списания
+    //и оформление заказов - они продолжают работать с текущей версией, пока новая не опубликована.
+    //С подключённым журналом обновление записывается в журнал до подмены версии, под блокировкой журнала.
+    CatalogVersion publish(CatalogUpdate update) {
+        synchronized (updateLock) {
+            CatalogVersion base = current;
+            Item[] items = Arrays.copyOf(base.items(), Math.max(base.items().length, update.idBound()));
+            boolean assortment = update.applyTo(items);
+            if (items.length > stock.capacity()) stock.grow(items.length);
+            //Индекс по ценам уже кем-то построен - следующий выводится из него по изменённым товарам,
+            //чтобы первый поиск после обновления не сортировал весь каталог заново
+            CatalogIndex baseIndex = base.builtIndex();
+            CatalogVersion next = new CatalogVersion(base.getNumber() + 1, items,
+                    baseIndex == null ? null : baseIndex.withChanges(items, update));
+            OrderJournal journal = this.journal;
+            if (journal == null) {
+                install(update, next, assortment);
+            } else {
+                journal.lock();
+                try {
+                    journal.catalogUpdated(next.getNumber(), update);     //Не записалось - версия не публикуется
+                    install(update, next, assortment);
+                } finally {
+                    journal.unlock();
+                }
+            }
+            return next;
+        }
+    }
+
+    private void install(CatalogUpdate update, CatalogVersion next, boolean assortment) {
+        update.applyStock(stock);
+        if (!assortment) {
+            current = next;
+            return;
+        }
+        synchronized (this) {       //Поисковый индекс, который строится сейчас по прежней версии, не переживёт замены
+            current = next;
+            searchIndex = null;     //Перестроится при следующем поиске
+        }
+    }
+
+    private SearchIndex searchIndex() {
+        SearchIndex search = searchIndex;
+        if (search == null) {
+            synchronized (this) {
+                search = searchIndex;
+                if (search == null) {
+                    search = new SearchIndex();
+                    for (Item item : current.items()) {
+                        if (item != null) search.add(item);
+                    }
+                    searchIndex = search;
+                }
+            }
+        }
+        return search;
+    }
+
+    //Служебные методы для журнала заказов (OrderJournal)
+
+    void attachJournal(OrderJournal journal) {
+        this.journal = journal;
+    }
+
+    void attachEvents(ChangeEventBus events) {
+        this.events = events;
+    }
+
+    //Текущая версия без закрепления: чтение журналом, которое не должно заставлять наполнение копировать массив
+    CatalogVersion currentVersion() {
+        return current;
+    }
+
+    int stockOf(int id) {
+        return stock.get(id);
+    }
+
+    //Снимок описывает каталог целиком: ассортимент очищается, товары снимка добавляются следом (restoreUpdate)
+    void restoreReset(long number) {
+        current = new CatalogVersion(number, new Item[current.items().length]);
+        searchIndex = null;
+    }
+
+    //Повтор обновления из журнала или снимка. Восстановление идёт до начала работы сервиса, поэтому изменения
+    //применяются к массиву текущей версии на месте, без копии на каждое обновление - если версию ещё никто не получил.
+    void restoreUpdate(CatalogUpdate update, long number) {
+        Item[] items = current.items();
+        if (update.idBound() > items.length) items = Arrays.copyOf(items, Math.max(update.idBound(), items.length * 2));
+        else if (current.isPinned()) items = items.clone();
+        update.applyTo(items);
+        if (items.length > stock.capacity()) stock.grow(items.length);
+        update.applyStock(stock);
+        current = new CatalogVersion(number, items);
+        searchIndex = null;
+    }
+
+    //Остаток меняется и у товара, ушедшего из ассортимента: записи о нём в журнале могут идти после обновления каталога
+    void adjustStock(int id, int delta) {
+        if (id < 0 || id >= stock.capacity()) throw new IllegalStateException("Журнал ссылается на товар вне каталога: " + id);
+        stock.release(id, delta);
+    }
+
+    private Item findItem(int id) {
+        return current.getItem(id);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,189 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.util.Arrays;
+
+//Вторичные индексы каталога: для каждой категории (и для всего каталога) - id товаров,
+//упорядоченные по цене (равные цены - по id), и параллельный массив цен для двоичного поиска по диапазону.
+//Индекс неизменяем: новая версия каталога получает новый индекс - с нуля (build) или из индекса прежней
+//версии по изменённым товарам (withChanges). Остатки в нём не хранятся, поэтому фильтр "в наличии"
+//всегда проверяется по текущему складу. Товары без категории есть только в списке всего каталога.
+final class CatalogIndex {
+    private static final int ALL = Category.values().length;     //Список всего каталога
+
+    private final int[][] idsByPrice;      //[ordinal категории] -> id товаров по возрастанию цены; последний элемент - весь каталог
+    private final long[][] prices;         //Цены в том же порядке
+
+    private CatalogIndex(int[][] idsByPrice, long[][] prices) {
+        this.idsByPrice = idsByPrice;
+        this.prices = prices;
+    }
+
+    static CatalogIndex build(Item[] items) {
+        int[] sizes = new int[ALL + 1];
+        for (Item item : items) {
+            if (item == null) continue;
+            if (item.getCategory() != null) sizes[item.getCategory().ordinal()]++;
+            sizes[ALL]++;
+        }
+        int[][] ids = new int[sizes.length][];
+        for (int c = 0; c < sizes.length; c++) ids[c] = new int[sizes[c]];
+        int[] filled = new int[sizes.length];
+        //Товары перебираются по возрастанию id, поэтому устойчивая сортировка упорядочит равные цены по id
+        for (Item item : items) {
+            if (item == null) continue;
+            if (item.getCategory() != null) {
+                int c = item.getCategory().ordinal();
+                ids[c][filled[c]++] = item.getId();
+            }
+            ids[ALL][filled[ALL]++] = item.getId();
+        }
+        long[][] prices = new long[sizes.length][];
+        for (int c = 0; c < sizes.length; c++) {
+            sortByPrice(ids[c], items);
+            prices[c] = pricesOf(ids[c], items);
+        }
+        return new CatalogIndex(ids, prices);
+    }
+
+    //Индекс версии items, отличающейся от версии этого индекса только товарами из обновления update.
+    //Изменённые товары убираются из списков и вливаются заново по новым ценам: O(n + k log k) вместо сортировки всего каталога.
+    CatalogIndex withChanges(Item[] items, CatalogUpdate update) {
+        boolean[] changed = new boolean[items.length];
+        int[] changedIds = new int[update.size()];
+        int count = 0;
+        for (int i = 0; i < update.size(); i++) {
+            int id = update.id(i);
+            if (!changed[id]) {
+                changed[id] = true;
+                changedIds[count++] = id;
+            }
+        }
+        //Изменённые товары, оставшиеся в ассортименте, по спискам; по возрастанию id, как в build
+        Arrays.sort(changedIds, 0, count);
+        int[] sizes = new int[ALL + 1];
+        for (int i = 0; i < count; i++) {
+            Item item = items[changedIds[i]];
+            if (item == null) continue;
+            if (item.getCategory() != null) sizes[item.getCategory().ordinal()]++;
+            sizes[ALL]++;
+        }
+        int[][] added = new int[sizes.length][];
+        for (int c = 0; c < sizes.length; c++) added[c] = new int[sizes[c]];
+        int[] filled = new int[sizes.length];
+        for (int i = 0; i < count; i++) {
+            Item item = items[changedIds[i]];
+            if (item == null) continue;
+            if (item.getCategory() != null) {
+                int c = item.getCategory().ordinal();
+                added[c][filled[c]++] = item.getId();
+            }
+            added[ALL][filled[ALL]++] = item.getId();
+        }
+
+        int[][] ids = new int[sizes.length][];
+        long[][] newPrices = new long[sizes.length][];
+        for (int c = 0; c < sizes.length; c++) {
+            sortByPrice(added[c], items);
+            ids[c] = merge(idsByPrice[c], prices[c], changed, added[c], items);
+            newPrices[c] = pricesOf(ids[c], items);
+        }
+        return new CatalogIndex(ids, newPrices);
+    }
+
+    //Товары категории (null - все категории) с ценой в [minPrice, maxPrice], по возрастанию цены.
+    //Пропускает skip подходящих товаров и записывает в result не больше result.length id. Возвращает число записанных.
+    //Без фильтра наличия пропуск - сдвиг по массиву; с фильтром каждый пропущенный товар проверяется по складу.
+    int find(Category category, long minPrice, long maxPrice, StockTable stock, boolean inStockOnly, int skip, int[] result) {
+        int c = category == null ? ALL : category.ordinal();
+        int[] ids = idsByPrice[c];
+        long[] sortedPrices = prices[c];
+        int from = lowerBound(sortedPrices, minPrice);
+        if (!inStockOnly) {
+            from = (int) Math.min((long) from + skip, ids.length);
+            skip = 0;
+        }
+        int found = 0;
+        for (int i = from; i < ids.length && sortedPrices[i] <= maxPrice && found < result.length; i++) {
+            if (inStockOnly && stock.get(ids[i]) <= 0) continue;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            result[found++] = ids[i];
+        }
+        return found;
+    }
+
+    //Число товаров категории (null - всего каталога)
+    int size(Category category) {
+        return idsByPrice[category == null ? ALL : category.ordinal()].length;
+    }
+
+    //Слияние списка без изменённых товаров (changed) с отсортированными изменёнными товарами added по (цене, id)
+    private static int[] merge(int[] ids, long[] sortedPrices, boolean[] changed, int[] added, Item[] items) {
+        int kept = 0;
+        for (int id : ids) {
+            if (!changed[id]) kept++;
+        }
+        int[] merged = new int[kept + added.length];
+        int i = 0, j = 0, k = 0;
+        while (k < merged.length) {
+            if (i < ids.length && changed[ids[i]]) {
+                i++;
+                continue;
+            }
+            boolean takeAdded;
+            if (i == ids.length) takeAdded = true;
+            else if (j == added.length) takeAdded = false;
+            else {
+                long price = items[added[j]].getPriceKopecks();
+                takeAdded = price < sortedPrices[i] || price == sortedPrices[i] && added[j] < ids[i];
+            }
+            merged[k++] = takeAdded ? added[j++] : ids[i++];
+        }
+        return merged;
+    }
+
+    private static long[] pricesOf(int[] ids, Item[] items) {
+        long[] result = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) result[i] = items[ids[i]].getPriceKopecks();
+        return result;
+    }
+
+    private static int lowerBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    //Устойчивая сортировка слиянием id по цене товара, без упаковки в объекты
+    private static void sortByPrice(int[] ids, Item[] items) {
+        int[] buffer = new int[ids.length];
+        int[] from = ids;
+        int[] to = buffer;
+        for (int width = 1; width < ids.length; width *= 2) {
+            for (int left = 0; left < ids.length; left += 2 * width) {
+                int mid = Math.min(left + width, ids.length);
+                int right = Math.min(left + 2 * width, ids.length);
+                int i = left, j = mid, k = left;
+                while (i < mid && j < right) {
+                    to[k++] = items[from[j]].getPriceKopecks() < items[from[i]].getPriceKopecks() ? from[j++] : from[i++];
+                }
+                while (i < mid) to[k++] = from[i++];
+                while (j < right) to[k++] = from[j++];
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != ids) System.arraycopy(from, 0, ids, 0, ids.length);
+    }
+}
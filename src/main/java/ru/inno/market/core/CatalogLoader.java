@@ -0,0 +1,324 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//Загрузка каталога из текстового файла, по строке на товар:
+//  id;название;категория;цена;количество
+//например "5;Apple MacBook Air 13 2020;LAPTOPS;89990.00;5". Цена - в рублях, копейки через точку.
+//Первая строка может быть заголовком (не начинается с цифры), пустые строки и \r пропускаются.
+//Ошибка разбора сообщает номер строки и смещение в файле. Id товаров не должны быть слишком разреженными:
+//каталог - массив по id, поэтому наибольший id ограничен числом товаров (см. MAX_ID_SPREAD).
+//Повтор id - тоже ошибка с номером строки повтора: молча заменять товар более поздней строкой нельзя.
+//
+//Файл отображается в память и делится на куски по границам строк, куски разбираются параллельно.
+//Числа и категории разбираются прямо из байтов; единственный объект на строку, кроме самого Item, - название.
+public final class CatalogLoader {
+    private static final int MAX_CHUNK_SIZE = 64 << 20;
+    private static final byte SEPARATOR = ';';
+    private static final long MAX_RUBLES = (Long.MAX_VALUE - 99) / 100;     //Цена в копейках помещается в long
+    private static final int MIN_ID_BOUND = 1 << 20;        //До такого id разреженность не проверяется
+    private static final int MAX_ID_SPREAD = 8;             //Массив каталога не больше чем в 8 раз длиннее числа товаров
+    private static final byte[][] CATEGORY_NAMES = Arrays.stream(Category.values())
+            .map(c -> c.name().getBytes(StandardCharsets.US_ASCII))
+            .toArray(byte[][]::new);
+
+    //Итог загрузки: каталог и скорость разбора
+    public record Result(Catalog catalog, long items, long bytes, long nanos) {
+        public double itemsPerSecond() {
+            return nanos == 0 ? 0 : items * 1e9 / nanos;
+        }
+
+        public double megabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos / (1 << 20);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Загружено товаров: %d (%.1f МБ) за %.0f мс, %.0f товаров/с, %.1f МБ/с",
+                    items, (double) bytes / (1 << 20), nanos / 1e6, itemsPerSecond(), megabytesPerSecond());
+        }
+    }
+
+    private CatalogLoader() {
+    }
+
+    public static Result load(Path file) throws UncheckedIOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = chunkBounds(channel, size);
+            List<Chunk> chunks = IntStream.range(0, bounds.length - 1)
+                    .parallel()
+                    .mapToObj(i -> parse(channel, bounds[i], bounds[i + 1], i == 0))
+                    .collect(Collectors.toList());
+
+            int maxId = 0;
+            long maxIdLine = 0;
+            long count = 0;
+            long lineBase = 0;      //Строк файла до начала куска
+            for (Chunk chunk : chunks) {
+                if (chunk.errorLine >= 0)
+                    throw new IllegalArgumentException("Некорректная строка каталога " + (lineBase + chunk.errorLine + 1)
+                            + ", смещение в файле: " + chunk.errorOffset);
+                if (chunk.maxId > maxId) {
+                    maxId = chunk.maxId;
+                    maxIdLine = lineBase + chunk.maxIdLine + 1;
+                }
+                count += chunk.size;
+                lineBase += chunk.lines;
+            }
+            if (maxId >= Math.max(MIN_ID_BOUND, count * MAX_ID_SPREAD))
+                throw new IllegalArgumentException("Слишком большой id товара " + maxId + " для каталога из " + count
+                        + " товаров, строка " + maxIdLine);
+            //Повторы ищутся при сборке, а не в кусках: одинаковые id могут оказаться в разных кусках
+            Catalog catalog = new Catalog(maxId + 1);
+            boolean[] seen = new boolean[maxId + 1];
+            lineBase = 0;
+            for (Chunk chunk : chunks) {
+                for (int i = 0; i < chunk.size; i++) {
+                    int id = chunk.items[i].getId();
+                    if (seen[id])
+                        throw new IllegalArgumentException("Повторный id товара " + id + ", строка каталога "
+                                + (lineBase + chunk.itemLines[i] + 1));
+                    seen[id] = true;
+                    catalog.addItem(chunk.items[i], chunk.counts[i]);
+                }
+                lineBase += chunk.lines;
+            }
+            return new Result(catalog, count, size, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось загрузить каталог из " + file, e);
+        }
+    }
+
+    //Границы кусков файла: каждый кусок, кроме первого, начинается сразу после перевода строки
+    private static long[] chunkBounds(FileChannel channel, long size) throws IOException {
+        int chunks = (int) Math.max(Runtime.getRuntime().availableProcessors() * 4L, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        long step = Math.max(1, size / chunks);
+        long[] bounds = new long[chunks + 1];
+        int count = 1;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (long target = step; target < size && count < chunks; target += step) {
+            long boundary = nextLineStart(channel, Math.max(target, bounds[count - 1]), size, probe);
+            if (boundary >= size) break;
+            if (boundary > bounds[count - 1]) bounds[count++] = boundary;
+        }
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static Chunk parse(FileChannel channel, long from, long to, boolean first) {
+        try {
+            return new ChunkParser(channel.map(FileChannel.MapMode.READ_ONLY, from, to - from), from).parse(first);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Разбор одного куска файла. Поля строки читаются прямо из отображённого буфера.
+    private static final class ChunkParser {
+        private final MappedByteBuffer buffer;
+        private final long fileOffset;      //Смещение куска в файле - для сообщений об ошибках
+        private byte[] name = new byte[256];
+        private int position;
+        private int lineEnd;
+        private int line;       //Номер текущей строки в куске, с 0
+
+        ChunkParser(MappedByteBuffer buffer, long fileOffset) {
+            this.buffer = buffer;
+            this.fileOffset = fileOffset;
+        }
+
+        Chunk parse(boolean first) {
+            int end = buffer.limit();
+            Chunk chunk = new Chunk(Math.max(16, end / 48));
+            boolean header = first;
+            while (position < end) {
+                lineEnd = position;
+                while (lineEnd < end && buffer.get(lineEnd) != '\n') lineEnd++;
+                int next = lineEnd + 1;
+                if (lineEnd > position && buffer.get(lineEnd - 1) == '\r') lineEnd--;
+                if (lineEnd > position) {
+                    byte firstByte = buffer.get(position);
+                    //Строка заголовка допускается только первой в файле
+                    if (!header || (firstByte >= '0' && firstByte <= '9')) {
+                        try {
+                            parseLine(chunk);
+                        } catch (MalformedLine e) {
+                            //Номер строки в файле известен только после разбора предыдущих кусков - см. load
+                            chunk.errorLine = line;
+                            chunk.errorOffset = fileOffset + e.at;
+                            return chunk;
+                        }
+                    }
+                    header = false;
+                }
+                position = next;
+                line++;
+            }
+            chunk.lines = line;
+            return chunk;
+        }
+
+        private void parseLine(Chunk chunk) {
+            int id = parseInt();
+            int nameStart = position;
+            int nameLength = fieldEnd() - nameStart;
+            if (name.length < nameLength) name = new byte[Math.max(nameLength, name.length * 2)];
+            buffer.get(nameStart, name, 0, nameLength);
+            position += 1;
+            Category category = parseCategory();
+            long price = parsePrice();
+            int count = parseInt();
+            if (position <= lineEnd) throw malformed(position);      //Лишние поля после количества
+            chunk.add(Item.ofKopecks(id, new String(name, 0, nameLength, StandardCharsets.UTF_8), category, price), count, line);
+        }
+
+        //Конец текущего поля: позиция разделителя или конца строки; position сдвигается на неё
+        private int fieldEnd() {
+            int start = position;
+            while (position < lineEnd && buffer.get(position) != SEPARATOR) position++;
+            if (position == start) throw malformed(start);
+            return position;
+        }
+
+        //Неотрицательное целое
+        private int parseInt() {
+            int start = position;
+            long value = 0;
+            while (position < lineEnd && buffer.get(position) != SEPARATOR) {
+                int digit = buffer.get(position++) - '0';
+                if (digit < 0 || digit > 9) throw malformed(start);
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE) throw malformed(start);
+            }
+            if (position == start) throw malformed(start);
+            position++;
+            return (int) value;
+        }
+
+        //Цена в рублях с необязательными копейками ("1990", "1990.5", "1990.50") -> копейки.
+        //Рубли обязательны, после точки - одна или две цифры: ".", ".5" и "1990." отклоняются.
+        private long parsePrice() {
+            int start = position;
+            long rubles = 0;
+            int rubleDigits = 0;
+            long kopecks = 0;
+            int fraction = -1;      //Цифр после точки; -1 - точки не было
+            while (position < lineEnd && buffer.get(position) != SEPARATOR) {
+                byte b = buffer.get(position++);
+                if (b == '.' && fraction < 0) {
+                    fraction = 0;
+                } else if (b >= '0' && b <= '9' && fraction < 2) {
+                    if (fraction < 0) {
+                        rubles = rubles * 10 + (b - '0');
+                        rubleDigits++;
+                        if (rubles > MAX_RUBLES) throw malformed(start);
+                    } else {
+                        kopecks = kopecks * 10 + (b - '0');
+                        fraction++;
+                    }
+                } else {
+                    throw malformed(start);
+                }
+            }
+            if (rubleDigits == 0 || fraction == 0) throw malformed(start);
+            if (fraction == 1) kopecks *= 10;
+            position++;
+            return rubles * 100 + kopecks;
+        }
+
+        private Category parseCategory() {
+            int start = position;
+            int length = fieldEnd() - start;
+            position++;
+            Category[] categories = Category.values();
+            for (int c = 0; c < CATEGORY_NAMES.length; c++) {
+                byte[] expected = CATEGORY_NAMES[c];
+                if (expected.length != length) continue;
+                int i = 0;
+                while (i < length && buffer.get(start + i) == expected[i]) i++;
+                if (i == length) return categories[c];
+            }
+            throw malformed(start);
+        }
+
+        private MalformedLine malformed(int at) {
+            return new MalformedLine(at);
+        }
+    }
+
+    //Ошибка разбора строки внутри куска; в load превращается в IllegalArgumentException с номером строки
+    private static final class MalformedLine extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int at;       //Позиция в куске
+
+        MalformedLine(int at) {
+            super(null, null, false, false);
+            this.at = at;
+        }
+    }
+
+    //Разобранные товары одного куска файла
+    private static final class Chunk {
+        private Item[] items;
+        private int[] counts;
+        private int[] itemLines;        //Строка товара в куске, с 0
+        private int size;
+        private int maxId;
+        private int maxIdLine;
+        private int lines;
+        private int errorLine = -1;     //Строка с ошибкой разбора; -1 - ошибок нет
+        private long errorOffset;
+
+        Chunk(int capacity) {
+            items = new Item[capacity];
+            counts = new int[capacity];
+            itemLines = new int[capacity];
+        }
+
+        void add(Item item, int count, int line) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+                itemLines = Arrays.copyOf(itemLines, size * 2);
+            }
+            items[size] = item;
+            itemLines[size] = line;
+            counts[size++] = count;
+            if (item.getId() > maxId) {
+                maxId = item.getId();
+                maxIdLine = line;
+            }
+        }
+    }
+}
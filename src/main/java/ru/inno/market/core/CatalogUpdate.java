@@ -0,0 +1,137 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Item;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+//Набор изменений цен и ассортимента, который публикуется как одна новая версия каталога (publish).
+//Изменения копятся в плоских массивах и применяются в порядке вызовов к версии, текущей в момент публикации;
+//до publish каталог не меняется. Если хотя бы одно изменение неприменимо (нет товара), не публикуется ничего.
+//Объект обновления рассчитан на один поток.
+public final class CatalogUpdate {
+    static final byte PRICE = 0;
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+
+    private final Catalog catalog;
+    private byte[] kinds = new byte[16];
+    private int[] ids = new int[16];
+    private long[] values = new long[16];      //PRICE - цена, коп.; PUT - остаток на складе
+    private Item[] puts = new Item[16];        //Товары PUT; для остальных изменений - null
+    private int size;
+    private int idBound;                       //Наибольший id добавляемых товаров + 1
+
+    CatalogUpdate(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    //Новая цена товара, коп. Товар с прежними названием и категорией получает новую цену.
+    public CatalogUpdate price(int itemId, long priceKopecks) {
+        if (priceKopecks < 0) throw new NoSuchElementException("Попытка задать товару отрицательную цену!");
+        add(PRICE, itemId, priceKopecks, null);
+        return this;
+    }
+
+    //Добавляет товар (или заменяет товар с тем же id) с указанным остатком на складе
+    public CatalogUpdate put(Item item, int count) {
+        if (item == null) throw new NoSuchElementException("Попытка добавить в каталог товар NULL!");
+        if (item.getId() < 0) throw new NoSuchElementException("Попытка добавить в каталог товар с id меньше 0!");
+        if (count < 0) throw new NoSuchElementException("Попытка задать товару отрицательный остаток!");
+        add(PUT, item.getId(), count, item);
+        idBound = Math.max(idBound, item.getId() + 1);
+        return this;
+    }
+
+    //Убирает товар из ассортимента. Заказы, уже оценённые по прежней версии, товар сохраняют.
+    public CatalogUpdate remove(int itemId) {
+        add(REMOVE, itemId, 0, null);
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //Публикует изменения одной новой версией каталога и возвращает её
+    public CatalogVersion publish() throws NoSuchElementException {
+        return catalog.publish(this);
+    }
+
+    //Применяет изменения к копии массива товаров текущей версии. Возвращает true, если менялись названия или состав ассортимента.
+    boolean applyTo(Item[] items) {
+        boolean assortment = false;
+        for (int i = 0; i < size; i++) {
+            int id = ids[i];
+            switch (kinds[i]) {
+                case PRICE -> {
+                    Item item = existing(items, id);
+                    if (item.getPriceKopecks() != values[i])
+                        items[id] = Item.ofKopecks(id, item.getName(), item.getCategory(), values[i]);
+                }
+                case PUT -> {
+                    Item previous = items[id];
+                    items[id] = puts[i];
+                    assortment |= previous == null || !Objects.equals(previous.getName(), puts[i].getName());
+                }
+                default -> {
+                    existing(items, id);
+                    items[id] = null;
+                    assortment = true;
+                }
+            }
+        }
+        return assortment;
+    }
+
+    //Остатки добавленных товаров; выставляются после успешного применения изменений
+    void applyStock(StockTable stock) {
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == PUT) stock.set(ids[i], (int) values[i]);
+        }
+    }
+
+    int idBound() {
+        return idBound;
+    }
+
+    //Изменения по отдельности - для записи обновления в журнал (OrderJournal)
+
+    byte kind(int i) {
+        return kinds[i];
+    }
+
+    int id(int i) {
+        return ids[i];
+    }
+
+    long value(int i) {
+        return values[i];
+    }
+
+    Item item(int i) {
+        return puts[i];
+    }
+
+    private static Item existing(Item[] items, int id) {
+        if (id < 0 || id >= items.length || items[id] == null)
+            throw new NoSuchElementException("Товар с id " + id + " отсутствует в каталоге!");
+        return items[id];
+    }
+
+    private void add(byte kind, int id, long value, Item item) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            values = Arrays.copyOf(values, capacity);
+            puts = Arrays.copyOf(puts, capacity);
+        }
+        kinds[size] = kind;
+        ids[size] = id;
+        values[size] = value;
+        puts[size] = item;
+        size++;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Item;
+
+import java.util.NoSuchElementException;
+
+//Неизменяемая версия каталога: товары с ценами на момент публикации. Обновление каталога (Catalog.update)
+//собирает новую версию рядом с текущей и подменяет её одной записью, поэтому читатель, взявший версию,
+//видит согласованный набор цен и не ждёт писателей. Остатки на складе в версию не входят - они общие для всех версий.
+//
+//Товар с новой ценой - новый объект Item, старый не меняется: корзины заказов, где лежит старый товар,
+//сохраняют его цену, хеш и равенство ключей.
+public final class CatalogVersion {
+    private final long number;
+    private final Item[] items;               //items[id] - товар; массив не меняется после публикации версии и после pin
+    private volatile CatalogIndex index;      //Индекс по категориям и ценам этой версии; готов при публикации или строится при первом запросе
+    private volatile boolean pinned;          //Версию уже отдали наружу (Catalog.version) - наполнение её больше не меняет
+
+    CatalogVersion(long number, Item[] items) {
+        this(number, items, null);
+    }
+
+    //Версия с уже готовым индексом (см. CatalogIndex.withChanges); null - индекс построится при первом запросе
+    CatalogVersion(long number, Item[] items, CatalogIndex index) {
+        this.number = number;
+        this.items = items;
+        this.index = index;
+    }
+
+    //Номер версии: растёт на 1 с каждым обновлением каталога
+    public long getNumber() {
+        return number;
+    }
+
+    public Item getItem(int id) throws NoSuchElementException {
+        if (!contains(id)) throw new NoSuchElementException("Товар с id " + id + " отсутствует в каталоге!");
+        return items[id];
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < items.length && items[id] != null;
+    }
+
+    Item[] items() {
+        return items;
+    }
+
+    void pin() {
+        if (!pinned) pinned = true;
+    }
+
+    boolean isPinned() {
+        return pinned;
+    }
+
+    //Индекс, если он уже есть, без построения
+    CatalogIndex builtIndex() {
+        return index;
+    }
+
+    CatalogIndex index() {
+        CatalogIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) index = current = CatalogIndex.build(items);
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogVersion{" +
+                "number=" + number +
+                ", idBound=" + items.length +
+                '}';
+    }
+}
@@ -0,0 +1,84 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.OrderStatus;
+
+//Событие изменения заказа или остатка на складе. Объекты событий - ячейки кольцевого буфера ChangeEventBus:
+//они создаются один раз и перезаписываются при каждой публикации, поэтому потребитель не должен хранить событие
+//после возврата из обработчика - только скопировать нужные поля.
+//
+//Поля по типам: orderId - для событий заказа, itemId и quantity - товар и количество (ITEM_ADDED, ITEM_REMOVED, STOCK_*),
+//amount - цена товара в копейках (ITEM_ADDED, ITEM_REMOVED), скидка в б.п. (DISCOUNT_APPLIED), в копейках (DISCOUNT_AMOUNT_APPLIED) или номер OrderStatus (STATUS_CHANGED).
+public final class ChangeEvent {
+    public enum Type {
+        ORDER_CREATED, ITEM_ADDED, DISCOUNT_APPLIED, DISCOUNT_AMOUNT_APPLIED, STATUS_CHANGED, STOCK_RESERVED, STOCK_RELEASED,
+        ITEM_REMOVED
+    }
+
+    static final int NONE = -1;
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private long sequence;
+    private Type type;
+    private int orderId;
+    private int clientId;
+    private int itemId;
+    private int quantity;
+    private long amount;
+
+    void set(long sequence, Type type, int orderId, int clientId, int itemId, int quantity, long amount) {
+        this.sequence = sequence;
+        this.type = type;
+        this.orderId = orderId;
+        this.clientId = clientId;
+        this.itemId = itemId;
+        this.quantity = quantity;
+        this.amount = amount;
+    }
+
+    //Номер события в кольце: растёт на 1 с каждой публикацией. У событий, вытесненных на диск (SPILL), - NONE.
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    //Новое состояние заказа для STATUS_CHANGED
+    public OrderStatus getStatus() {
+        return type == Type.STATUS_CHANGED ? STATUSES[(int) amount] : null;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" +
+                "sequence=" + sequence +
+                ", type=" + type +
+                ", orderId=" + orderId +
+                ", clientId=" + clientId +
+                ", itemId=" + itemId +
+                ", quantity=" + quantity +
+                ", amount=" + amount +
+                '}';
+    }
+}
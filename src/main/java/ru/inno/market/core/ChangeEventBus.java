@@ -0,0 +1,298 @@
+package ru.inno.market.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+//Поток событий изменения заказов и остатков (ChangeEvent) для внешних потребителей: аналитики, переиндексации,
+//синхронизации со складом. Сервис и каталог публикуют события, если шина подключена (MarketService.attachEvents).
+//
+//Кольцевой буфер заранее выделенных изменяемых ячеек. Публикация: CAS номера следующей ячейки, запись полей в ячейку,
+//затем номер ячейки в published с release-семантикой - без блокировок и без выделения памяти. Каждый подписчик
+//(Subscription) читает все события по порядку и двигает свой номер; пачка подряд опубликованных событий
+//обрабатывается за один проход (drain), номер подписчика публикуется один раз на пачку.
+//
+//Ячейку нельзя перезаписать, пока её не прочитали все подписчики. Если кольцо заполнено, поведение задаёт Backpressure:
+//BLOCK - издатель ждёт потребителей, DROP - событие отбрасывается (счётчик dropped), SPILL - событие дописывается
+//в файл на диске (счётчик spilled), откуда его читает readSpill. Без подписчиков события никто не ждёт,
+//но издатель круга s + capacity пишет в ячейку только после того, как в неё дописал издатель круга s.
+//
+//Порядок при SPILL: с первого вытесненного события и до тех пор, пока файл не прочитан до конца,
+//все новые события тоже идут в файл, даже если в кольце освободилось место. Поэтому события файла всегда позже
+//событий кольца: drain, дочитав кольцо, читает файл сам (или его читает readSpill), и подписчик видит их по порядку.
+//Позиция чтения файла одна, а прочитанный файл обрезается, поэтому у шины SPILL может быть только один подписчик.
+public class ChangeEventBus implements AutoCloseable {
+    public enum Backpressure {
+        BLOCK, DROP, SPILL
+    }
+
+    public interface Handler {
+        //endOfBatch - последнее событие текущей пачки: удобный момент сбросить накопленное
+        void onEvent(ChangeEvent event, boolean endOfBatch);
+    }
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int SPILL_RECORD_SIZE = 1 + 4 + 4 + 4 + 4 + 8;
+    private static final ChangeEvent.Type[] TYPES = ChangeEvent.Type.values();
+
+    private final ChangeEvent[] slots;
+    private final AtomicLongArray published;      //Номер события, лежащего в ячейке; -1 - ещё не было
+    private final int mask;
+    private final Backpressure backpressure;
+    private final AtomicLong cursor = new AtomicLong();       //Номер следующего события
+    private volatile Subscription[] subscriptions = new Subscription[0];
+    private volatile long gate;           //Кэш: наименьший номер, ещё не прочитанный всеми подписчиками
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+
+    private final FileChannel spill;                //Только для SPILL
+    private final Path spillFile;
+    private final ByteBuffer spillBuffer;           //Под блокировкой spillBuffer
+    private long spillRead;                         //Смещение первого непрочитанного события файла; под блокировкой spillBuffer
+    private volatile boolean spillPending;          //В файле есть непрочитанные события - новые события идут туда же
+
+    public ChangeEventBus(int capacity, Backpressure backpressure) {
+        this(capacity, backpressure, null);
+    }
+
+    //spillFile - файл для событий, не поместившихся в кольцо; нужен только для SPILL
+    public ChangeEventBus(int capacity, Backpressure backpressure, Path spillFile) throws UncheckedIOException {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new NoSuchElementException("Попытка задать некорректную ёмкость шины событий: " + capacity);
+        if (backpressure == null) throw new NoSuchElementException("Попытка задать поведение шины событий NULL!");
+        if (backpressure == Backpressure.SPILL && spillFile == null)
+            throw new NoSuchElementException("Попытка создать шину событий SPILL без файла!");
+        slots = new ChangeEvent[capacity];
+        for (int i = 0; i < capacity; i++) slots[i] = new ChangeEvent();
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1);
+        mask = capacity - 1;
+        this.backpressure = backpressure;
+        this.spillFile = spillFile;
+        if (backpressure == Backpressure.SPILL) {
+            try {
+                spill = FileChannel.open(spillFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось открыть файл событий " + spillFile, e);
+            }
+            spillBuffer = ByteBuffer.allocateDirect(SPILL_RECORD_SIZE);
+        } else {
+            spill = null;
+            spillBuffer = null;
+        }
+    }
+
+    //Новый подписчик получает события, опубликованные после подписки. У шины SPILL - не больше одного подписчика.
+    public synchronized Subscription subscribe(Handler handler) {
+        if (handler == null) throw new NoSuchElementException("Попытка подписаться на события обработчиком NULL!");
+        if (backpressure == Backpressure.SPILL && subscriptions.length > 0)
+            throw new NoSuchElementException("У шины событий SPILL может быть только один подписчик!");
+        Subscription subscription = new Subscription(handler, cursor.get() - 1);
+        Subscription[] grown = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        grown[subscriptions.length] = subscription;
+        subscriptions = grown;
+        refreshGate();
+        return subscription;
+    }
+
+    public synchronized void unsubscribe(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != subscription) continue;
+            Subscription[] shrunk = new Subscription[current.length - 1];
+            System.arraycopy(current, 0, shrunk, 0, i);
+            System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+            subscriptions = shrunk;
+            refreshGate();
+            subscription.stop();
+            return;
+        }
+    }
+
+    //Публикация события; false - событие не попало в кольцо (отброшено или вытеснено на диск)
+    public boolean publish(ChangeEvent.Type type, int orderId, int clientId, int itemId, int quantity, long amount) {
+        long sequence;
+        while (true) {
+            if (spillPending) {
+                spill(type, orderId, clientId, itemId, quantity, amount);
+                return false;
+            }
+            sequence = cursor.get();
+            if (sequence - slots.length >= gate && sequence - slots.length >= refreshGate()) {
+                if (backpressure == Backpressure.DROP) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                if (backpressure == Backpressure.SPILL) {
+                    spill(type, orderId, clientId, itemId, quantity, amount);
+                    return false;
+                }
+                LockSupport.parkNanos(1_000);      //BLOCK: ждём, пока потребители освободят ячейку
+                continue;
+            }
+            if (cursor.compareAndSet(sequence, sequence + 1)) break;
+        }
+        int slot = (int) sequence & mask;
+        long previous = sequence < slots.length ? -1 : sequence - slots.length;
+        while (published.getAcquire(slot) != previous) Thread.onSpinWait();    //Издатель прошлого круга ещё пишет ячейку
+        slots[slot].set(sequence, type, orderId, clientId, itemId, quantity, amount);
+        published.setRelease(slot, sequence);
+        return true;
+    }
+
+    //Наименьший номер, который ещё не прочитали все подписчики; без подписчиков - бесконечность
+    private long refreshGate() {
+        long min = Long.MAX_VALUE;
+        for (Subscription subscription : subscriptions) min = Math.min(min, subscription.sequence + 1);
+        gate = min;
+        return min;
+    }
+
+    private void spill(ChangeEvent.Type type, int orderId, int clientId, int itemId, int quantity, long amount) {
+        synchronized (spillBuffer) {
+            spillPending = true;
+            spillBuffer.clear();
+            spillBuffer.put((byte) type.ordinal()).putInt(orderId).putInt(clientId).putInt(itemId).putInt(quantity).putLong(amount);
+            spillBuffer.flip();
+            try {
+                while (spillBuffer.hasRemaining()) spill.write(spillBuffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать событие в " + spillFile, e);
+            }
+            spilled.incrementAndGet();
+        }
+    }
+
+    //Читает ещё не прочитанные события, вытесненные на диск, по порядку записи одним переиспользуемым объектом.
+    //Каждое событие читается один раз; дочитанный файл обрезается, и события снова идут в кольцо. Возвращает их число.
+    //Издатели, вытесняющие события, ждут, пока идёт чтение.
+    public long readSpill(Handler handler) throws UncheckedIOException {
+        return readSpill(handler, Long.MAX_VALUE);
+    }
+
+    //То же, но не больше max событий; недочитанный файл не обрезается, и новые события по-прежнему идут в него
+    private long readSpill(Handler handler, long max) throws UncheckedIOException {
+        if (spill == null) return 0;
+        synchronized (spillBuffer) {
+            try {
+                long size = spill.size();
+                ByteBuffer in = ByteBuffer.allocate(SPILL_RECORD_SIZE);
+                ChangeEvent event = new ChangeEvent();
+                long count = 0;
+                for (long at = spillRead; at + SPILL_RECORD_SIZE <= size && count < max; at += SPILL_RECORD_SIZE) {
+                    in.clear();
+                    while (in.hasRemaining() && spill.read(in, at + in.position()) > 0) {
+                    }
+                    in.flip();
+                    event.set(ChangeEvent.NONE, TYPES[in.get()], in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getLong());
+                    spillRead = at + SPILL_RECORD_SIZE;     //Прочитано, даже если обработчик упадёт на следующем
+                    handler.onEvent(event, at + 2L * SPILL_RECORD_SIZE > size || count + 1 == max);
+                    count++;
+                }
+                if (spillRead + SPILL_RECORD_SIZE <= size) return count;
+                spill.truncate(0);
+                spill.position(0);
+                spillRead = 0;
+                spillPending = false;
+                return count;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось прочитать события из " + spillFile, e);
+            }
+        }
+    }
+
+    //Число опубликованных в кольцо событий
+    public long published() {
+        return cursor.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long spilled() {
+        return spilled.get();
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    @Override
+    public void close() throws UncheckedIOException {
+        for (Subscription subscription : subscriptions) subscription.stop();
+        if (spill == null) return;
+        try {
+            spill.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Подписчик: свой номер прочитанного события и обработчик. Читать события может один поток за раз:
+    //вызовами drain или фоновым потоком start.
+    public final class Subscription {
+        private final Handler handler;
+        private volatile long sequence;        //Номер последнего обработанного события
+        private volatile Thread worker;
+
+        private Subscription(Handler handler, long sequence) {
+            this.handler = handler;
+            this.sequence = sequence;
+        }
+
+        //Обрабатывает до maxBatch опубликованных подряд событий. Возвращает их число.
+        //У шины SPILL, когда кольцо прочитано целиком, берёт до maxBatch событий из файла: они позже событий кольца.
+        public int drain(int maxBatch) {
+            long next = sequence + 1;
+            long end = next;
+            long limit = next + maxBatch;
+            while (end < limit && published.getAcquire((int) end & mask) == end) end++;
+            for (long at = next; at < end; at++) handler.onEvent(slots[(int) at & mask], at == end - 1);
+            if (end > next) sequence = end - 1;
+            else if (spillPending && cursor.get() == next) return (int) readSpill(handler, maxBatch);
+            return (int) (end - next);
+        }
+
+        //Отставание от издателей: опубликованные, но ещё не обработанные события
+        public long lag() {
+            return cursor.get() - 1 - sequence;
+        }
+
+        //Фоновый поток, обрабатывающий события пачками до maxBatch; без событий поток засыпает на parkNanos
+        //Поток работает, пока он - текущий worker: поле присваивается до старта, иначе поток мог бы увидеть null и сразу выйти
+        public synchronized void start(int maxBatch, long parkNanos) {
+            if (worker != null) throw new NoSuchElementException("Подписчик уже запущен!");
+            Thread thread = Thread.ofPlatform().daemon().name("change-events").unstarted(() -> {
+                while (worker == Thread.currentThread()) {
+                    if (drain(maxBatch) == 0) LockSupport.parkNanos(parkNanos);
+                }
+            });
+            worker = thread;
+            thread.start();
+        }
+
+        //Останавливает фоновый поток и дожидается его завершения
+        public synchronized void stop() {
+            Thread current = worker;
+            if (current == null) return;
+            worker = null;
+            LockSupport.unpark(current);
+            try {
+                current.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Client;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+//Реестр клиентов маркета с историей заказов каждого клиента.
+//
+//На клиента - одна запись в ConcurrentHashMap по id: сам клиент, id его заказов в растущем int[] (только дописываются)
+//и состояние ограничителя частоты заказов. Поэтому история заказов клиента, его первый заказ и проверка лимита
+//стоят O(1) поиска по id, сколько бы заказов ни было в сервисе всего. История читается без блокировки:
+//дописывание публикует новый размер volatile-записью после самого элемента.
+//
+//Лимит - "ведро токенов": клиент может оформить подряд до burst заказов, дальше - ordersPerMinute в минуту.
+//Токены считаются в долях 1/60000, чтобы пополнение за каждую миллисекунду было целым.
+public class ClientRegistry {
+    public static final int UNLIMITED = 0;
+
+    private static final long MILLIS_IN_MINUTE = 60_000;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final Map<Integer, Entry> clients = new ConcurrentHashMap<>();
+    private final int ordersPerMinute;
+    private final long capacity;           //burst в долях токена
+    private final LongSupplier clockMillis;
+
+    public ClientRegistry() {
+        this(UNLIMITED, 0, System::currentTimeMillis);
+    }
+
+    //ordersPerMinute - UNLIMITED или скорость пополнения лимита; burst - сколько заказов можно оформить подряд
+    public ClientRegistry(int ordersPerMinute, int burst, LongSupplier clockMillis) {
+        if (ordersPerMinute < 0) throw new NoSuchElementException("Попытка задать некорректный лимит заказов!");
+        if (ordersPerMinute != UNLIMITED && burst <= 0)
+            throw new NoSuchElementException("Попытка задать некорректный запас заказов!");
+        if (clockMillis == null) throw new NoSuchElementException("Попытка задать часы реестра NULL!");
+        this.ordersPerMinute = ordersPerMinute;
+        this.capacity = burst * MILLIS_IN_MINUTE;
+        this.clockMillis = clockMillis;
+    }
+
+    //Клиент с id и ником: уже известный объект или новый. Новый ник заменяет прежний.
+    public Client register(int id, String nickname) {
+        Entry entry = clients.get(id);
+        if (entry != null) {
+            Client client = entry.client;
+            if (Objects.equals(client.getNickname(), nickname)) return client;
+        }
+        return register(new Client(id, nickname));
+    }
+
+    public Client register(Client client) throws NoSuchElementException {
+        if (client == null) throw new NoSuchElementException("Попытка зарегистрировать клиента NULL!");
+        Entry entry = entry(client);
+        if (!entry.client.equals(client)) entry.client = client;
+        return entry.client;
+    }
+
+    //Зарегистрированный клиент или null
+    public Client find(int id) {
+        Entry entry = clients.get(id);
+        return entry == null ? null : entry.client;
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    //Списание одного заказа из лимита клиента. Клиент регистрируется, если ещё не известен.
+    public void acquireOrder(Client client) throws NoSuchElementException {
+        if (client == null) throw new NoSuchElementException("Попытка создать заказ для клиента NULL!");
+        Entry entry = entry(client);
+        if (ordersPerMinute == UNLIMITED) return;
+        synchronized (entry) {
+            long now = clockMillis.getAsLong();
+            if (entry.refilledAt == Long.MIN_VALUE) {
+                entry.tokens = capacity;
+            } else if (now > entry.refilledAt) {
+                entry.tokens = Math.min(capacity, entry.tokens + (now - entry.refilledAt) * ordersPerMinute);
+            }
+            entry.refilledAt = Math.max(entry.refilledAt, now);
+            if (entry.tokens < MILLIS_IN_MINUTE)
+                throw new NoSuchElementException("Превышен лимит заказов клиента " + client.getId() + "!");
+            entry.tokens -= MILLIS_IN_MINUTE;
+        }
+    }
+
+    //Возврат заказа, списанного acquireOrder, в лимит клиента: заказ так и не был создан (см. MarketService.createOrdersFor)
+    void refundOrder(Client client) {
+        if (ordersPerMinute == UNLIMITED) return;
+        Entry entry = entry(client);
+        synchronized (entry) {
+            entry.tokens = Math.min(capacity, entry.tokens + MILLIS_IN_MINUTE);
+        }
+    }
+
+    //Дописывает заказ в историю клиента
+    public void orderCreated(Client client, int orderId) throws NoSuchElementException {
+        if (client == null) throw new NoSuchElementException("Попытка добавить заказ клиенту NULL!");
+        entry(client).append(orderId);
+    }
+
+    //Число заказов клиента
+    public int orderCount(int clientId) {
+        Entry entry = clients.get(clientId);
+        return entry == null ? 0 : entry.size;
+    }
+
+    //Id заказов клиента в порядке создания (копия)
+    public int[] orderIds(int clientId) {
+        Entry entry = clients.get(clientId);
+        if (entry == null) return new int[0];
+        int size = entry.size;
+        return Arrays.copyOf(entry.orderIds, size);
+    }
+
+    //Id первого (наименьшего) заказа клиента или -1, если заказов нет
+    public int firstOrderId(int clientId) {
+        Entry entry = clients.get(clientId);
+        return entry == null || entry.size == 0 ? -1 : entry.firstOrderId;
+    }
+
+    private Entry entry(Client client) {
+        Entry entry = clients.get(client.getId());
+        if (entry == null) entry = clients.computeIfAbsent(client.getId(), id -> new Entry(client));
+        return entry;
+    }
+
+    private static final class Entry {
+        volatile Client client;
+        volatile int[] orderIds = new int[INITIAL_CAPACITY];
+        volatile int size;
+        volatile int firstOrderId = Integer.MAX_VALUE;
+        long tokens;                            //Под блокировкой записи
+        long refilledAt = Long.MIN_VALUE;
+
+        Entry(Client client) {
+            this.client = client;
+        }
+
+        synchronized void append(int orderId) {
+            int[] ids = orderIds;
+            if (size == ids.length) orderIds = ids = Arrays.copyOf(ids, size * 2);
+            ids[size] = orderId;
+            if (orderId < firstOrderId) firstOrderId = orderId;
+            size = size + 1;
+        }
+    }
+}
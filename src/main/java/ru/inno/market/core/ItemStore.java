@@ -0,0 +1,307 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+//Хранилище товаров вне кучи по столбцам: цена, название, остаток и категория - плоские массивы фиксированной
+//ширины, индексированные по id товара, названия в UTF-8 - подряд в арене. Столбцы - прямые буферы (inMemory)
+//или отображённые в память куски файла items.store (open): открытие файла не читает и не разбирает товары,
+//поэтому каталог из десятков миллионов товаров доступен сразу после рестарта, а сборщик мусора его не обходит.
+//
+//Товар читается через переиспользуемый ItemView (view, forEach); Item создаётся только по запросу (ItemView.toItem).
+//Запись товаров (put, setPrice) сериализована, чтение идёт без блокировки: товар публикуется записью столбца
+//категорий с release-семантикой. У заменяемого товара поля меняются по отдельности, каждое атомарно.
+//Остаток списывается CAS прямо в столбце (tryReserve), как в StockTable.
+//
+//Хранилище самостоятельное и с Catalog не связано: версии каталога (CatalogVersion) - неизменяемые массивы Item,
+//на экземпляры которых ссылаются заказы, поисковый индекс и журнал, а переоценка публикует новую версию целиком.
+//Столбцы же меняются на месте и версий не имеют. Catalog.fromStore лишь переносит товары в кучу, то есть
+//снимает выигрыш хранилища по памяти; он нужен для перехода, а не для работы каталога поверх столбцов.
+//
+//Раскладка файла: заголовок, затем столбцы prices (long), names (long: смещение в арене << 16 | длина),
+//stock (int), meta (int: PRESENT | номер категории) и арена названий. Порядок байт - little-endian.
+public final class ItemStore implements AutoCloseable {
+    public static final String STORE_FILE = "items.store";
+
+    private static final int MAGIC = 0x49544D53;       //"ITMS"
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_ARENA_CAPACITY = 12;
+    private static final int HEADER_ARENA_TOP = 16;
+    private static final int HEADER_COUNT = 20;
+
+    private static final int PRESENT = 1 << 8;
+    private static final int NO_CATEGORY = 0xFF;
+    private static final int NO_NAME = 0xFFFF;           //Длина названия NULL
+    private static final int MAX_NAME_LENGTH = 0xFFFE;
+    private static final Category[] CATEGORIES = Category.values();
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;      //null - хранилище только в памяти
+    private final int capacity;
+    private final int arenaCapacity;
+    private final ByteBuffer header;
+    private final ByteBuffer prices;
+    private final ByteBuffer names;
+    private final ByteBuffer stock;
+    private final ByteBuffer meta;
+    private final ByteBuffer arena;
+    private int arenaTop;       //Под блокировкой хранилища
+    private int count;
+
+    private ItemStore(FileChannel channel, int capacity, int arenaCapacity) throws IOException {
+        this.channel = channel;
+        this.capacity = capacity;
+        this.arenaCapacity = arenaCapacity;
+        long at = 0;
+        header = column(at, HEADER_SIZE);
+        prices = column(at += HEADER_SIZE, (long) capacity * Long.BYTES);
+        names = column(at += (long) capacity * Long.BYTES, (long) capacity * Long.BYTES);
+        stock = column(at += (long) capacity * Long.BYTES, (long) capacity * Integer.BYTES);
+        meta = column(at += (long) capacity * Integer.BYTES, (long) capacity * Integer.BYTES);
+        arena = column(at + (long) capacity * Integer.BYTES, arenaCapacity);
+    }
+
+    //Хранилище в прямых буферах на товары с id меньше capacity и arenaCapacity байт названий
+    public static ItemStore inMemory(int capacity, int arenaCapacity) throws NoSuchElementException {
+        checkSizes(capacity, arenaCapacity);
+        try {
+            ItemStore store = new ItemStore(null, capacity, arenaCapacity);
+            store.writeHeader();
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);      //Без файла не бросается
+        }
+    }
+
+    //Открывает хранилище в каталоге directory или создаёт новое с заданными размерами.
+    //У существующего файла размеры берутся из его заголовка, товары доступны сразу.
+    public static ItemStore open(Path directory, int capacity, int arenaCapacity) throws UncheckedIOException {
+        checkSizes(capacity, arenaCapacity);
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve(STORE_FILE);
+            boolean exists = Files.exists(file) && Files.size(file) >= HEADER_SIZE;
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!exists) {
+                ItemStore store = new ItemStore(channel, capacity, arenaCapacity);
+                store.writeHeader();
+                return store;
+            }
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            }
+            if (head.getInt(0) != MAGIC || head.getInt(4) != FORMAT) {
+                channel.close();
+                throw new IllegalStateException("Файл " + file + " не является хранилищем товаров");
+            }
+            ItemStore store = new ItemStore(channel, head.getInt(HEADER_CAPACITY), head.getInt(HEADER_ARENA_CAPACITY));
+            store.arenaTop = head.getInt(HEADER_ARENA_TOP);
+            store.count = head.getInt(HEADER_COUNT);
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть хранилище товаров", e);
+        }
+    }
+
+    private static void checkSizes(int capacity, int arenaCapacity) {
+        if (capacity <= 0 || arenaCapacity < 0)
+            throw new NoSuchElementException("Попытка задать некорректный размер хранилища товаров!");
+    }
+
+    //Записывает товар (или заменяет товар с тем же id) с остатком count
+    public synchronized void put(Item item, int count) throws NoSuchElementException {
+        if (item == null) throw new NoSuchElementException("Попытка добавить в хранилище товар NULL!");
+        if (count < 0) throw new NoSuchElementException("Попытка задать товару отрицательный остаток!");
+        int id = item.getId();
+        checkId(id);
+        long name = storeName(id, item.getName());
+        LONGS.setRelease(prices, id * Long.BYTES, item.getPriceKopecks());
+        LONGS.setRelease(names, id * Long.BYTES, name);
+        INTS.setRelease(stock, id * Integer.BYTES, count);
+        int previous = (int) INTS.getAcquire(meta, id * Integer.BYTES);
+        INTS.setRelease(meta, id * Integer.BYTES, PRESENT | (item.getCategory() == null ? NO_CATEGORY : item.getCategory().ordinal()));
+        if (previous == 0) this.count++;
+        header.putInt(HEADER_ARENA_TOP, arenaTop).putInt(HEADER_COUNT, this.count);
+    }
+
+    //Записывает все товары текущей версии каталога с их остатками
+    public synchronized void putAll(Catalog catalog) throws NoSuchElementException {
+        if (catalog == null) throw new NoSuchElementException("Попытка записать в хранилище каталог NULL!");
+        for (Item item : catalog.version().items()) {
+            if (item != null) put(item, catalog.stockOf(item.getId()));
+        }
+    }
+
+    //Новая цена товара, коп.
+    public synchronized void setPrice(int itemId, long priceKopecks) throws NoSuchElementException {
+        checkPresent(itemId);
+        if (priceKopecks < 0) throw new NoSuchElementException("Попытка задать товару отрицательную цену!");
+        LONGS.setRelease(prices, itemId * Long.BYTES, priceKopecks);
+    }
+
+    public boolean contains(int itemId) {
+        return itemId >= 0 && itemId < capacity && (int) INTS.getAcquire(meta, itemId * Integer.BYTES) != 0;
+    }
+
+    //Наводит view на товар без создания объектов; null - товара нет в хранилище
+    public ItemView view(int itemId, ItemView view) {
+        return contains(itemId) ? view.wrap(this, itemId) : null;
+    }
+
+    //Обход всех товаров по возрастанию id одним переиспользуемым ItemView
+    public void forEach(Consumer<ItemView> action) {
+        ItemView view = new ItemView();
+        for (int id = 0; id < capacity; id++) {
+            if (contains(id)) action.accept(view.wrap(this, id));
+        }
+    }
+
+    //Атомарно списывает qty единиц товара, если их хватает
+    public boolean tryReserve(int itemId, int qty) throws NoSuchElementException {
+        checkPresent(itemId);
+        if (qty <= 0) throw new NoSuchElementException("Попытка зарезервировать некорректное количество товара!");
+        int at = itemId * Integer.BYTES;
+        int current = (int) INTS.getVolatile(stock, at);
+        while (current >= qty) {
+            int witness = (int) INTS.compareAndExchange(stock, at, current, current - qty);
+            if (witness == current) return true;
+            current = witness;
+            Thread.onSpinWait();
+        }
+        return false;
+    }
+
+    public void release(int itemId, int qty) throws NoSuchElementException {
+        checkPresent(itemId);
+        if (qty <= 0) throw new NoSuchElementException("Попытка вернуть некорректное количество товара!");
+        INTS.getAndAdd(stock, itemId * Integer.BYTES, qty);
+    }
+
+    //Число товаров в хранилище
+    public synchronized int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    //Занято байт в арене названий
+    public synchronized int arenaBytes() {
+        return arenaTop;
+    }
+
+    public synchronized void force() {
+        if (channel == null) return;
+        for (ByteBuffer column : new ByteBuffer[]{prices, names, stock, meta, arena, header}) ((MappedByteBuffer) column).force();
+    }
+
+    @Override
+    public synchronized void close() throws UncheckedIOException {
+        if (channel == null) return;
+        try {
+            force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Чтение полей для ItemView
+
+    long priceKopecks(int id) {
+        return (long) LONGS.getAcquire(prices, id * Long.BYTES);
+    }
+
+    int stock(int id) {
+        return (int) INTS.getAcquire(stock, id * Integer.BYTES);
+    }
+
+    Category category(int id) {
+        int category = (int) INTS.getAcquire(meta, id * Integer.BYTES) & 0xFF;
+        return category == NO_CATEGORY ? null : CATEGORIES[category];
+    }
+
+    //Смещение названия в арене << 16 | длина в байтах
+    long name(int id) {
+        return (long) LONGS.getAcquire(names, id * Long.BYTES);
+    }
+
+    ByteBuffer arena() {
+        return arena;
+    }
+
+    static boolean hasName(long name) {
+        return (name & 0xFFFF) != NO_NAME;
+    }
+
+    //Название в арене: то же, что у товара сейчас, не копируется повторно (переоценка через put арену не растит)
+    private long storeName(int id, String name) {
+        if (name == null) return NO_NAME;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_LENGTH)
+            throw new NoSuchElementException("Попытка добавить в хранилище товар с названием длиннее " + MAX_NAME_LENGTH + " байт!");
+        if (contains(id)) {
+            long current = name(id);
+            if (hasName(current) && sameBytes(current, bytes)) return current;
+        }
+        if (bytes.length > arenaCapacity - arenaTop)
+            throw new IllegalStateException("Арена названий хранилища товаров заполнена");
+        arena.put(arenaTop, bytes);
+        long located = (long) arenaTop << 16 | bytes.length;
+        arenaTop += bytes.length;
+        return located;
+    }
+
+    private boolean sameBytes(long name, byte[] bytes) {
+        int length = (int) (name & 0xFFFF);
+        if (length != bytes.length) return false;
+        int offset = (int) (name >>> 16);
+        for (int i = 0; i < length; i++) {
+            if (arena.get(offset + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= capacity)
+            throw new NoSuchElementException("Товар с id " + id + " не помещается в хранилище на " + capacity + " товаров!");
+    }
+
+    private void checkPresent(int id) {
+        if (!contains(id)) throw new NoSuchElementException("Товар с id " + id + " отсутствует в хранилище!");
+    }
+
+    private void writeHeader() {
+        header.putInt(0, MAGIC).putInt(4, FORMAT).putInt(HEADER_CAPACITY, capacity).putInt(HEADER_ARENA_CAPACITY, arenaCapacity)
+                .putInt(HEADER_ARENA_TOP, 0).putInt(HEADER_COUNT, 0);
+    }
+
+    //Столбец: кусок файла с позиции at или прямой буфер. Позиция столбца кратна ширине его элементов, поэтому CAS выровнен.
+    private ByteBuffer column(long at, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) throw new NoSuchElementException("Столбец хранилища товаров больше 2 ГБ!");
+        ByteBuffer column = channel == null
+                ? ByteBuffer.allocateDirect((int) size + Long.BYTES).alignedSlice(Long.BYTES)
+                : channel.map(FileChannel.MapMode.READ_WRITE, at, size);
+        return column.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
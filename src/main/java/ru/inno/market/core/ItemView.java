@@ -0,0 +1,65 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.nio.charset.StandardCharsets;
+
+//Легковесное чтение товара из ItemStore, как OrderView для заказов: один объект переиспользуется для любого
+//числа товаров, поля читаются из столбцов при каждом обращении. Объекты создаются только при чтении
+//названия (name) и сборке Item (toItem).
+public final class ItemView {
+    private ItemStore store;
+    private int id;
+
+    ItemView wrap(ItemStore store, int id) {
+        this.store = store;
+        this.id = id;
+        return this;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public Category category() {
+        return store.category(id);
+    }
+
+    public long priceKopecks() {
+        return store.priceKopecks(id);
+    }
+
+    public int stock() {
+        return store.stock(id);
+    }
+
+    //Длина названия в UTF-8, байт; -1 - названия нет
+    public int nameLength() {
+        long name = store.name(id);
+        return ItemStore.hasName(name) ? (int) (name & 0xFFFF) : -1;
+    }
+
+    public String name() {
+        long name = store.name(id);
+        if (!ItemStore.hasName(name)) return null;
+        byte[] bytes = new byte[(int) (name & 0xFFFF)];
+        store.arena().get((int) (name >>> 16), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //Товар в куче с текущими полями (отдельный объект при каждом вызове)
+    public Item toItem() {
+        return Item.ofKopecks(id, name(), category(), priceKopecks());
+    }
+
+    @Override
+    public String toString() {
+        return "ItemView{" +
+                "id=" + id +
+                ", category=" + category() +
+                ", priceKopecks=" + priceKopecks() +
+                ", stock=" + stock() +
+                '}';
+    }
+}
@@ -0,0 +1,223 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.PromoCodes;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//Метрики горячих путей маркета: число вызовов и ошибок, гистограммы задержек по операциям,
+//число отказов из-за нехватки товара и применения каждого промокода.
+//
+//Запись дешёвая и без блокировок: счётчики - LongAdder, гистограммы - полосы (stripes) атомарных массивов,
+//полоса выбирается по id потока, так что параллельные потоки редко пишут в одну и ту же строку кэша.
+//Вызовы считаются все, а длительность замеряется у случайной выборки - каждого sampleEvery-го вызова в среднем:
+//System.nanoTime() стоит десятки наносекунд, больше самих быстрых операций.
+//Гистограмма устроена как HdrHistogram: значения до 2^SUB_BITS наносекунд хранятся точно, дальше -
+//по SUB_BUCKETS ячеек на каждую степень двойки (погрешность до 1/SUB_BUCKETS, ~3%). Значения больше MAX_NANOS
+//попадают в последнюю ячейку.
+//
+//exportText() выдаёт снимок в текстовом формате Prometheus.
+public class MarketMetrics {
+    public enum Operation {
+        CREATE_ORDER, ADD_ITEM, ADD_ITEMS, APPLY_DISCOUNT, GET_ORDER, CHECKOUT, COMPLETE_ORDER, GET_ITEM
+    }
+
+    public static final int DEFAULT_SAMPLE_EVERY = 32;
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;        //start() для вызова, который не замеряется
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 36;                   //2^36 нс - около 69 секунд
+    static final long MAX_NANOS = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final int sampleMask;
+    private final int stripeMask;
+    private final AtomicLongArray[][] histograms;     //[операция][полоса] -> ячейки
+    private final LongAdder[] calls = new LongAdder[OPERATIONS.length];
+    private final LongAdder[] errors = new LongAdder[OPERATIONS.length];
+    private final LongAdder stockOuts = new LongAdder();
+    private final Map<String, LongAdder> promoUses = new ConcurrentHashMap<>();    //Промокод -> число применений
+
+    public MarketMetrics() {
+        this(DEFAULT_SAMPLE_EVERY);
+    }
+
+    //sampleEvery - степень двойки; 1 - замерять каждый вызов
+    public MarketMetrics(int sampleEvery) {
+        if (sampleEvery <= 0 || Integer.bitCount(sampleEvery) != 1)
+            throw new NoSuchElementException("Попытка задать некорректную частоту замеров: " + sampleEvery);
+        sampleMask = sampleEvery - 1;
+        int stripes = Integer.highestOneBit(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8)) * 2 - 1);
+        stripeMask = stripes - 1;
+        histograms = new AtomicLongArray[OPERATIONS.length][stripes];
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            for (int stripe = 0; stripe < stripes; stripe++) histograms[op][stripe] = new AtomicLongArray(BUCKETS);
+            calls[op] = new LongAdder();
+            errors[op] = new LongAdder();
+        }
+        for (PromoCodes code : PromoCodes.values()) promoUses.put(code.name(), new LongAdder());
+    }
+
+    //Начало вызова: System.nanoTime(), если вызов попал в выборку, иначе NOT_SAMPLED
+    public long start() {
+        if ((ThreadLocalRandom.current().nextInt() & sampleMask) != 0) return NOT_SAMPLED;
+        return System.nanoTime();
+    }
+
+    //Завершение вызова, начатого в start. failed - вызов завершился исключением.
+    public void record(Operation operation, long start, boolean failed) {
+        calls[operation.ordinal()].increment();
+        if (failed) errors[operation.ordinal()].increment();
+        if (start != NOT_SAMPLED) addToHistogram(operation, System.nanoTime() - start);
+    }
+
+    //Запись вызова с уже измеренной длительностью, нс
+    public void recordLatency(Operation operation, long nanos, boolean failed) {
+        calls[operation.ordinal()].increment();
+        if (failed) errors[operation.ordinal()].increment();
+        addToHistogram(operation, nanos);
+    }
+
+    private void addToHistogram(Operation operation, long nanos) {
+        int stripe = (int) Thread.currentThread().threadId() & stripeMask;
+        histograms[operation.ordinal()][stripe].getAndIncrement(bucket(nanos));
+    }
+
+    public void stockOut() {
+        stockOuts.increment();
+    }
+
+    public void promoApplied(PromoCodes code) {
+        promoApplied(code.name());
+    }
+
+    public void promoApplied(String code) {
+        LongAdder uses = promoUses.get(code);
+        if (uses == null) uses = promoUses.computeIfAbsent(code, c -> new LongAdder());
+        uses.increment();
+    }
+
+    public long count(Operation operation) {
+        return calls[operation.ordinal()].sum();
+    }
+
+    public long errors(Operation operation) {
+        return errors[operation.ordinal()].sum();
+    }
+
+    public long stockOuts() {
+        return stockOuts.sum();
+    }
+
+    public long promoUses(PromoCodes code) {
+        return promoUses(code.name());
+    }
+
+    public long promoUses(String code) {
+        LongAdder uses = promoUses.get(code);
+        return uses == null ? 0 : uses.sum();
+    }
+
+    //Задержка, которую не превышают quantile (0..1) замеренных вызовов операции, нс; верхняя граница ячейки гистограммы
+    public long latencyNanos(Operation operation, double quantile) {
+        return quantile(merged(operation), quantile);
+    }
+
+    public String exportText() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# TYPE market_operation_latency_seconds summary\n");
+        for (Operation operation : OPERATIONS) {
+            long[] buckets = merged(operation);
+            String name = operation.name().toLowerCase(Locale.ROOT);
+            long count = count(operation);
+            long sampled = 0;
+            double sampledSum = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                sampled += buckets[i];
+                sampledSum += buckets[i] * (double) bucketMiddle(i);
+            }
+            double sum = sampled == 0 ? 0 : sampledSum * count / sampled;     //Оценка по выборке
+            for (double quantile : QUANTILES) {
+                out.append("market_operation_latency_seconds{operation=\"").append(name)
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(quantile(buckets, quantile))).append('\n');
+            }
+            out.append("market_operation_latency_seconds_sum{operation=\"").append(name).append("\"} ")
+                    .append(seconds(sum)).append('\n');
+            out.append("market_operation_latency_seconds_count{operation=\"").append(name).append("\"} ")
+                    .append(count).append('\n');
+        }
+        out.append("# TYPE market_operation_errors_total counter\n");
+        for (Operation operation : OPERATIONS) {
+            out.append("market_operation_errors_total{operation=\"").append(operation.name().toLowerCase(Locale.ROOT))
+                    .append("\"} ").append(errors(operation)).append('\n');
+        }
+        out.append("# TYPE market_stock_outs_total counter\n");
+        out.append("market_stock_outs_total ").append(stockOuts()).append('\n');
+        out.append("# TYPE market_promo_applied_total counter\n");
+        for (String code : new TreeSet<>(promoUses.keySet())) {
+            out.append("market_promo_applied_total{code=\"").append(code).append("\"} ")
+                    .append(promoUses(code)).append('\n');
+        }
+        return out.toString();
+    }
+
+    private long[] merged(Operation operation) {
+        long[] buckets = new long[BUCKETS];
+        for (AtomicLongArray stripe : histograms[operation.ordinal()]) {
+            for (int i = 0; i < BUCKETS; i++) buckets[i] += stripe.get(i);
+        }
+        return buckets;
+    }
+
+    private static long quantile(long[] buckets, double quantile) {
+        long count = 0;
+        for (long bucketCount : buckets) count += bucketCount;
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return bucketEnd(i);
+        }
+        return bucketEnd(buckets.length - 1);
+    }
+
+    private static String seconds(double nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    //Номер ячейки: первые SUB_BUCKETS значений - по одному, дальше по SUB_BUCKETS ячеек на степень двойки
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) Math.max(nanos, 0);
+        if (nanos > MAX_NANOS) nanos = MAX_NANOS;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketStart(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+
+    static long bucketEnd(int bucket) {
+        return bucket + 1 < BUCKETS ? bucketStart(bucket + 1) - 1 : MAX_NANOS;
+    }
+
+    private static long bucketMiddle(int bucket) {
+        return (bucketStart(bucket) + bucketEnd(bucket)) / 2;
+    }
+}
@@ -2,50 +2,696 @@ package ru.inno.market.core;
 
 import ru.inno.market.model.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+//Сервис потокобезопасен: id заказов выдаются атомарно, заказы хранятся в ConcurrentHashMap,
+//а изменения одного заказа сериализуются блокировкой самого заказа (см. Order).
+//
+//Жизненный цикл заказа: OPEN -> checkout -> PAID -> ship -> SHIPPED, отмена (cancel) - из OPEN или PAID.
+//Завершённые заказы (SHIPPED, CANCELLED) переносятся из карты в архив вне кучи (OrderArchive), поэтому в памяти
+//сервиса живут только открытые и оплаченные заказы; чтение по id прозрачно находит заказ в архиве.
 public class MarketService {
 
-    private int orderCounter;
-    private Map<Integer, Order> orders;
+    private final AtomicInteger orderCounter;
+    private final Map<Integer, Order> orders;
+    private final Catalog catalog;     //Каталог, со склада которого резервируются товары пакетных заказов
+    private final MarketMetrics metrics;       //Метрики каталога: сервис пишет в них свои операции
+    private final StockReservations reservations;      //Временные резервы товаров заказов до оформления
+    private final Map<Integer, OrderStock> orderStock = new ConcurrentHashMap<>();     //Id заказа -> товар, взятый для него со склада, и версия цен
+    private final PromotionEngine promotions = PromotionEngine.withPromoCodes();    //Правила скидок для applyPromotions
+    private final ClientRegistry clients;      //Клиенты и история их заказов
+    private final OrderArchive archive;        //Завершённые заказы
+    private volatile OrderJournal journal;     //Журнал изменений; null - заказы живут только в памяти
+    private volatile ChangeEventBus events;    //Шина событий изменений; null - события не публикуются
 
     public MarketService() {
-        orderCounter = 0;
-        orders = new HashMap<>();
+        this(new Catalog());
+    }
+
+    public MarketService(Catalog catalog) {
+        this(catalog, catalog == null ? null : new StockReservations(catalog));
+    }
+
+    public MarketService(Catalog catalog, StockReservations reservations) {
+        this(catalog, reservations, new ClientRegistry());
+    }
+
+    public MarketService(Catalog catalog, StockReservations reservations, ClientRegistry clients) {
+        this(catalog, reservations, clients, OrderArchive.inMemory());
+    }
+
+    //Заказы, уже лежащие в архиве (OrderArchive.open), попадают в историю клиентов и не получают повторно свои id
+    public MarketService(Catalog catalog, StockReservations reservations, ClientRegistry clients, OrderArchive archive) {
+        if (catalog == null) throw new NoSuchElementException("Попытка создать сервис для каталога NULL!");
+        if (reservations == null) throw new NoSuchElementException("Попытка создать сервис без резервов товара!");
+        if (clients == null) throw new NoSuchElementException("Попытка создать сервис без реестра клиентов!");
+        if (archive == null) throw new NoSuchElementException("Попытка создать сервис без архива заказов!");
+        this.catalog = catalog;
+        this.reservations = reservations;
+        this.clients = clients;
+        this.archive = archive;
+        this.metrics = catalog.getMetrics();
+        orders = new ConcurrentHashMap<>();
+        //Счётчик собирается локально: лямбда не должна видеть недостроенный сервис
+        AtomicInteger counter = new AtomicInteger();
+        archive.forEach(view -> {
+            clients.orderCreated(clients.register(view.clientId(), view.clientNickname()), view.id());
+            counter.accumulateAndGet(view.id() + 1, Math::max);
+        });
+        orderCounter = counter;
     }
 
     public int createOrderFor(Client client) throws NoSuchElementException{
-        if (client == null) throw new NoSuchElementException("Попытка создать заказ для клиента NULL!");  //Добавлена защита от передачи клиента NULL
-        int id = orderCounter++;
-        Order order = new Order(id, client);
-        orders.put(id, order);
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            if (client == null) throw new NoSuchElementException("Попытка создать заказ для клиента NULL!");  //Добавлена защита от передачи клиента NULL
+            clients.acquireOrder(client);
+            int id = orderCounter.getAndIncrement();
+            Order order = new Order(id, client);
+            OrderJournal journal = this.journal;
+            if (journal == null) {
+                orders.put(id, order);
+            } else {
+                journal.lock();
+                try {
+                    orders.put(id, order);
+                    journal.orderCreated(id, client);
+                } finally {
+                    journal.unlock();
+                }
+            }
+            changed(ChangeEvent.Type.ORDER_CREATED, order, ChangeEvent.NONE, 0, 0);
+            clients.orderCreated(client, id);
+            failed = false;
+            return order.getId();
+        } finally {
+            metrics.record(MarketMetrics.Operation.CREATE_ORDER, start, failed);
+        }
+    }
 
-        return order.getId();
+    //Создание заказов для списка клиентов. Id выделяются одним блоком, возвращаются в порядке клиентов.
+    //Всё или ничего по лимиту: если хотя бы один клиент превысил лимит, уже списанные заказы возвращаются в лимит
+    //остальных и не создаётся ни одного заказа.
+    public int[] createOrdersFor(List<Client> clients) throws NoSuchElementException {
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            if (clients == null) throw new NoSuchElementException("Попытка создать заказы для списка клиентов NULL!");
+            for (Client client : clients) {
+                if (client == null) throw new NoSuchElementException("Попытка создать заказ для клиента NULL!");
+            }
+            acquireOrders(clients);
+            int firstId = orderCounter.getAndAdd(clients.size());
+            int[] ids = new int[clients.size()];
+            OrderJournal journal = this.journal;
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = firstId + i;
+                Order order = new Order(ids[i], clients.get(i));
+                if (journal == null) {
+                    orders.put(ids[i], order);
+                } else {
+                    journal.lock();
+                    try {
+                        orders.put(ids[i], order);
+                        journal.orderCreated(ids[i], clients.get(i));
+                    } finally {
+                        journal.unlock();
+                    }
+                }
+                changed(ChangeEvent.Type.ORDER_CREATED, order, ChangeEvent.NONE, 0, 0);
+                this.clients.orderCreated(clients.get(i), ids[i]);
+            }
+            failed = false;
+            return ids;
+        } finally {
+            metrics.record(MarketMetrics.Operation.CREATE_ORDER, start, failed);
+        }
+    }
+
+    //Списание заказа из лимита каждого клиента списка; при отказе списанное раньше возвращается
+    private void acquireOrders(List<Client> clients) {
+        int acquired = 0;
+        try {
+            for (Client client : clients) {
+                this.clients.acquireOrder(client);
+                acquired++;
+            }
+        } catch (NoSuchElementException e) {
+            for (int i = 0; i < acquired; i++) this.clients.refundOrder(clients.get(i));
+            throw e;
+        }
     }
 
     public void addItemToOrder(Item item, int orderId ) throws NoSuchElementException{
-        if (item == null)
-            throw new NoSuchElementException("Попытка добавить в заказ товар NULL!");  //Добавлена защита от передачи товара NULL
-        if (!orders.containsKey(orderId))
-            throw new NoSuchElementException("Попытка добавить товар в отсутствующий заказ!");  //Добавлена защита от передачи неправильного номера заказа
-        orders.get(orderId).addItem(item);
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            if (item == null)
+                throw new NoSuchElementException("Попытка добавить в заказ товар NULL!");  //Добавлена защита от передачи товара NULL
+            Order order = orders.get(orderId);
+            if (order == null)
+                throw new NoSuchElementException("Попытка добавить товар в отсутствующий заказ!");  //Добавлена защита от передачи неправильного номера заказа
+            OrderJournal journal = this.journal;
+            if (journal == null) {
+                order.addItem(item);
+            } else {
+                journal.lock();
+                try {
+                    order.addItem(item);
+                    journal.itemAdded(orderId, item, 1);
+                } finally {
+                    journal.unlock();
+                }
+            }
+            changed(ChangeEvent.Type.ITEM_ADDED, order, item.getId(), 1, item.getPriceKopecks());
+            failed = false;
+        } finally {
+            metrics.record(MarketMetrics.Operation.ADD_ITEM, start, failed);
+        }
+    }
+
+    //Пакетное добавление товаров (id товара -> количество) в заказ.
+    //Товары резервируются на складе каталога все сразу: если хотя бы одного не хватает, заказ не меняется.
+    public void addItemsToOrder(int orderId, Map<Integer, Integer> itemQuantities) throws NoSuchElementException {
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Order order = orders.get(orderId);
+            if (order == null)
+                throw new NoSuchElementException("Попытка добавить товар в отсутствующий заказ!");
+            OrderJournal journal = this.journal;
+            if (journal == null) {
+                addReservedItems(order, itemQuantities, null);
+            } else {
+                journal.lock();
+                try {
+                    addReservedItems(order, itemQuantities, journal);
+                } finally {
+                    journal.unlock();
+                }
+            }
+            failed = false;
+        } finally {
+            metrics.record(MarketMetrics.Operation.ADD_ITEMS, start, failed);
+        }
+    }
+
+    private void addReservedItems(Order order, Map<Integer, Integer> itemQuantities, OrderJournal journal) {
+        if (!catalog.tryReserveAll(itemQuantities))
+            throw new NoSuchElementException("Товар закончился");
+        synchronized (order) {      //Одна блокировка заказа на весь пакет
+            if (order.getStatus() != OrderStatus.OPEN) {
+                for (Map.Entry<Integer, Integer> line : itemQuantities.entrySet()) catalog.release(line.getKey(), line.getValue());
+                throw new NoSuchElementException("Заказ в состоянии " + order.getStatus() + " нельзя изменить!");
+            }
+            OrderStock stock = stockOf(order);
+            for (Map.Entry<Integer, Integer> line : itemQuantities.entrySet()) {
+                Item item = stock.priced(catalog, line.getKey());
+                order.addItem(item, line.getValue());
+                if (journal != null) journal.itemAdded(order.getId(), item, line.getValue());
+                changed(ChangeEvent.Type.ITEM_ADDED, order, item.getId(), line.getValue(), item.getPriceKopecks());
+            }
+            stock.take(itemQuantities);
+        }
+    }
+
+    //Пакетное добавление товаров с временным резервом: товар списывается со склада на ttlMillis
+    //и возвращается на склад, если заказ не оформлен (checkout) за это время. Всё или ничего, как addItemsToOrder.
+    public void holdItemsForOrder(int orderId, Map<Integer, Integer> itemQuantities, long ttlMillis) throws NoSuchElementException {
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Order order = orders.get(orderId);
+            if (order == null)
+                throw new NoSuchElementException("Попытка добавить товар в отсутствующий заказ!");
+            OrderJournal journal = this.journal;
+            if (journal == null) {
+                holdItems(order, itemQuantities, ttlMillis, null);
+            } else {
+                journal.lock();
+                try {
+                    holdItems(order, itemQuantities, ttlMillis, journal);
+                } finally {
+                    journal.unlock();
+                }
+            }
+            failed = false;
+        } finally {
+            metrics.record(MarketMetrics.Operation.ADD_ITEMS, start, failed);
+        }
+    }
+
+    private void holdItems(Order order, Map<Integer, Integer> itemQuantities, long ttlMillis, OrderJournal journal) {
+        long[] holds = reservations.holdAll(itemQuantities, ttlMillis);
+        if (holds == null)
+            throw new NoSuchElementException("Товар закончился");
+        synchronized (order) {
+            if (order.getStatus() != OrderStatus.OPEN) {
+                for (long hold : holds) reservations.cancel(hold);
+                throw new NoSuchElementException("Заказ в состоянии " + order.getStatus() + " нельзя изменить!");
+            }
+            OrderStock stock = stockOf(order);
+            Item[] items = new Item[holds.length];
+            int[] quantities = new int[holds.length];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> line : itemQuantities.entrySet()) {      //Порядок обхода - как в holdAll
+                Item item = stock.priced(catalog, line.getKey());
+                order.addItem(item, line.getValue());
+                if (journal != null) {
+                    journal.holdPlaced(holds[i], order.getId(), item, line.getValue());
+                    journal.itemAdded(order.getId(), item, line.getValue());
+                }
+                changed(ChangeEvent.Type.ITEM_ADDED, order, item.getId(), line.getValue(), item.getPriceKopecks());
+                items[i] = item;
+                quantities[i++] = line.getValue();
+            }
+            stock.hold(holds, items, quantities);
+        }
+    }
+
+    //Оформление (оплата) заказа: подтверждает все временные резервы его товаров и переводит заказ в PAID.
+    //Если хотя бы один резерв истёк, остальные снимаются, товар возвращается на склад, а товары без резерва
+    //убираются из заказа (вместе со скидкой - см. Order.removeItem). Выбрасывается исключение, заказ остаётся открытым:
+    //повторное оформление оплатит только товар, который действительно взят со склада.
+    public void checkout(int orderId) throws NoSuchElementException {
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Order order = orders.get(orderId);
+            if (order == null)
+                throw new NoSuchElementException("Попытка оформить отсутствующий заказ!");
+            OrderJournal journal = this.journal;
+            if (journal == null) {
+                pay(order, null);
+            } else {
+                journal.lock();
+                try {
+                    pay(order, journal);
+                } finally {
+                    journal.unlock();
+                }
+            }
+            failed = false;
+        } finally {
+            metrics.record(MarketMetrics.Operation.CHECKOUT, start, failed);
+        }
     }
 
+    private void pay(Order order, OrderJournal journal) {
+        synchronized (order) {
+            if (order.getStatus() != OrderStatus.OPEN)
+                throw new NoSuchElementException("Заказ в состоянии " + order.getStatus() + " нельзя оформить!");
+            OrderStock stock = orderStock.get(order.getId());
+            long[] holds = stock == null ? new long[0] : stock.holds;
+            Map<Item, Integer> expired = stock == null ? Map.of() : stock.confirm(reservations);
+            if (journal != null && expired.isEmpty()) {
+                for (long hold : holds) journal.holdConfirmed(hold);
+            }
+            if (!expired.isEmpty()) {
+                for (Map.Entry<Item, Integer> line : expired.entrySet()) {
+                    Item item = line.getKey();
+                    order.removeItem(item, line.getValue());
+                    if (journal != null) journal.itemRemoved(order.getId(), item, line.getValue());
+                    changed(ChangeEvent.Type.ITEM_REMOVED, order, item.getId(), line.getValue(), item.getPriceKopecks());
+                }
+                throw new NoSuchElementException("Резерв товаров заказа истёк, товары без резерва убраны из заказа");
+            }
+            order.moveTo(OrderStatus.PAID);
+            if (journal != null) journal.statusChanged(order.getId(), OrderStatus.PAID);
+            changed(ChangeEvent.Type.STATUS_CHANGED, order, ChangeEvent.NONE, 0, OrderStatus.PAID.ordinal());
+        }
+    }
+
+    //Отгрузка оплаченного заказа: заказ переходит в SHIPPED и уходит в архив
+    public void ship(int orderId) throws NoSuchElementException {
+        complete(orderId, OrderStatus.SHIPPED);
+    }
+
+    //Отмена открытого или оплаченного заказа: товар, взятый для заказа со склада, возвращается на склад,
+    //неподтверждённые резервы снимаются, заказ переходит в CANCELLED и уходит в архив.
+    //Товар заказов, восстановленных из журнала, на склад не возвращается: сервис знает только то, что брал сам.
+    public void cancel(int orderId) throws NoSuchElementException {
+        complete(orderId, OrderStatus.CANCELLED);
+    }
+
+    private void complete(int orderId, OrderStatus status) {
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Order order = orders.get(orderId);
+            if (order == null)
+                throw new NoSuchElementException("Попытка завершить отсутствующий заказ!");
+            OrderJournal journal = this.journal;
+            if (journal == null) {
+                complete(order, status, null);
+            } else {
+                journal.lock();
+                try {
+                    complete(order, status, journal);
+                } finally {
+                    journal.unlock();
+                }
+            }
+            failed = false;
+        } finally {
+            metrics.record(MarketMetrics.Operation.COMPLETE_ORDER, start, failed);
+        }
+    }
+
+    private void complete(Order order, OrderStatus status, OrderJournal journal) {
+        synchronized (order) {
+            if (!order.getStatus().canMoveTo(status))
+                throw new NoSuchElementException("Недопустимый переход заказа из " + order.getStatus() + " в " + status + "!");
+            //Сначала архив, уже с новым состоянием: не записался - заказ, журнал и подписчики остаются как были.
+            //Заказ в архиве раньше, чем уходит из карты: читатель по id всегда найдёт его в одном из двух мест
+            archive.append(order, status);
+            order.moveTo(status);
+            if (journal != null) journal.statusChanged(order.getId(), status);
+            changed(ChangeEvent.Type.STATUS_CHANGED, order, ChangeEvent.NONE, 0, status.ordinal());
+            OrderStock stock = orderStock.remove(order.getId());
+            if (stock != null && status == OrderStatus.CANCELLED) stock.release(reservations, catalog);
+            orders.remove(order.getId());
+        }
+    }
+
+    private void changed(ChangeEvent.Type type, Order order, int itemId, int quantity, long amount) {
+        ChangeEventBus events = this.events;
+        if (events != null) events.publish(type, order.getId(), order.getClient().getId(), itemId, quantity, amount);
+    }
+
+    private OrderStock stockOf(Order order) {
+        return orderStock.computeIfAbsent(order.getId(), id -> new OrderStock(catalog.version()));
+    }
+
+    //Версия каталога, по ценам которой в заказ добавляются товары по id (addItemsToOrder, holdItemsForOrder).
+    //Закрепляется при первом таком добавлении; до него и для завершённых заказов - текущая версия каталога.
+    //Товар, переданный объектом (addItemToOrder), уже оценён вызывающим и добавляется по своей цене.
+    public CatalogVersion catalogVersionOf(int orderId) throws NoSuchElementException {
+        if (!orders.containsKey(orderId) && !archive.contains(orderId))
+            throw new NoSuchElementException("Попытка запросить версию каталога отсутствующего заказа!");
+        OrderStock stock = orderStock.get(orderId);
+        return stock == null ? catalog.version() : stock.prices;
+    }
+
+    //Скидка по одному промокоду из PromoCodes на весь заказ, без проверки условий; повторная скидка игнорируется.
+    //Правила с областью действия, ступенями и проверкой первого заказа - applyPromotions.
     public double applyDiscountForOrder(int orderId, PromoCodes codes) throws NoSuchElementException{
-        if (!orders.containsKey(orderId))
-            throw new NoSuchElementException("Попытка добавить скидку в отсутствующий заказ!");  //Добавлена защита от передачи неправильного номера заказа
-        if (codes == null)
-            throw new NoSuchElementException("Попытка добавить скидку NULL в заказ!");  //Добавлена защита от передачи неправильного номера заказа
-        Order order = orders.get(orderId);
-        order.applyDiscount(codes.getDiscount());
-        return order.getTotalPrice();
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Order order = orders.get(orderId);
+            if (order == null)
+                throw new NoSuchElementException("Попытка добавить скидку в отсутствующий заказ!");  //Добавлена защита от передачи неправильного номера заказа
+            if (codes == null)
+                throw new NoSuchElementException("Попытка добавить скидку NULL в заказ!");  //Добавлена защита от передачи неправильного номера заказа
+            OrderJournal journal = this.journal;
+            double total;
+            if (journal == null) {
+                total = order.applyDiscountAndGetTotal(codes.getDiscountBps());
+            } else {
+                journal.lock();
+                try {
+                    //Сначала скидка, потом запись: отклонённая скидка (заказ не открыт) не должна попасть в журнал
+                    total = order.applyDiscountAndGetTotal(codes.getDiscountBps());
+                    journal.discountApplied(orderId, codes.getDiscountBps());
+                } finally {
+                    journal.unlock();
+                }
+            }
+            changed(ChangeEvent.Type.DISCOUNT_APPLIED, order, ChangeEvent.NONE, 0, codes.getDiscountBps());
+            metrics.promoApplied(codes);
+            failed = false;
+            return total;
+        } finally {
+            metrics.record(MarketMetrics.Operation.APPLY_DISCOUNT, start, failed);
+        }
+    }
+
+    //Применение правил движка акций (автоматических и по предъявленным кодам) к текущей корзине заказа.
+    //Скидка применяется к заказу один раз; возвращается итоговая стоимость.
+    public double applyPromotions(int orderId, Collection<String> codes) throws NoSuchElementException {
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Order order = orders.get(orderId);
+            if (order == null)
+                throw new NoSuchElementException("Попытка добавить скидку в отсутствующий заказ!");
+            if (codes == null)
+                throw new NoSuchElementException("Попытка добавить скидку по промокодам NULL!");
+            boolean firstOrder = isFirstOrder(order);
+            OrderJournal journal = this.journal;
+            List<String> used = new ArrayList<>(codes.size());
+            long total;
+            if (journal == null) {
+                total = applyPromotions(order, codes, firstOrder, null, used);
+            } else {
+                journal.lock();
+                try {
+                    total = applyPromotions(order, codes, firstOrder, journal, used);
+                } finally {
+                    journal.unlock();
+                }
+            }
+            //Считаются только коды, которые дали скидку, а не все предъявленные
+            for (String code : used) metrics.promoApplied(code);
+            failed = false;
+            return Money.toRubles(total);
+        } finally {
+            metrics.record(MarketMetrics.Operation.APPLY_DISCOUNT, start, failed);
+        }
+    }
+
+    //Скидка считается по снимку корзины и применяется, только если заказ с тех пор не менялся.
+    //Нулевая скидка заказ не помечает: ни записи в журнале, ни события. В used - коды, давшие скидку.
+    //Возвращает итоговую стоимость, коп.
+    private long applyPromotions(Order order, Collection<String> codes, boolean firstOrder, OrderJournal journal,
+                                 List<String> used) {
+        while (true) {
+            OrderSnapshot snapshot = order.snapshot();
+            if (snapshot.isDiscountApplied())
+                throw new NoSuchElementException("К заказу уже применена скидка!");
+            used.clear();
+            long discount = promotions.discountKopecks(snapshot, codes, firstOrder, used);
+            if (discount == 0) return snapshot.getTotalKopecks();
+            synchronized (order) {
+                if (order.getVersion() != snapshot.getVersion()) continue;
+                //Сначала скидка, потом запись: отклонённая скидка (заказ не открыт) не должна попасть в журнал
+                long total = order.applyDiscountKopecks(discount);
+                if (journal != null) journal.discountAmountApplied(order.getId(), discount);
+                changed(ChangeEvent.Type.DISCOUNT_AMOUNT_APPLIED, order, ChangeEvent.NONE, 0, discount);
+                return total;
+            }
+        }
     }
 
+    //Заказ - первый у клиента (с наименьшим id среди его заказов)
+    public boolean isFirstOrder(Order order) {
+        return clients.firstOrderId(order.getClient().getId()) == order.getId();
+    }
+
+    //Заказы клиента в порядке создания, включая завершённые (из архива)
+    public List<Order> getOrdersFor(int clientId) {
+        int[] ids = clients.orderIds(clientId);
+        List<Order> result = new ArrayList<>(ids.length);
+        for (int id : ids) result.add(lookup(id));
+        return result;
+    }
+
+    //Заказ из памяти или, если он завершён, собранный из архива (каждый раз новый объект)
     public Order getOrderInfo(int id) throws NoSuchElementException {
-        if (!orders.containsKey(id))
-            throw new NoSuchElementException("Попытка получить отсутствующий заказ!");  //Добавлена защита от передачи неправильного номера заказа
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Order order = lookup(id);
+            if (order == null)
+                throw new NoSuchElementException("Попытка получить отсутствующий заказ!");  //Добавлена защита от передачи неправильного номера заказа
+            failed = false;
+            return order;
+        } finally {
+            metrics.record(MarketMetrics.Operation.GET_ORDER, start, failed);
+        }
+    }
+
+    //Неизменяемый снимок заказа для частого чтения: без блокировки, пока заказ не меняется
+    public OrderSnapshot getOrderSnapshot(int id) throws NoSuchElementException {
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            Order order = lookup(id);
+            if (order == null)
+                throw new NoSuchElementException("Попытка получить отсутствующий заказ!");
+            OrderSnapshot snapshot = order.snapshot();
+            failed = false;
+            return snapshot;
+        } finally {
+            metrics.record(MarketMetrics.Operation.GET_ORDER, start, failed);
+        }
+    }
+
+    private Order lookup(int id) {
+        Order order = orders.get(id);
+        return order != null ? order : archive.read(id);
+    }
+
+    //Число заказов в памяти сервиса (открытых и оплаченных)
+    public int liveOrderCount() {
+        return orders.size();
+    }
+
+    public OrderArchive getArchive() {
+        return archive;
+    }
+
+    public ClientRegistry getClients() {
+        return clients;
+    }
+
+    public PromotionEngine getPromotions() {
+        return promotions;
+    }
+
+    public MarketMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public StockReservations getReservations() {
+        return reservations;
+    }
+
+    //Подключает журнал: с этого момента все изменения заказов и остатков каталога записываются в него.
+    //Восстановление (OrderJournal.recover) выполняется до подключения.
+    public void attachJournal(OrderJournal journal) {
+        if (journal == null) throw new NoSuchElementException("Попытка подключить журнал NULL!");
+        catalog.attachJournal(journal);
+        this.journal = journal;
+    }
+
+    //Подключает шину событий: изменения заказов и остатков каталога публикуются в неё (см. ChangeEvent).
+    //Событие публикуется сразу после изменения; с журналом - под его блокировкой, в порядке записей журнала.
+    //Шина с BLOCK задерживает изменения, пока отстают потребители.
+    public void attachEvents(ChangeEventBus events) {
+        if (events == null) throw new NoSuchElementException("Попытка подключить шину событий NULL!");
+        catalog.attachEvents(events);
+        this.events = events;
+    }
+
+    //Служебные методы для журнала заказов (OrderJournal)
+
+    Order findOrder(int id) {
         return orders.get(id);
     }
-}
\ No newline at end of file
+
+    Collection<Order> allOrders() {
+        return orders.values();
+    }
+
+    int nextOrderId() {
+        return orderCounter.get();
+    }
+
+    //Заказ, уже лежащий в архиве, в историю клиента повторно не записывается: его добавил конструктор
+    void restoreOrder(Order order) {
+        orders.put(order.getId(), order);
+        if (!archive.contains(order.getId())) clients.orderCreated(order.getClient(), order.getId());
+        restoreOrderCounter(order.getId() + 1);
+    }
+
+    //Завершённый заказ уходит в архив, если его там ещё нет
+    void restoreStatus(int orderId, OrderStatus status) {
+        Order order = orders.get(orderId);
+        if (order == null) throw new IllegalStateException("Журнал ссылается на отсутствующий заказ " + orderId);
+        order.moveTo(status);
+        if (!status.isCompleted()) return;
+        if (!archive.contains(orderId)) archive.append(order);
+        orders.remove(orderId);
+    }
+
+    void restoreOrderCounter(int nextId) {
+        orderCounter.accumulateAndGet(nextId, Math::max);
+    }
+
+    //Действующие резервы открытых заказов - для снимка журнала. Вызывать под блокировкой журнала.
+    List<Hold> activeHolds() {
+        List<Hold> result = new ArrayList<>();
+        orderStock.forEach((orderId, stock) -> {
+            for (int i = 0; i < stock.holds.length; i++) {
+                if (reservations.isActive(stock.holds[i]))
+                    result.add(new Hold(stock.holds[i], orderId, stock.heldItems[i], stock.heldQuantities[i]));
+            }
+        });
+        return result;
+    }
+
+    //Резерв товара заказа: id резерва в StockReservations и строка заказа, которую он держит
+    record Hold(long id, int orderId, Item item, int quantity) {
+    }
+
+    //Товар, взятый со склада для открытого или оплаченного заказа, и закреплённая за заказом версия каталога:
+    //переоценка каталога не меняет цен товаров, которые ещё будут добавлены в уже оценённую корзину.
+    //Меняется под блокировкой заказа.
+    private static final class OrderStock {
+        private final CatalogVersion prices;
+        private long[] holds = new long[0];                            //Неподтверждённые резервы
+        private Item[] heldItems = new Item[0];                         //Их строки в заказе: товар и количество
+        private int[] heldQuantities = new int[0];
+        private final Map<Integer, Integer> taken = new HashMap<>();    //Списанный со склада окончательно
+
+        OrderStock(CatalogVersion prices) {
+            this.prices = prices;
+        }
+
+        //Товар по ценам закреплённой версии; товар, появившийся в каталоге позже, - по текущей цене
+        Item priced(Catalog catalog, int itemId) {
+            return prices.contains(itemId) ? prices.getItem(itemId) : catalog.getItemInfo(itemId);
+        }
+
+        void take(Map<Integer, Integer> quantities) {
+            quantities.forEach((itemId, qty) -> taken.merge(itemId, qty, Integer::sum));
+        }
+
+        void hold(long[] added, Item[] items, int[] quantities) {
+            int size = holds.length;
+            holds = Arrays.copyOf(holds, size + added.length);
+            heldItems = Arrays.copyOf(heldItems, size + added.length);
+            heldQuantities = Arrays.copyOf(heldQuantities, size + added.length);
+            System.arraycopy(added, 0, holds, size, added.length);
+            System.arraycopy(items, 0, heldItems, size, added.length);
+            System.arraycopy(quantities, 0, heldQuantities, size, added.length);
+        }
+
+        //Подтверждает резервы: их товар становится списанным. Если резерв истёк, все резервы сняты,
+        //и возвращаются их строки - товар, который больше не взят для заказа; пусто - подтверждено.
+        Map<Item, Integer> confirm(StockReservations reservations) {
+            Map<Item, Integer> expired = Map.of();
+            if (holds.length == 0 || reservations.confirmAll(holds)) {
+                for (int i = 0; i < holds.length; i++) taken.merge(heldItems[i].getId(), heldQuantities[i], Integer::sum);
+            } else {
+                expired = new HashMap<>();
+                for (int i = 0; i < holds.length; i++) expired.merge(heldItems[i], heldQuantities[i], Integer::sum);
+            }
+            holds = new long[0];
+            heldItems = new Item[0];
+            heldQuantities = new int[0];
+            return expired;
+        }
+
+        //Снимает резервы (истёкшие уже вернули товар сами) и возвращает на склад списанный товар
+        void release(StockReservations reservations, Catalog catalog) {
+            for (long hold : holds) reservations.cancel(hold);
+            taken.forEach(catalog::release);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Order;
+import ru.inno.market.model.OrderCodec;
+import ru.inno.market.model.OrderStatus;
+import ru.inno.market.model.OrderView;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+//Архив завершённых заказов вне кучи: записи OrderCodec подряд в сегментах фиксированного размера -
+//прямых буферах (inMemory) или отображённых в память кусках файла orders.archive (open).
+//Заказ в архиве не занимает объектов в куче: на заказ приходится только long в индексе по id, поэтому
+//сборщик мусора не обходит архив, сколько бы заказов в нём ни было.
+//
+//Запись не переходит границу сегмента: если места не хватает, остаток сегмента пропускается (размер 0 - конец
+//сегмента). За каждой записью - её контрольная сумма CRC32C. При открытии файла индекс строится заново проходом
+//по записям до первой повреждённой (недописанной при падении): она и всё после неё отбрасываются, запись продолжается
+//с её места. force() сбрасывает файл на диск.
+//Запись в архив сериализована, чтение идёт без блокировки: индекс публикуется после самой записи.
+public class OrderArchive implements AutoCloseable {
+    public static final String ARCHIVE_FILE = "orders.archive";
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    public static final int MEMORY_SEGMENT_SIZE = 4 << 20;      //Прямые буферы выделяются сразу целиком - сегменты меньше
+
+    //Элементы индекса пишутся с release, читаются с acquire: кто увидел положение записи, видит и её байты
+    private static final VarHandle LOCATION = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int CHECKSUM_SIZE = 4;
+
+    private final FileChannel channel;      //null - архив только в памяти
+    private final int segmentSize;
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+    private volatile long[] locations = new long[1024];      //Id заказа -> (сегмент << 32 | смещение) + 1; 0 - нет в архиве
+    private ByteBuffer tail;        //Копия последнего сегмента для записи: позиция - конец данных
+    private final CRC32C crc = new CRC32C();     //Под блокировкой архива
+    private int count;
+    private long bytes;
+
+    private OrderArchive(FileChannel channel, int segmentSize) {
+        if (segmentSize <= 0) throw new NoSuchElementException("Попытка задать некорректный размер сегмента архива!");
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+    }
+
+    public static OrderArchive inMemory() {
+        return inMemory(MEMORY_SEGMENT_SIZE);
+    }
+
+    public static OrderArchive inMemory(int segmentSize) {
+        return new OrderArchive(null, segmentSize);
+    }
+
+    public static OrderArchive open(Path directory) throws UncheckedIOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    //Открывает (или создаёт) архив в каталоге directory; записи, уже лежащие в файле, снова доступны по id
+    public static OrderArchive open(Path directory, int segmentSize) throws UncheckedIOException {
+        try {
+            Files.createDirectories(directory);
+            FileChannel channel = FileChannel.open(directory.resolve(ARCHIVE_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            OrderArchive archive = new OrderArchive(channel, segmentSize);
+            long segments = (channel.size() + segmentSize - 1) / segmentSize;
+            for (int i = 0; i < segments; i++) {
+                if (archive.load(archive.addSegment())) continue;
+                //Сегменты после повреждённой записи отрезаются: иначе при следующем открытии их старые записи
+                //прочитались бы вслед за записями, дописанными на место повреждённой
+                channel.truncate((long) (i + 1) * segmentSize);
+                break;
+            }
+            return archive;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть архив заказов", e);
+        }
+    }
+
+    //Записывает заказ в архив. Заказ с тем же id заменяет прежний (старая запись остаётся в сегменте).
+    public void append(Order order) throws NoSuchElementException {
+        append(order, null);
+    }
+
+    //Записывает заказ в состоянии status (null - текущем): заказ попадает в архив до перехода в завершённое состояние,
+    //и если записать не удалось, сам заказ не меняется
+    public synchronized void append(Order order, OrderStatus status) throws NoSuchElementException {
+        if (order == null) throw new NoSuchElementException("Попытка добавить в архив заказ NULL!");
+        if (tail == null) addSegment();
+        int start = tail.position();
+        int size;
+        try {
+            size = write(order, status);
+        } catch (BufferOverflowException e) {
+            if (start == 0) throw new IllegalStateException("Заказ " + order.getId() + " больше сегмента архива");
+            if (start + 4 <= segmentSize) tail.putInt(start, 0);     //Запись без контрольной суммы - конец сегмента
+            addSegment();
+            start = 0;
+            size = write(order, status);
+        }
+        if (tail.remaining() >= 4) tail.putInt(tail.position(), 0);
+        publish(order.getId(), segments.length - 1, start);
+        bytes += size;
+    }
+
+    public boolean contains(int orderId) {
+        return location(orderId) != 0;
+    }
+
+    //Заказ из архива, собранный заново (отдельный объект при каждом вызове), или null
+    public Order read(int orderId) {
+        OrderView view = view(orderId, new OrderView());
+        return view == null ? null : view.toOrder();
+    }
+
+    //Наводит view на запись заказа без создания объектов; null - заказа нет в архиве
+    public OrderView view(int orderId, OrderView view) {
+        long location = location(orderId);
+        if (location == 0) return null;
+        location--;
+        return view.wrap(segments[(int) (location >>> 32)], (int) location);
+    }
+
+    //Обход всех записей архива (последних версий заказов) одним переиспользуемым OrderView
+    public void forEach(Consumer<OrderView> action) {
+        long[] locations = this.locations;
+        ByteBuffer[] segments = this.segments;
+        OrderView view = new OrderView();
+        for (int id = 0; id < locations.length; id++) {
+            long location = (long) LOCATION.getAcquire(locations, id);
+            if (location == 0) continue;
+            location--;
+            action.accept(view.wrap(segments[(int) (location >>> 32)], (int) location));
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    //Объём записей в архиве, байт
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized void force() throws UncheckedIOException {
+        if (channel == null) return;
+        for (ByteBuffer segment : segments) ((MappedByteBuffer) segment).force();
+    }
+
+    @Override
+    public synchronized void close() throws UncheckedIOException {
+        if (channel == null) return;
+        try {
+            force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long location(int orderId) {
+        long[] locations = this.locations;
+        return orderId >= 0 && orderId < locations.length ? (long) LOCATION.getAcquire(locations, orderId) : 0;
+    }
+
+    private void publish(int orderId, int segment, int offset) {
+        long[] locations = this.locations;
+        if (orderId >= locations.length) {
+            locations = Arrays.copyOf(locations, Math.max(orderId + 1, locations.length * 2));
+        }
+        if (locations[orderId] == 0) count++;
+        LOCATION.setRelease(locations, orderId, ((long) segment << 32 | offset) + 1);
+        this.locations = locations;
+    }
+
+    private ByteBuffer addSegment() throws UncheckedIOException {
+        ByteBuffer segment;
+        if (channel == null) {
+            segment = ByteBuffer.allocateDirect(segmentSize);
+        } else {
+            try {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.length * segmentSize, segmentSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось отобразить сегмент архива", e);
+            }
+        }
+        ByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+        grown[segments.length] = segment;
+        segments = grown;
+        tail = segment.duplicate();
+        return segment;
+    }
+
+    //Запись заказа и её контрольная сумма в tail. Возвращает размер записи без контрольной суммы.
+    private int write(Order order, OrderStatus status) {
+        int start = tail.position();
+        int size = OrderCodec.writeOrder(order, status, tail);
+        tail.putInt(checksum(tail, start, size));
+        return size;
+    }
+
+    private int checksum(ByteBuffer segment, int at, int size) {
+        crc.reset();
+        crc.update(segment.slice(at, size));
+        return (int) crc.getValue();
+    }
+
+    //Индексирует записи сегмента, прочитанного из файла, и ставит позицию записи за последней из них.
+    //Возвращает false, если сегмент кончился повреждённой записью: следующие сегменты читать нельзя.
+    private boolean load(ByteBuffer segment) {
+        int segmentIndex = segments.length - 1;
+        OrderView view = new OrderView();
+        int at = 0;
+        boolean intact = true;
+        while (at + 4 <= segmentSize) {
+            int size = segment.getInt(at);
+            if (size == 0) break;
+            if (size < 0 || size > segmentSize - at - CHECKSUM_SIZE
+                    || segment.getInt(at + size) != checksum(segment, at, size)) {
+                intact = false;
+                break;
+            }
+            publish(view.wrap(segment, at).id(), segmentIndex, at);
+            bytes += size;
+            at += size + CHECKSUM_SIZE;
+        }
+        tail.position(at);
+        return intact;
+    }
+}
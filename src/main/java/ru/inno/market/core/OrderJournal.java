@@ -0,0 +1,841 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.Item;
+import ru.inno.market.model.Order;
+import ru.inno.market.model.OrderStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+//Журнал предзаписи заказов, остатков на складе и обновлений каталога.
+//
+//Журнал пишется поколениями, у каждого поколения свой файл orders.journal.<поколение>: заголовок (магическое число,
+//поколение) и далее бинарные записи [длина тела][контрольная сумма][тело], дописываемые в отображённый в память сегмент.
+//Запись попадает в page cache сразу и переживает падение процесса; commit() сбрасывает её на диск,
+//причём потоки, вызвавшие commit() одновременно, обслуживаются одним fsync (групповой коммит).
+//
+//snapshot() под блокировкой только собирает состояние сервиса в память и переключает запись на следующее поколение;
+//запись снимка в orders.snapshot, fsync и удаление файлов учтённых поколений идут уже без блокировки.
+//До переименования снимка его поколения остаются на диске, поэтому сбой на любом шаге ничего не теряет:
+//восстановление читает снимок и все файлы журнала новее него по порядку.
+//Контрольная сумма записи смешивается с поколением, поэтому запись чужого поколения при восстановлении не читается.
+//Каталог попадает в снимок целиком (товары, цены и остатки), а его обновления (Catalog.update) - в журнал,
+//поэтому после восстановления ассортимент и цены те же, с какими бы товарами ни был создан каталог сервиса.
+//
+//Временные резервы заказов (MarketService.holdItemsForOrder) живут в памяти, но их постановка, подтверждение и снятие
+//пишутся в журнал. Резервы, не закрытые к моменту сбоя, при восстановлении снимаются: товар возвращается на склад,
+//строки убираются из заказа, и об этом тоже делаются записи - повторное восстановление придёт к тому же состоянию.
+//
+//Завершённые заказы хранятся в архиве сервиса (OrderArchive), а не в снимке: снимок сбрасывает архив на диск.
+//Чтобы они пережили перезапуск, архив должен быть файловым (OrderArchive.open).
+//
+//Пока журнал подключён к сервису (MarketService.attachJournal), изменение состояния и запись о нём
+//выполняются под блокировкой журнала (lock/unlock), чтобы снимок и журнал никогда не расходились.
+//Блокировка - ReentrantLock, а не монитор: виртуальный поток, ждущий её, не занимает несущий поток платформы.
+public final class OrderJournal implements Closeable {
+    static final String JOURNAL_FILE = "orders.journal";
+    static final String SNAPSHOT_FILE = "orders.snapshot";
+    static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final int MAGIC = 0x4D4B544A;
+    private static final int FILE_HEADER_SIZE = 16;    //magic (int), резерв (int), поколение (long)
+    private static final int RECORD_HEADER_SIZE = 8;   //длина тела (int), контрольная сумма (int)
+    private static final int MAX_RECORD_SIZE = 64 << 20;
+    private static final int IO_BUFFER_SIZE = 1 << 20;
+
+    private static final byte ORDER_CREATED = 1;
+    private static final byte ITEM_ADDED = 2;
+    private static final byte DISCOUNT_APPLIED = 3;
+    private static final byte STOCK_RESERVED = 4;
+    private static final byte STOCK_RELEASED = 5;
+    private static final byte ORDER_STATE = 6;     //Только в снимке: заказ целиком
+    private static final byte NEXT_ORDER_ID = 8;   //Только в снимке: следующий id заказа
+    private static final byte DISCOUNT_AMOUNT_APPLIED = 9;
+    private static final byte ORDER_STATUS = 10;
+    private static final byte CATALOG_UPDATE = 11;  //Обновление каталога целиком, одной записью
+    private static final byte CATALOG_RESET = 12;   //Только в снимке: каталог очищается перед товарами снимка
+    private static final byte ITEM_REMOVED = 13;
+    private static final byte HOLD_PLACED = 14;     //Временный резерв строки заказа (товар уже списан записью STOCK_RESERVED)
+    private static final byte HOLD_CONFIRMED = 15;
+    private static final byte HOLD_RELEASED = 16;   //Резерв снят или истёк: товар вернулся на склад
+    private static final int SNAPSHOT_CATALOG_CHUNK = 1024;    //Товаров снимка в одной записи CATALOG_UPDATE
+
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final CRC32C crc = new CRC32C();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock snapshotLock = new ReentrantLock();    //Снимки делаются по одному
+
+    //Состояние записи, защищено lock. Поколение меняется только при снимке, под обеими блокировками.
+    private FileChannel channel;    //Файл текущего поколения
+    private long generation;
+    private MappedByteBuffer segment;
+    private long segmentBase;      //Смещение начала сегмента в файле
+    private int position;          //Позиция записи внутри сегмента
+    private final List<MappedByteBuffer> filledSegments = new ArrayList<>();   //Заполненные сегменты, ещё не сброшенные на диск
+    private volatile long writtenRecords;
+
+    //Состояние группового коммита, защищено commitLock. ReentrantLock, а не synchronized: ожидающий fsync
+    //виртуальный поток под synchronized занял бы несущий поток платформы на всё время записи на диск.
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private long committedRecords;
+
+    private OrderJournal(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    public static OrderJournal open(Path directory) throws UncheckedIOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    static OrderJournal open(Path directory, int segmentSize) throws UncheckedIOException {
+        try {
+            Files.createDirectories(directory);
+            OrderJournal journal = new OrderJournal(directory, segmentSize);
+            long snapshotGeneration = readSnapshotGeneration(directory);
+            long last = 0;
+            for (long fileGeneration : journalGenerations(directory)) {
+                //Сбой между переименованием снимка и удалением журнала: эти поколения уже учтены в снимке
+                if (fileGeneration <= snapshotGeneration) Files.deleteIfExists(journalFile(directory, fileGeneration));
+                else last = fileGeneration;
+            }
+            if (last == 0) {
+                //Поколение 0 означает "снимка ещё нет"
+                journal.generation = snapshotGeneration + 1;
+                journal.channel = createGeneration(directory, journal.generation);
+                journal.mapSegment(FILE_HEADER_SIZE);
+            } else {
+                journal.generation = last;
+                journal.channel = FileChannel.open(journalFile(directory, last), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (journal.channel.size() < FILE_HEADER_SIZE) {
+                    writeFileHeader(journal.channel, last);     //Сбой при создании файла поколения
+                } else if (readFileHeader(journal.channel) != last) {
+                    throw new IOException("Поколение в заголовке не совпадает с именем файла журнала");
+                }
+                journal.mapSegment(replay(journal.channel, last, null));
+            }
+            return journal;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал заказов в " + directory, e);
+        }
+    }
+
+    //Восстанавливает состояние сервиса и его каталога из снимка и журнала и снимает незакрытые резервы заказов.
+    //Вызывать до подключения журнала к сервису. Возвращает количество применённых записей.
+    public long recover(MarketService service) throws UncheckedIOException {
+        Recovery recovery = new Recovery(service);
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        try {
+            long snapshotGeneration = 0;
+            if (Files.exists(snapshot)) {
+                try (FileChannel snapshotChannel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                    snapshotGeneration = readFileHeader(snapshotChannel);
+                    replay(snapshotChannel, snapshotGeneration, recovery);
+                }
+            }
+            lock.lock();
+            try {
+                //Поколения, которые не успел покрыть снимок, по порядку; поколение снимка уже целиком учтено в нём
+                for (long fileGeneration : journalGenerations(directory)) {
+                    if (fileGeneration <= snapshotGeneration) continue;
+                    if (fileGeneration == generation) {
+                        replay(channel, generation, recovery);
+                        continue;
+                    }
+                    try (FileChannel older = FileChannel.open(journalFile(directory, fileGeneration), StandardOpenOption.READ)) {
+                        if (older.size() >= FILE_HEADER_SIZE) replay(older, readFileHeader(older), recovery);
+                    }
+                }
+                recovery.releasePendingHolds(this);
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось восстановить заказы из " + directory, e);
+        }
+        return recovery.applied;
+    }
+
+    //Сбрасывает на диск все записи, сделанные до вызова. Одновременные вызовы объединяются в один fsync.
+    public void commit() throws UncheckedIOException {
+        long target = writtenRecords;
+        commitLock.lock();
+        try {
+            if (committedRecords >= target) return;
+            long upTo;
+            MappedByteBuffer current;
+            MappedByteBuffer[] filled;
+            lock.lock();
+            try {
+                upTo = writtenRecords;
+                current = segment;
+                filled = filledSegments.toArray(new MappedByteBuffer[0]);
+                filledSegments.clear();
+            } finally {
+                lock.unlock();
+            }
+            for (MappedByteBuffer buffer : filled) buffer.force();
+            current.force();
+            committedRecords = upTo;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    //Записывает снимок состояния сервиса и начинает следующее поколение журнала.
+    //Изменения в сервисе с подключённым журналом приостанавливаются только на сбор состояния в память.
+    public void snapshot(MarketService service) throws UncheckedIOException {
+        snapshotLock.lock();
+        try {
+            long covered = generation;      //Меняется только здесь, под snapshotLock
+            FileChannel next;
+            MappedByteBuffer nextSegment;
+            try {
+                next = createGeneration(directory, covered + 1);
+                nextSegment = map(next, FILE_HEADER_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось начать новое поколение журнала в " + directory, e);
+            }
+            SnapshotWriter writer = new SnapshotWriter(covered);
+            FileChannel previous;
+            lock.lock();
+            try {
+                try {
+                    writer.writeState(service);
+                } catch (RuntimeException e) {
+                    next.close();       //Поколение не началось: пустой файл при восстановлении ничего не добавит
+                    throw e;
+                }
+                //Снимок покрывает всё текущее поколение журнала - дальше пишем в следующее
+                previous = channel;
+                filledSegments.add(segment);
+                channel = next;
+                generation = covered + 1;
+                segment = nextSegment;
+                segmentBase = FILE_HEADER_SIZE;
+                position = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось начать новое поколение журнала в " + directory, e);
+            } finally {
+                lock.unlock();
+            }
+            writeSnapshot(service, writer, previous, covered);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void writeSnapshot(MarketService service, SnapshotWriter writer, FileChannel previous, long covered) {
+        Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try {
+            previous.close();       //Записанные сегменты остаются отображёнными, commit() сбросит их на диск
+            service.getArchive().force();
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.writeTo(out);
+                out.force(true);
+            }
+            Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (long fileGeneration : journalGenerations(directory)) {
+                if (fileGeneration <= covered) Files.deleteIfExists(journalFile(directory, fileGeneration));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать снимок заказов в " + directory, e);
+        }
+    }
+
+    @Override
+    public void close() throws UncheckedIOException {
+        commit();
+        lock.lock();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Блокировка журнала: под ней сервис и каталог меняют состояние и делают записи о нём. Повторный захват допускается.
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    //Записи журнала. Вызываются сервисом и каталогом под блокировкой журнала (lock) вместе с изменением состояния.
+
+    void orderCreated(int orderId, Client client) {
+        byte[] nickname = encode(client.getNickname());
+        ByteBuffer out = beginRecord(ORDER_CREATED, 4 + 4 + 2 + nickname.length);
+        out.putInt(orderId).putInt(client.getId());
+        putString(out, nickname);
+        endRecord();
+    }
+
+    //Товар записывается целиком: к моменту восстановления его уже может не быть в ассортименте
+    void itemAdded(int orderId, Item item, int quantity) {
+        byte[] name = encode(item.getName());
+        ByteBuffer out = beginRecord(ITEM_ADDED, 4 + 4 + itemSize(name));
+        out.putInt(orderId).putInt(quantity);
+        putItem(out, item, name);
+        endRecord();
+    }
+
+    void itemRemoved(int orderId, Item item, int quantity) {
+        byte[] name = encode(item.getName());
+        ByteBuffer out = beginRecord(ITEM_REMOVED, 4 + 4 + itemSize(name));
+        out.putInt(orderId).putInt(quantity);
+        putItem(out, item, name);
+        endRecord();
+    }
+
+    void discountApplied(int orderId, int discountBps) {
+        ByteBuffer out = beginRecord(DISCOUNT_APPLIED, 4 + 4);
+        out.putInt(orderId).putInt(discountBps);
+        endRecord();
+    }
+
+    void discountAmountApplied(int orderId, long discountKopecks) {
+        ByteBuffer out = beginRecord(DISCOUNT_AMOUNT_APPLIED, 4 + 8);
+        out.putInt(orderId).putLong(discountKopecks);
+        endRecord();
+    }
+
+    void statusChanged(int orderId, OrderStatus status) {
+        ByteBuffer out = beginRecord(ORDER_STATUS, 4 + 1);
+        out.putInt(orderId).put((byte) status.ordinal());
+        endRecord();
+    }
+
+    void stockReserved(int itemId, int quantity) {
+        ByteBuffer out = beginRecord(STOCK_RESERVED, 4 + 4);
+        out.putInt(itemId).putInt(quantity);
+        endRecord();
+    }
+
+    void stockReleased(int itemId, int quantity) {
+        ByteBuffer out = beginRecord(STOCK_RELEASED, 4 + 4);
+        out.putInt(itemId).putInt(quantity);
+        endRecord();
+    }
+
+    void holdPlaced(long holdId, int orderId, Item item, int quantity) {
+        byte[] name = encode(item.getName());
+        ByteBuffer out = beginRecord(HOLD_PLACED, 8 + 4 + 4 + itemSize(name));
+        out.putLong(holdId).putInt(orderId).putInt(quantity);
+        putItem(out, item, name);
+        endRecord();
+    }
+
+    void holdConfirmed(long holdId) {
+        ByteBuffer out = beginRecord(HOLD_CONFIRMED, 8);
+        out.putLong(holdId);
+        endRecord();
+    }
+
+    void holdReleased(long holdId, int itemId, int quantity) {
+        ByteBuffer out = beginRecord(HOLD_RELEASED, 8 + 4 + 4);
+        out.putLong(holdId).putInt(itemId).putInt(quantity);
+        endRecord();
+    }
+
+    //Вызывается до публикации версии: если обновление не поместилось в сегмент, каталог не меняется
+    void catalogUpdated(long versionNumber, CatalogUpdate update) {
+        byte[][] names = encodeNames(update);
+        ByteBuffer out = beginRecord(CATALOG_UPDATE, catalogUpdateSize(update, names));
+        putCatalogUpdate(out, versionNumber, update, names);
+        endRecord();
+    }
+
+    private ByteBuffer beginRecord(byte type, int payloadSize) {
+        if (!lock.isHeldByCurrentThread())
+            throw new IllegalStateException("Запись в журнал без его блокировки");
+        int bodySize = 1 + payloadSize;
+        //В сегменте всегда остаётся место под нулевой заголовок - признак конца журнала
+        if (position + RECORD_HEADER_SIZE + bodySize + RECORD_HEADER_SIZE > segmentSize) {
+            if (RECORD_HEADER_SIZE * 2 + bodySize > segmentSize)
+                throw new IllegalStateException("Запись журнала больше сегмента: " + bodySize + " байт");
+            filledSegments.add(segment);
+            mapSegment(segmentBase + position);
+        }
+        segment.position(position + RECORD_HEADER_SIZE);
+        segment.put(type);
+        return segment;
+    }
+
+    private void endRecord() {
+        position = sealRecord(segment, position, crc, generation);
+        segment.putInt(position, 0);
+        writtenRecords++;
+    }
+
+    private void mapSegment(long fileOffset) {
+        try {
+            segment = map(channel, fileOffset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось отобразить сегмент журнала", e);
+        }
+        segmentBase = fileOffset;
+        position = 0;
+    }
+
+    private MappedByteBuffer map(FileChannel file, long fileOffset) throws IOException {
+        MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_WRITE, fileOffset, segmentSize);
+        mapped.putInt(0, 0);
+        return mapped;
+    }
+
+    private static Path journalFile(Path directory, long generation) {
+        return directory.resolve(JOURNAL_FILE + "." + generation);
+    }
+
+    //Поколения, файлы которых лежат в каталоге, по возрастанию
+    private static long[] journalGenerations(Path directory) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, JOURNAL_FILE + ".*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(JOURNAL_FILE.length() + 1);
+                try {
+                    generations.add(Long.parseLong(suffix));
+                } catch (NumberFormatException e) {
+                    //Не файл поколения журнала
+                }
+            }
+        }
+        return generations.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    //Файл нового поколения с заголовком, сброшенным на диск
+    private static FileChannel createGeneration(Path directory, long generation) throws IOException {
+        FileChannel file = FileChannel.open(journalFile(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeFileHeader(file, generation);
+        return file;
+    }
+
+    private static void writeFileHeader(FileChannel file, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(0).putLong(generation).flip();
+        file.write(header, 0);
+        file.force(true);
+    }
+
+    private static long readSnapshotGeneration(Path directory) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) return 0;
+        try (FileChannel snapshotChannel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            return readFileHeader(snapshotChannel);
+        }
+    }
+
+    private static long readFileHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+        }
+        if (header.position() < FILE_HEADER_SIZE || header.getInt(0) != MAGIC)
+            throw new IOException("Файл не является журналом заказов");
+        return header.getLong(8);
+    }
+
+    //Дописывает длину и контрольную сумму записи, начатой в recordStart; позиция out - конец тела.
+    //Возвращает позицию сразу за записью.
+    private static int sealRecord(ByteBuffer out, int recordStart, CRC32C crc, long generation) {
+        int bodyStart = recordStart + RECORD_HEADER_SIZE;
+        int bodyEnd = out.position();
+        int limit = out.limit();
+        out.position(bodyStart).limit(bodyEnd);
+        crc.reset();
+        crc.update(out);
+        out.limit(limit).position(bodyEnd);
+        out.putInt(recordStart + 4, checksum(crc, generation));
+        out.putInt(recordStart, bodyEnd - bodyStart);   //Длина пишется последней
+        return bodyEnd;
+    }
+
+    private static int checksum(CRC32C crc, long generation) {
+        return (int) crc.getValue() ^ Long.hashCode(generation * 0x9E3779B97F4A7C15L);
+    }
+
+    //Последовательно читает записи файла начиная с заголовка до первой неполной или повреждённой.
+    //Если handler == null, записи только проверяются. Возвращает смещение конца последней целой записи.
+    private static long replay(FileChannel channel, long generation, Recovery handler) throws IOException {
+        RecordReader reader = new RecordReader(channel);
+        CRC32C crc = new CRC32C();
+        long end = FILE_HEADER_SIZE;
+        while (reader.request(RECORD_HEADER_SIZE)) {
+            int length = reader.buffer.getInt(reader.buffer.position());
+            if (length <= 0 || length > MAX_RECORD_SIZE) break;
+            if (!reader.request(RECORD_HEADER_SIZE + length)) break;
+            ByteBuffer buffer = reader.buffer;
+            int start = buffer.position();
+            int bodyStart = start + RECORD_HEADER_SIZE;
+            int bodyEnd = bodyStart + length;
+            int limit = buffer.limit();
+            buffer.position(bodyStart).limit(bodyEnd);
+            crc.reset();
+            crc.update(buffer);
+            if (buffer.getInt(start + 4) != checksum(crc, generation)) break;
+            if (handler != null) {
+                buffer.position(bodyStart);
+                handler.apply(buffer);
+            }
+            buffer.limit(limit).position(bodyEnd);
+            end = reader.bufferOffset + bodyEnd;
+        }
+        return end;
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.putShort((short) -1);
+        } else {
+            out.putShort((short) bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return 2 + (bytes == null ? 0 : bytes.length);
+    }
+
+    //Товар: id, цена, категория (-1 - нет) и название
+    private static int itemSize(byte[] name) {
+        return 4 + 8 + 1 + stringSize(name);
+    }
+
+    private static void putItem(ByteBuffer out, Item item, byte[] name) {
+        out.putInt(item.getId()).putLong(item.getPriceKopecks())
+                .put((byte) (item.getCategory() == null ? -1 : item.getCategory().ordinal()));
+        putString(out, name);
+    }
+
+    private static Item getItem(ByteBuffer in) {
+        int id = in.getInt();
+        long priceKopecks = in.getLong();
+        byte category = in.get();
+        return Item.ofKopecks(id, getString(in), category < 0 ? null : CATEGORIES[category], priceKopecks);
+    }
+
+    //Тело CATALOG_UPDATE: номер версии, число изменений и сами изменения в порядке вызовов.
+    //PRICE - id и цена; PUT - остаток и товар; REMOVE - id.
+    private static byte[][] encodeNames(CatalogUpdate update) {
+        byte[][] names = new byte[update.size()][];
+        for (int i = 0; i < names.length; i++) {
+            if (update.kind(i) == CatalogUpdate.PUT) names[i] = encode(update.item(i).getName());
+        }
+        return names;
+    }
+
+    private static int catalogUpdateSize(CatalogUpdate update, byte[][] names) {
+        int size = 8 + 4;
+        for (int i = 0; i < update.size(); i++) {
+            size += 1 + (update.kind(i) == CatalogUpdate.PUT ? 4 + itemSize(names[i]) : 4);
+            if (update.kind(i) == CatalogUpdate.PRICE) size += 8;
+        }
+        return size;
+    }
+
+    private static void putCatalogUpdate(ByteBuffer out, long versionNumber, CatalogUpdate update, byte[][] names) {
+        out.putLong(versionNumber).putInt(update.size());
+        for (int i = 0; i < update.size(); i++) {
+            byte kind = update.kind(i);
+            out.put(kind);
+            switch (kind) {
+                case CatalogUpdate.PRICE -> out.putInt(update.id(i)).putLong(update.value(i));
+                case CatalogUpdate.PUT -> {
+                    out.putInt((int) update.value(i));
+                    putItem(out, update.item(i), names[i]);
+                }
+                default -> out.putInt(update.id(i));
+            }
+        }
+    }
+
+    //Применение записей журнала и снимка к сервису в обход журнала
+    private static final class Recovery {
+        private final MarketService service;
+        private final Catalog catalog;
+        private final Map<Long, MarketService.Hold> holds = new LinkedHashMap<>();      //Поставленные и ещё не закрытые резервы
+        private long applied;
+
+        Recovery(MarketService service) {
+            this.service = service;
+            this.catalog = service.getCatalog();
+        }
+
+        void apply(ByteBuffer in) {
+            byte type = in.get();
+            switch (type) {
+                case ORDER_CREATED -> {
+                    int orderId = in.getInt();
+                    Client client = new Client(in.getInt(), getString(in));
+                    service.restoreOrder(new Order(orderId, client));
+                }
+                case ITEM_ADDED -> {
+                    Order order = order(in.getInt());
+                    int quantity = in.getInt();
+                    order.addItem(resolveItem(in), quantity);
+                }
+                case ITEM_REMOVED -> {
+                    Order order = order(in.getInt());
+                    int quantity = in.getInt();
+                    order.removeItem(resolveItem(in), quantity);
+                }
+                case DISCOUNT_APPLIED -> order(in.getInt()).applyDiscountBps(in.getInt());
+                case DISCOUNT_AMOUNT_APPLIED -> order(in.getInt()).applyDiscountKopecks(in.getLong());
+                case STOCK_RESERVED -> catalog.adjustStock(in.getInt(), -in.getInt());
+                case STOCK_RELEASED -> catalog.adjustStock(in.getInt(), in.getInt());
+                case ORDER_STATE -> {
+                    int orderId = in.getInt();
+                    Client client = new Client(in.getInt(), getString(in));
+                    long totalKopecks = in.getLong();
+                    boolean discountApplied = in.get() != 0;
+                    int lines = in.getInt();
+                    Item[] items = new Item[lines];
+                    int[] quantities = new int[lines];
+                    for (int i = 0; i < lines; i++) {
+                        quantities[i] = in.getInt();
+                        items[i] = resolveItem(in);
+                    }
+                    service.restoreOrder(Order.restore(orderId, client, items, quantities, totalKopecks, discountApplied));
+                }
+                case CATALOG_UPDATE -> {
+                    long versionNumber = in.getLong();
+                    int changes = in.getInt();
+                    CatalogUpdate update = catalog.update();
+                    for (int i = 0; i < changes; i++) {
+                        switch (in.get()) {
+                            case CatalogUpdate.PRICE -> update.price(in.getInt(), in.getLong());
+                            case CatalogUpdate.PUT -> {
+                                int count = in.getInt();
+                                update.put(getItem(in), count);
+                            }
+                            default -> update.remove(in.getInt());
+                        }
+                    }
+                    catalog.restoreUpdate(update, versionNumber);
+                }
+                case CATALOG_RESET -> catalog.restoreReset(in.getLong());
+                case HOLD_PLACED -> {
+                    long holdId = in.getLong();
+                    int orderId = in.getInt();
+                    int quantity = in.getInt();
+                    holds.put(holdId, new MarketService.Hold(holdId, orderId, resolveItem(in), quantity));
+                }
+                case HOLD_CONFIRMED -> holds.remove(in.getLong());
+                case HOLD_RELEASED -> {
+                    holds.remove(in.getLong());
+                    catalog.adjustStock(in.getInt(), in.getInt());
+                }
+                case NEXT_ORDER_ID -> service.restoreOrderCounter(in.getInt());
+                case ORDER_STATUS -> service.restoreStatus(in.getInt(), STATUSES[in.get()]);
+                default -> throw new IllegalStateException("Неизвестный тип записи журнала: " + type);
+            }
+            applied++;
+        }
+
+        //Резервы, которые не подтверждены и не сняты: их товар возвращается на склад, а строки - из открытых заказов.
+        //Всё это записывается в журнал, чтобы следующее восстановление не снимало их ещё раз.
+        void releasePendingHolds(OrderJournal journal) {
+            for (MarketService.Hold hold : holds.values()) {
+                int itemId = hold.item().getId();
+                catalog.adjustStock(itemId, hold.quantity());
+                journal.holdReleased(hold.id(), itemId, hold.quantity());
+                Order order = service.findOrder(hold.orderId());
+                if (order == null || order.getStatus() != OrderStatus.OPEN) continue;
+                Integer inCart = order.getItems().get(hold.item());
+                if (inCart == null || inCart < hold.quantity()) continue;
+                order.removeItem(hold.item(), hold.quantity());
+                journal.itemRemoved(hold.orderId(), hold.item(), hold.quantity());
+            }
+            holds.clear();
+        }
+
+        private Order order(int orderId) {
+            Order order = service.findOrder(orderId);
+            if (order == null) throw new IllegalStateException("Журнал ссылается на отсутствующий заказ " + orderId);
+            return order;
+        }
+
+        //Товар из журнала; если в каталоге лежит такой же - его экземпляр, чтобы заказы не держали копий
+        private Item resolveItem(ByteBuffer in) {
+            Item item = getItem(in);
+            CatalogVersion version = catalog.currentVersion();
+            if (version.contains(item.getId())) {
+                Item known = version.getItem(item.getId());
+                if (known.equals(item)) return known;
+            }
+            return item;
+        }
+    }
+
+    //Чтение файла крупными блоками; буфер в режиме чтения, bufferOffset - смещение в файле его нулевого байта
+    private static final class RecordReader {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE).limit(0);
+        private long bufferOffset = FILE_HEADER_SIZE;
+
+        RecordReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        //Гарантирует, что с текущей позиции буфера доступно не меньше needed байт. false - файл кончился раньше.
+        boolean request(int needed) throws IOException {
+            if (buffer.remaining() >= needed) return true;
+            bufferOffset += buffer.position();
+            buffer.compact();
+            if (buffer.capacity() < needed) {
+                ByteBuffer larger = ByteBuffer.allocate(Integer.highestOneBit(needed - 1) << 1);
+                larger.put(buffer.flip());
+                buffer = larger;
+            }
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, bufferOffset + buffer.position()) <= 0) break;
+            }
+            buffer.flip();
+            return buffer.remaining() >= needed;
+        }
+    }
+
+    //Снимок, собираемый в память блоками по IO_BUFFER_SIZE (под блокировкой журнала) и записываемый в файл потом
+    private static final class SnapshotWriter {
+        private final long generation;
+        private final CRC32C crc = new CRC32C();
+        private final List<ByteBuffer> filled = new ArrayList<>();
+        private ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+        private int recordStart;
+
+        SnapshotWriter(long generation) {
+            this.generation = generation;
+            buffer.putInt(MAGIC).putInt(0).putLong(generation);
+        }
+
+        void writeState(MarketService service) {
+            begin(NEXT_ORDER_ID, 4).putInt(service.nextOrderId());
+            end();
+            writeCatalog(service.getCatalog());
+            for (Order order : service.allOrders()) {
+                synchronized (order) {
+                    byte[] nickname = encode(order.getClient().getNickname());
+                    int lines = order.getLineCount();
+                    byte[][] names = new byte[lines][];
+                    int linesSize = 0;
+                    for (int i = 0; i < lines; i++) {
+                        names[i] = encode(order.getLineItem(i).getName());
+                        linesSize += 4 + itemSize(names[i]);
+                    }
+                    ByteBuffer body = begin(ORDER_STATE, 4 + 4 + stringSize(nickname) + 8 + 1 + 4 + linesSize);
+                    body.putInt(order.getId()).putInt(order.getClient().getId());
+                    putString(body, nickname);
+                    body.putLong(order.getTotalKopecks()).put((byte) (order.isDiscountApplied() ? 1 : 0)).putInt(lines);
+                    for (int i = 0; i < lines; i++) {
+                        body.putInt(order.getLineQuantity(i));
+                        putItem(body, order.getLineItem(i), names[i]);
+                    }
+                    end();
+                    if (order.getStatus() != OrderStatus.OPEN) {
+                        begin(ORDER_STATUS, 4 + 1).putInt(order.getId()).put((byte) order.getStatus().ordinal());
+                        end();
+                    }
+                }
+            }
+            for (MarketService.Hold hold : service.activeHolds()) {
+                byte[] name = encode(hold.item().getName());
+                ByteBuffer body = begin(HOLD_PLACED, 8 + 4 + 4 + itemSize(name));
+                body.putLong(hold.id()).putInt(hold.orderId()).putInt(hold.quantity());
+                putItem(body, hold.item(), name);
+                end();
+            }
+        }
+
+        //Каталог целиком: товары текущей версии с остатками, порциями по SNAPSHOT_CATALOG_CHUNK
+        private void writeCatalog(Catalog catalog) {
+            CatalogVersion version = catalog.currentVersion();
+            begin(CATALOG_RESET, 8).putLong(version.getNumber());
+            end();
+            CatalogUpdate chunk = catalog.update();
+            for (int itemId = 0; itemId < version.items().length; itemId++) {
+                if (!version.contains(itemId)) continue;
+                chunk.put(version.getItem(itemId), catalog.stockOf(itemId));
+                if (chunk.size() == SNAPSHOT_CATALOG_CHUNK) {
+                    writeCatalogUpdate(version.getNumber(), chunk);
+                    chunk = catalog.update();
+                }
+            }
+            if (chunk.size() > 0) writeCatalogUpdate(version.getNumber(), chunk);
+        }
+
+        private void writeCatalogUpdate(long versionNumber, CatalogUpdate update) {
+            byte[][] names = encodeNames(update);
+            putCatalogUpdate(begin(CATALOG_UPDATE, catalogUpdateSize(update, names)), versionNumber, update, names);
+            end();
+        }
+
+        private ByteBuffer begin(byte type, int payloadSize) {
+            int recordSize = RECORD_HEADER_SIZE + 1 + payloadSize;
+            if (buffer.remaining() < recordSize) {
+                filled.add(buffer.flip());
+                buffer = ByteBuffer.allocate(Math.max(IO_BUFFER_SIZE, recordSize));
+            }
+            recordStart = buffer.position();
+            buffer.position(recordStart + RECORD_HEADER_SIZE);
+            buffer.put(type);
+            return buffer;
+        }
+
+        private void end() {
+            sealRecord(buffer, recordStart, crc, generation);
+        }
+
+        //Дописывает признак конца записей и выводит снимок в файл
+        void writeTo(FileChannel out) throws IOException {
+            if (buffer.remaining() < 4) {
+                filled.add(buffer.flip());
+                buffer = ByteBuffer.allocate(4);
+            }
+            buffer.putInt(0);
+            filled.add(buffer.flip());
+            for (ByteBuffer block : filled) {
+                while (block.hasRemaining()) out.write(block);
+            }
+        }
+    }
+}
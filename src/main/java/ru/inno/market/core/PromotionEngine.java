@@ -0,0 +1,316 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.*;
+
+import java.util.*;
+
+//Движок акций: считает скидку на корзину по набору правил Promotion (область, ступени, накопление, приоритет,
+//первый заказ клиента). Порядок разрешения правил строки описан в Promotion.
+//
+//При каждом изменении набора правила компилируются в неизменяемую структуру Rules (копирование при записи),
+//поэтому расчёт идёт без блокировок. Rules состоит из областей Scope: автоматические правила и по одной области
+//на каждый промокод. В области правила разложены по таблицам Table для каждой категории (вместе с правилами на все
+//товары) и для каждого товара (отсортированный int[] id). Таблица заранее разрешает свои правила на каждом пороге
+//количества: старшее подходящее правило и сумма накопительных скидок - отдельно для первого заказа и остальных.
+//Строка корзины стоит нескольких двоичных поисков по таблицам своей категории и своего товара в областях
+//предъявленных кодов, сколько бы правил ни было в наборе.
+public class PromotionEngine {
+    private static final Category[] CATEGORIES = Category.values();
+    private static final int NONE = Integer.MAX_VALUE;     //Старшинство в таблице, где на пороге ничего не действует
+
+    private final Map<String, Promotion> promotions = new LinkedHashMap<>();      //Имя -> правило, под блокировкой движка
+    private volatile Rules rules = Rules.EMPTY;
+
+    //Движок с правилами для всех промокодов из PromoCodes
+    public static PromotionEngine withPromoCodes() {
+        PromotionEngine engine = new PromotionEngine();
+        List<Promotion> promotions = new ArrayList<>();
+        for (PromoCodes code : PromoCodes.values()) promotions.add(Promotion.of(code));
+        engine.addAll(promotions);
+        return engine;
+    }
+
+    public void add(Promotion promotion) throws NoSuchElementException {
+        addAll(List.of(promotion));
+    }
+
+    //Добавление пачки правил с одной перекомпиляцией
+    public synchronized void addAll(Collection<Promotion> added) throws NoSuchElementException {
+        Set<String> names = new HashSet<>();
+        for (Promotion promotion : added) {
+            if (promotion == null) throw new NoSuchElementException("Попытка добавить правило скидки NULL!");
+            if (promotions.containsKey(promotion.getName()) || !names.add(promotion.getName()))
+                throw new NoSuchElementException("Правило скидки " + promotion.getName() + " уже есть!");
+        }
+        for (Promotion promotion : added) promotions.put(promotion.getName(), promotion);
+        rules = compile(promotions.values());
+    }
+
+    public synchronized boolean remove(String name) {
+        if (promotions.remove(name) == null) return false;
+        rules = compile(promotions.values());
+        return true;
+    }
+
+    public synchronized int size() {
+        return promotions.size();
+    }
+
+    //Есть ли правила с промокодом code
+    public boolean hasCode(String code) {
+        return rules.byCode.containsKey(code);
+    }
+
+    //Скидка на корзину снимка order при предъявленных кодах codes, коп. firstOrder - заказ первый у клиента.
+    public long discountKopecks(OrderSnapshot order, Collection<String> codes, boolean firstOrder) throws NoSuchElementException {
+        return discountKopecks(order, codes, firstOrder, null);
+    }
+
+    //То же; в used (если не null) попадают промокоды, правила которых дали скидку хотя бы на одну строку
+    public long discountKopecks(OrderSnapshot order, Collection<String> codes, boolean firstOrder,
+                                Collection<String> used) throws NoSuchElementException {
+        if (order == null) throw new NoSuchElementException("Попытка рассчитать скидку для заказа NULL!");
+        if (codes == null) throw new NoSuchElementException("Попытка рассчитать скидку с промокодами NULL!");
+        Rules rules = this.rules;
+        Scope[] scopes = new Scope[1 + codes.size()];
+        String[] scopeCodes = new String[scopes.length];     //Промокод области, у автоматических правил - null
+        int scopeCount = 0;
+        scopes[scopeCount++] = rules.auto;
+        for (String code : codes) {
+            Scope scope = code == null ? null : rules.byCode.get(code);
+            if (scope == null) throw new NoSuchElementException("Неизвестный промокод: " + code);
+            if (!contains(scopes, scopeCount, scope)) {
+                scopeCodes[scopeCount] = code;
+                scopes[scopeCount++] = scope;
+            }
+        }
+
+        Resolution resolution = new Resolution(firstOrder, scopeCount);
+        long discount = 0;
+        for (int line = 0; line < order.getLineCount(); line++) {
+            Item item = order.getLineItem(line);
+            int quantity = order.getLineQuantity(line);
+            resolution.reset();
+            for (int i = 0; i < scopeCount; i++) {
+                resolution.add(scopes[i].forCategory(item.getCategory()), quantity, i);
+                resolution.add(scopes[i].forItem(item.getId(), item.getCategory()), quantity, i);
+            }
+            int bps = resolution.discountBps();
+            if (bps > 0) {
+                discount += Money.discountOf(Math.multiplyExact(item.getPriceKopecks(), (long) quantity), bps);
+                resolution.markUsed();
+            }
+        }
+        if (used != null) {
+            for (int i = 1; i < scopeCount; i++) {
+                if (resolution.used[i]) used.add(scopeCodes[i]);
+            }
+        }
+        return discount;
+    }
+
+    private static boolean contains(Scope[] scopes, int count, Scope scope) {
+        for (int i = 0; i < count; i++) {
+            if (scopes[i] == scope) return true;
+        }
+        return false;
+    }
+
+    private static Rules compile(Collection<Promotion> promotions) {
+        //Старшинство: по убыванию приоритета, при равном - в порядке добавления
+        List<Promotion> ordered = new ArrayList<>(promotions);
+        ordered.sort(Comparator.comparingInt(Promotion::getPriority).reversed());
+        List<RankedRule> auto = new ArrayList<>();
+        Map<String, List<RankedRule>> byCode = new HashMap<>();
+        for (int rank = 0; rank < ordered.size(); rank++) {
+            Promotion promotion = ordered.get(rank);
+            RankedRule rule = new RankedRule(promotion, rank);
+            if (promotion.getCode() == null) auto.add(rule);
+            else byCode.computeIfAbsent(promotion.getCode(), code -> new ArrayList<>()).add(rule);
+        }
+        Map<String, Scope> scopes = new HashMap<>();
+        for (Map.Entry<String, List<RankedRule>> entry : byCode.entrySet()) {
+            scopes.put(entry.getKey(), Scope.of(entry.getValue()));
+        }
+        return new Rules(Scope.of(auto), scopes);
+    }
+
+    private record Rules(Scope auto, Map<String, Scope> byCode) {
+        static final Rules EMPTY = new Rules(Scope.of(List.of()), Map.of());
+    }
+
+    private record RankedRule(Promotion promotion, int rank) {
+    }
+
+    //Таблицы одной области по категориям и товарам; null - правил нет
+    private static final class Scope {
+        private final Table[] byCategory;      //[ordinal], последний - товары без категории
+        private final int[] itemIds;           //По возрастанию
+        private final Table[][] byItem;        //[товар][категория товара], как byCategory
+
+        private Scope(Table[] byCategory, int[] itemIds, Table[][] byItem) {
+            this.byCategory = byCategory;
+            this.itemIds = itemIds;
+            this.byItem = byItem;
+        }
+
+        //rules - в порядке старшинства, поэтому и списки таблиц получаются упорядоченными
+        static Scope of(List<RankedRule> rules) {
+            List<List<RankedRule>> categories = new ArrayList<>();
+            for (int i = 0; i <= CATEGORIES.length; i++) categories.add(new ArrayList<>());
+            TreeMap<Integer, List<RankedRule>> items = new TreeMap<>();
+            for (RankedRule rule : rules) {
+                Promotion promotion = rule.promotion();
+                if (promotion.getItemId() != Promotion.ANY_ITEM) {
+                    items.computeIfAbsent(promotion.getItemId(), id -> new ArrayList<>()).add(rule);
+                } else if (promotion.getCategory() != null) {
+                    categories.get(slot(promotion.getCategory())).add(rule);
+                } else {
+                    for (List<RankedRule> category : categories) category.add(rule);
+                }
+            }
+            Table[] byCategory = new Table[categories.size()];
+            for (int i = 0; i < byCategory.length; i++) byCategory[i] = Table.of(categories.get(i));
+            int[] itemIds = new int[items.size()];
+            Table[][] byItem = new Table[items.size()][];
+            int i = 0;
+            for (Map.Entry<Integer, List<RankedRule>> entry : items.entrySet()) {
+                itemIds[i] = entry.getKey();
+                byItem[i++] = itemTables(entry.getValue());
+            }
+            return new Scope(byCategory, itemIds, byItem);
+        }
+
+        //Правило на товар с категорией действует, только если у товара эта категория
+        private static Table[] itemTables(List<RankedRule> rules) {
+            Table[] tables = new Table[CATEGORIES.length + 1];
+            if (rules.stream().allMatch(rule -> rule.promotion().getCategory() == null)) {
+                Arrays.fill(tables, Table.of(rules));
+                return tables;
+            }
+            for (int slot = 0; slot < tables.length; slot++) {
+                Category category = slot < CATEGORIES.length ? CATEGORIES[slot] : null;
+                tables[slot] = Table.of(rules.stream()
+                        .filter(rule -> rule.promotion().getCategory() == null || rule.promotion().getCategory() == category)
+                        .toList());
+            }
+            return tables;
+        }
+
+        Table forCategory(Category category) {
+            return byCategory[slot(category)];
+        }
+
+        Table forItem(int itemId, Category category) {
+            int at = Arrays.binarySearch(itemIds, itemId);
+            return at < 0 ? null : byItem[at][slot(category)];
+        }
+
+        private static int slot(Category category) {
+            return category == null ? CATEGORIES.length : category.ordinal();
+        }
+    }
+
+    //Правила списка, разрешённые заранее на каждом пороге количества. Ячейка [порог * 2 + первый заказ]:
+    //старшинство и скидка старшего подходящего правила (-1 - оно накопительное) и сумма накопительных скидок.
+    private static final class Table {
+        private final int[] quantities;        //Пороги по возрастанию
+        private final int[] topRank;
+        private final int[] topBps;
+        private final int[] stackedBps;
+
+        private Table(int[] quantities) {
+            this.quantities = quantities;
+            topRank = new int[quantities.length * 2];
+            topBps = new int[quantities.length * 2];
+            stackedBps = new int[quantities.length * 2];
+            Arrays.fill(topRank, NONE);
+        }
+
+        static Table of(List<RankedRule> rules) {
+            if (rules.isEmpty()) return null;
+            TreeSet<Integer> thresholds = new TreeSet<>();
+            for (RankedRule rule : rules) {
+                for (int quantity : rule.promotion().getTierQuantities()) thresholds.add(quantity);
+            }
+            Table table = new Table(thresholds.stream().mapToInt(Integer::intValue).toArray());
+            for (int at = 0; at < table.quantities.length; at++) {
+                for (int first = 0; first <= 1; first++) {
+                    int cell = at * 2 + first;
+                    for (RankedRule rule : rules) {
+                        Promotion promotion = rule.promotion();
+                        if (promotion.isFirstOrderOnly() && first == 0) continue;
+                        int bps = promotion.discountBps(table.quantities[at]);
+                        if (bps == 0) continue;
+                        if (table.topRank[cell] == NONE) {
+                            table.topRank[cell] = rule.rank();
+                            table.topBps[cell] = promotion.isStackable() ? -1 : bps;
+                        }
+                        if (promotion.isStackable()) table.stackedBps[cell] = Math.min(table.stackedBps[cell] + bps, Money.BPS_SCALE);
+                    }
+                }
+            }
+            return table;
+        }
+
+        //Ячейка для quantity единиц товара или -1, если quantity ниже всех порогов
+        int cell(int quantity, boolean firstOrder) {
+            int at = Arrays.binarySearch(quantities, quantity);
+            if (at < 0) at = -at - 2;
+            return at < 0 ? -1 : at * 2 + (firstOrder ? 1 : 0);
+        }
+    }
+
+    //Разрешение правил одной строки по её таблицам; объект переиспользуется для всех строк расчёта.
+    //Попутно помнит, какие области дали скидку строке, и копит это по всему заказу в used.
+    private static final class Resolution {
+        private final boolean firstOrder;
+        private final boolean[] stacking;      //[область] - дала строке накопительную скидку
+        private final boolean[] used;          //[область] - дала скидку хотя бы одной строке
+        private int topRank;
+        private int topBps;
+        private int topScope;
+        private int stackedBps;
+
+        Resolution(boolean firstOrder, int scopeCount) {
+            this.firstOrder = firstOrder;
+            stacking = new boolean[scopeCount];
+            used = new boolean[scopeCount];
+        }
+
+        void reset() {
+            topRank = NONE;
+            topBps = 0;
+            topScope = -1;
+            stackedBps = 0;
+            Arrays.fill(stacking, false);
+        }
+
+        void add(Table table, int quantity, int scope) {
+            if (table == null) return;
+            int cell = table.cell(quantity, firstOrder);
+            if (cell < 0) return;
+            if (table.topRank[cell] < topRank) {
+                topRank = table.topRank[cell];
+                topBps = table.topBps[cell];
+                topScope = scope;
+            }
+            if (table.stackedBps[cell] > 0) {
+                stackedBps += table.stackedBps[cell];
+                stacking[scope] = true;
+            }
+        }
+
+        //Строка получила скидку: отметить области, которые её дали
+        void markUsed() {
+            if (topBps >= 0) used[topScope] = true;
+            else for (int i = 0; i < stacking.length; i++) used[i] |= stacking[i];
+        }
+
+        //Старшее правило не накопительное - его скидка, иначе сумма накопительных, не больше 100%
+        int discountBps() {
+            if (topRank == NONE) return 0;
+            return topBps >= 0 ? topBps : Math.min(stackedBps, Money.BPS_SCALE);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package ru.inno.market.core;
+
+import ru.inno.market.model.Item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+//Полнотекстовый индекс по названиям товаров.
+//Название разбивается на слова из букв и цифр любого алфавита (кириллица, латиница), слова приводятся
+//к нижнему регистру, "ё" заменяется на "е". Для каждого слова хранится отсортированный список id товаров,
+//сжатый разностями в varint (обычно 1-2 байта на товар) с точками входа для перескока.
+//Словарь упорядочен, поэтому все слова с заданным префиксом - это один диапазон ключей.
+//
+//Запрос "apple mac" находит товары, в названии которых есть слово "apple" и слово, начинающееся на "mac".
+//Последнее слово запроса считается префиксом, если запрос не оканчивается пробелом или знаком препинания.
+final class SearchIndex {
+    private final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+
+    void add(Item item) {
+        for (String token : tokenize(item.getName())) {
+            terms.computeIfAbsent(token, t -> new Postings()).add(item.getId());
+        }
+    }
+
+    //Записывает в result id подходящих товаров по возрастанию id, не больше result.length. Возвращает число найденных.
+    int search(String query, int[] result) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || result.length == 0) return 0;
+        boolean lastIsPrefix = Character.isLetterOrDigit(query.codePointBefore(query.length()));
+        IdIterator[] iterators = new IdIterator[tokens.size()];
+        for (int i = 0; i < iterators.length; i++) {
+            String token = tokens.get(i);
+            if (i == iterators.length - 1 && lastIsPrefix) {
+                List<PostingCursor> cursors = new ArrayList<>();
+                for (Postings postings : terms.subMap(token, true, token + Character.MAX_VALUE, false).values()) {
+                    cursors.add(postings.cursor());
+                }
+                if (cursors.isEmpty()) return 0;
+                iterators[i] = cursors.size() == 1 ? cursors.get(0) : new UnionIterator(cursors);
+            } else {
+                Postings postings = terms.get(token);
+                if (postings == null) return 0;
+                iterators[i] = postings.cursor();
+            }
+        }
+        return intersect(iterators, result);
+    }
+
+    //Пересечение отсортированных потоков id "чехардой": каждый поток догоняет текущего кандидата
+    private static int intersect(IdIterator[] iterators, int[] result) {
+        int found = 0;
+        int candidate = iterators[0].advance(0);
+        int agreed = 1;
+        int i = 1 % iterators.length;
+        while (candidate >= 0) {
+            if (agreed == iterators.length) {
+                result[found++] = candidate;
+                if (found == result.length) break;
+                candidate = iterators[0].advance(candidate + 1);
+                agreed = 1;
+                i = 1 % iterators.length;
+                continue;
+            }
+            int id = iterators[i].advance(candidate);
+            if (id < 0) break;
+            if (id == candidate) {
+                agreed++;
+            } else {
+                candidate = id;
+                agreed = 1;
+            }
+            i = (i + 1) % iterators.length;
+        }
+        return found;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                token.appendCodePoint(normalize(codePoint));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) tokens.add(token.toString());
+        return tokens;
+    }
+
+    private static int normalize(int codePoint) {
+        int lower = Character.toLowerCase(codePoint);
+        return lower == 'ё' ? 'е' : lower;
+    }
+
+    //Поток возрастающих id
+    private interface IdIterator {
+        //Наименьший id, не меньший target, начиная с текущей позиции; -1, если таких нет
+        int advance(int target);
+    }
+
+    //Список id одного слова: разности соседних id в varint. Первая разность отсчитывается от -1.
+    //Каждые SKIP_INTERVAL id запоминается точка входа (предыдущий id и смещение в data), чтобы курсор
+    //мог перепрыгивать длинные списки ("товар", "apple") двоичным поиском, а не декодировать их целиком.
+    //
+    //Пополнение (add) сериализовано, поиск идёт без блокировки по неизменяемому виду списка (View), который
+    //публикуется volatile-записью после каждого добавления. Массивы только дописываются за границей опубликованного
+    //вида или заменяются новыми (рост, перекодирование), поэтому курсор по старому виду читает целый список.
+    private static final class Postings {
+        private static final int SKIP_INTERVAL = 128;
+        private static final int[] NO_SKIPS = new int[0];
+
+        //Состояние записи, защищено блокировкой this
+        private byte[] data = new byte[4];
+        private int length;
+        private int count;
+        private int last = -1;
+        private int[] skipIds = NO_SKIPS;
+        private int[] skipOffsets = NO_SKIPS;
+        private int skips;
+
+        private volatile View view = new View(data, 0, NO_SKIPS, NO_SKIPS, 0);
+
+        private record View(byte[] data, int length, int[] skipIds, int[] skipOffsets, int skips) {
+        }
+
+        synchronized void add(int id) {
+            if (id == last) return;
+            if (id > last) {
+                append(id);
+                publish();
+                return;
+            }
+            //Id пришёл не по порядку (например, товары добавляются не по возрастанию id) - перекодируем список
+            //в новые массивы: старые ещё читают курсоры поиска
+            int[] ids = decode();
+            int position = Arrays.binarySearch(ids, id);
+            if (position >= 0) return;
+            position = -position - 1;
+            int[] merged = new int[ids.length + 1];
+            System.arraycopy(ids, 0, merged, 0, position);
+            merged[position] = id;
+            System.arraycopy(ids, position, merged, position + 1, ids.length - position);
+            data = new byte[data.length + 5];
+            length = 0;
+            count = 0;
+            last = -1;
+            skipIds = NO_SKIPS;
+            skipOffsets = NO_SKIPS;
+            skips = 0;
+            for (int value : merged) append(value);
+            publish();
+        }
+
+        PostingCursor cursor() {
+            View current = view;
+            return new PostingCursor(current.data, current.length, current.skipIds, current.skipOffsets, current.skips);
+        }
+
+        private void publish() {
+            view = new View(data, length, skipIds, skipOffsets, skips);
+        }
+
+        private int[] decode() {
+            int[] ids = new int[count];
+            PostingCursor cursor = cursor();
+            int i = 0;
+            for (int id = cursor.advance(0); id >= 0; id = cursor.advance(id + 1)) ids[i++] = id;
+            return ids;
+        }
+
+        private void append(int id) {
+            if (count > 0 && count % SKIP_INTERVAL == 0) {
+                if (skips == skipIds.length) {
+                    skipIds = Arrays.copyOf(skipIds, Math.max(4, skips * 2));
+                    skipOffsets = Arrays.copyOf(skipOffsets, skipIds.length);
+                }
+                skipIds[skips] = last;
+                skipOffsets[skips++] = length;
+            }
+            if (length + 5 > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            int delta = id - last;
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            last = id;
+            count++;
+        }
+    }
+
+    private static final class PostingCursor implements IdIterator {
+        private final byte[] data;
+        private final int length;
+        private final int[] skipIds;
+        private final int[] skipOffsets;
+        private final int skips;
+        private int position;
+        private int current = -1;
+
+        PostingCursor(byte[] data, int length, int[] skipIds, int[] skipOffsets, int skips) {
+            this.data = data;
+            this.length = length;
+            this.skipIds = skipIds;
+            this.skipOffsets = skipOffsets;
+            this.skips = skips;
+        }
+
+        @Override
+        public int advance(int target) {
+            if (current >= target) return current == Integer.MAX_VALUE ? -1 : current;
+            skipTo(target);
+            while (position < length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                current += delta;
+                if (current >= target) return current;
+            }
+            current = Integer.MAX_VALUE;    //Поток исчерпан
+            return -1;
+        }
+
+        //Переходит к последней точке входа с id меньше target, если она впереди текущей позиции
+        private void skipTo(int target) {
+            if (skips == 0 || skipIds[0] >= target) return;
+            int low = 0;
+            int high = skips - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (skipIds[middle] < target) low = middle;
+                else high = middle - 1;
+            }
+            if (skipOffsets[low] > position) {
+                position = skipOffsets[low];
+                current = skipIds[low];
+            }
+        }
+
+        int current() {
+            return current;
+        }
+    }
+
+    //Объединение потоков всех слов с общим префиксом: двоичная куча курсоров по текущему id
+    private static final class UnionIterator implements IdIterator {
+        private final PostingCursor[] heap;
+        private int size;
+
+        UnionIterator(List<PostingCursor> cursors) {
+            heap = new PostingCursor[cursors.size()];
+            for (PostingCursor cursor : cursors) {
+                if (cursor.advance(0) >= 0) heap[size++] = cursor;
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) siftDown(i);
+        }
+
+        @Override
+        public int advance(int target) {
+            while (size > 0 && heap[0].current() < target) {
+                if (heap[0].advance(target) < 0) {
+                    heap[0] = heap[--size];
+                }
+                siftDown(0);
+            }
+            return size > 0 ? heap[0].current() : -1;
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && heap[left].current() < heap[smallest].current()) smallest = left;
+                if (right < size && heap[right].current() < heap[smallest].current()) smallest = right;
+                if (smallest == i) return;
+                PostingCursor swap = heap[i];
+                heap[i] = heap[smallest];
+                heap[smallest] = swap;
+                i = smallest;
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package ru.inno.market.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.LongSupplier;
+
+//Временные резервы товара: резерв списывает товар со склада каталога, но если его не подтвердить (confirm)
+//до истечения срока, товар возвращается на склад. Так брошенные корзины не держат ходовые товары.
+//
+//Сроки хранятся в иерархическом колесе таймеров: LEVELS уровней по SLOTS ячеек, ячейка уровня k
+//покрывает SLOTS^k тиков. Резерв кладётся в ячейку по своему сроку; на каждом тике обрабатывается одна ячейка
+//нижнего уровня, а при полном обороте уровня ячейка верхнего уровня "осыпается" на нижние. Поэтому тик стоит O(1)
+//независимо от числа резервов, а резерв - это 32 байта в параллельных массивах без отдельных объектов и задач.
+//
+//Колесо продвигается при каждом обращении (hold, confirm, cancel) и явным вызовом expire().
+//Класс потокобезопасен. Резервы живут в памяти; с журналом заказов товар снятого или истёкшего резерва
+//возвращается на склад одной записью вместе с id резерва (Catalog.releaseHold), а постановку и подтверждение
+//резервов заказа пишет сервис - после восстановления незакрытые резервы возвращают товар (OrderJournal.recover).
+public class StockReservations {
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;    //Дальше колесо не видит, срок уточнится при осыпании
+    private static final int NONE = -1;
+
+    private final Catalog catalog;
+    private final long tickMillis;
+    private final LongSupplier clockMillis;
+
+    //Резерв - номер ячейки в параллельных массивах, свободные номера связаны в список через next.
+    //Id резерва для клиента: (поколение << 32) | номер, поэтому устаревший id после переиспользования номера не сработает.
+    private int[] itemIds = new int[0];
+    private int[] quantities = new int[0];
+    private long[] deadlines = new long[0];     //Срок в тиках
+    private int[] generations = new int[0];
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] buckets = new int[0];         //Ячейка колеса, в которой лежит резерв; NONE - номер свободен
+    private int free = NONE;
+    private int used;
+    private int active;
+
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private long now;       //Текущий тик
+
+    public StockReservations(Catalog catalog) {
+        this(catalog, DEFAULT_TICK_MILLIS, System::currentTimeMillis);
+    }
+
+    public StockReservations(Catalog catalog, long tickMillis, LongSupplier clockMillis) {
+        if (catalog == null) throw new NoSuchElementException("Попытка создать резервы для каталога NULL!");
+        if (tickMillis <= 0) throw new NoSuchElementException("Попытка задать некорректный шаг таймера резервов!");
+        if (clockMillis == null) throw new NoSuchElementException("Попытка задать часы резервов NULL!");
+        this.catalog = catalog;
+        this.tickMillis = tickMillis;
+        this.clockMillis = clockMillis;
+        Arrays.fill(heads, NONE);
+        now = clockMillis.getAsLong() / tickMillis;
+    }
+
+    //Резервирует qty единиц товара на ttlMillis. Возвращает id резерва или -1, если товара недостаточно.
+    public long hold(int itemId, int qty, long ttlMillis) {
+        checkTtl(ttlMillis);
+        expire();
+        if (!catalog.tryReserve(itemId, qty)) return -1;
+        synchronized (this) {
+            return register(itemId, qty, ttlMillis);
+        }
+    }
+
+    //Резервирует набор товаров (id товара -> количество) по принципу "всё или ничего".
+    //Возвращает id резервов в порядке обхода набора или null, если хотя бы одного товара не хватает.
+    public long[] holdAll(Map<Integer, Integer> quantities, long ttlMillis) {
+        checkTtl(ttlMillis);
+        expire();
+        if (!catalog.tryReserveAll(quantities)) return null;
+        long[] holds = new long[quantities.size()];
+        int i = 0;
+        synchronized (this) {
+            for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+                holds[i++] = register(line.getKey(), line.getValue(), ttlMillis);
+            }
+        }
+        return holds;
+    }
+
+    //Подтверждает резерв: товар остаётся списанным со склада. false - резерв уже истёк или снят.
+    public boolean confirm(long holdId) {
+        return confirmAll(new long[]{holdId});
+    }
+
+    //Подтверждает все резервы или ни одного: если хотя бы один истёк, остальные снимаются и товар возвращается на склад.
+    public boolean confirmAll(long[] holdIds) {
+        if (holdIds == null) throw new NoSuchElementException("Попытка подтвердить резервы NULL!");
+        expire();
+        synchronized (this) {
+            boolean alive = true;
+            for (long holdId : holdIds) alive &= slotOf(holdId) != NONE;
+            if (alive) {
+                for (long holdId : holdIds) {
+                    int slot = slotOf(holdId);
+                    if (slot != NONE) unlink(slot);     //Один и тот же id может встретиться дважды
+                }
+                return true;
+            }
+        }
+        cancelAll(holdIds);
+        return false;
+    }
+
+    //Снимает резерв и возвращает товар на склад. false - резерв уже истёк или снят.
+    public boolean cancel(long holdId) {
+        int itemId;
+        int qty;
+        synchronized (this) {
+            int slot = slotOf(holdId);
+            if (slot == NONE) return false;
+            itemId = itemIds[slot];
+            qty = quantities[slot];
+            unlink(slot);
+        }
+        catalog.releaseHold(holdId, itemId, qty);
+        return true;
+    }
+
+    //Продвигает колесо до текущего времени и возвращает на склад товар истёкших резервов. Возвращает их число.
+    public int expire() {
+        long[] expired;     //Пары (id товара, количество); склад обновляется вне блокировки колеса
+        long[] expiredIds;  //Id истёкших резервов
+        int count = 0;
+        synchronized (this) {
+            long target = clockMillis.getAsLong() / tickMillis;
+            if (target <= now) return 0;
+            if (active == 0) {
+                now = target;
+                return 0;
+            }
+            expired = new long[8];
+            expiredIds = new long[8];
+            while (now < target && active > 0) {
+                now++;
+                cascade();
+                int bucket = (int) (now & (SLOTS - 1));
+                for (int slot = heads[bucket]; slot != NONE; ) {
+                    int following = next[slot];
+                    if (count == expired.length) {
+                        expired = Arrays.copyOf(expired, count * 2);
+                        expiredIds = Arrays.copyOf(expiredIds, count * 2);
+                    }
+                    expiredIds[count] = ((long) generations[slot] << 32) | slot;
+                    expired[count++] = ((long) itemIds[slot] << 32) | quantities[slot];
+                    unlink(slot);
+                    slot = following;
+                }
+            }
+            if (now < target) now = target;
+        }
+        for (int i = 0; i < count; i++) {
+            catalog.releaseHold(expiredIds[i], (int) (expired[i] >>> 32), (int) expired[i]);
+        }
+        return count;
+    }
+
+    //Число действующих резервов
+    public synchronized int activeHolds() {
+        return active;
+    }
+
+    //Резерв ещё действует: не подтверждён, не снят и не истёк
+    synchronized boolean isActive(long holdId) {
+        return slotOf(holdId) != NONE;
+    }
+
+    private void cancelAll(long[] holdIds) {
+        for (long holdId : holdIds) cancel(holdId);
+    }
+
+    private static void checkTtl(long ttlMillis) {
+        if (ttlMillis <= 0) throw new NoSuchElementException("Попытка зарезервировать товар на некорректный срок!");
+    }
+
+    private long register(int itemId, int qty, long ttlMillis) {
+        int slot = allocate();
+        itemIds[slot] = itemId;
+        quantities[slot] = qty;
+        long ticks = Math.max(1, (ttlMillis + tickMillis - 1) / tickMillis);
+        deadlines[slot] = now + ticks;
+        place(slot);
+        active++;
+        return ((long) generations[slot] << 32) | slot;
+    }
+
+    private int slotOf(long holdId) {
+        int slot = (int) holdId;
+        if (slot < 0 || slot >= used || buckets[slot] == NONE || generations[slot] != (int) (holdId >>> 32)) return NONE;
+        return slot;
+    }
+
+    //Кладёт резерв в ячейку: уровень - по оставшемуся числу тиков, ячейка уровня - по самому сроку
+    private void place(int slot) {
+        long delay = Math.min(Math.max(deadlines[slot] - now, 0), MAX_DELAY);
+        long at = now + delay;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= 1L << (SLOT_BITS * (level + 1))) level++;
+        int bucket = level * SLOTS + (int) ((at >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        buckets[slot] = bucket;
+        prev[slot] = NONE;
+        next[slot] = heads[bucket];
+        if (heads[bucket] != NONE) prev[heads[bucket]] = slot;
+        heads[bucket] = slot;
+    }
+
+    //На границе оборота уровня k осыпает текущую ячейку уровня k на нижние уровни, начиная с верхнего,
+    //чтобы осыпавшиеся сверху резервы успели попасть в ячейку, которая осыпается на этом же тике
+    private void cascade() {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((now & ((1L << (SLOT_BITS * level)) - 1)) != 0) continue;
+            int bucket = level * SLOTS + (int) ((now >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            int slot = heads[bucket];
+            heads[bucket] = NONE;
+            while (slot != NONE) {
+                int following = next[slot];
+                place(slot);
+                slot = following;
+            }
+        }
+    }
+
+    private void unlink(int slot) {
+        int bucket = buckets[slot];
+        if (prev[slot] != NONE) next[prev[slot]] = next[slot];
+        else heads[bucket] = next[slot];
+        if (next[slot] != NONE) prev[next[slot]] = prev[slot];
+        buckets[slot] = NONE;
+        generations[slot]++;
+        next[slot] = free;
+        free = slot;
+        active--;
+    }
+
+    private int allocate() {
+        if (free != NONE) {
+            int slot = free;
+            free = next[slot];
+            return slot;
+        }
+        if (used == itemIds.length) {
+            int capacity = Math.max(16, used * 2);
+            itemIds = Arrays.copyOf(itemIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            buckets = Arrays.copyOf(buckets, capacity);
+        }
+        return used++;
+    }
+}
@@ -0,0 +1,237 @@
+package ru.inno.market.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Таблица остатков на складе, индексированная по id товара.
+//Каждый остаток - отдельная атомарная ячейка, изменяемая через CAS, без глобальной блокировки.
+//
+//Ходовой товар (распродажа одного-двух товаров) превращает свою ячейку в точку, за которую дерутся все ядра.
+//Поэтому неудачные CAS считаются: если за окно около 134 мс по одному товару набирается HOT_THRESHOLD неудач,
+//его остаток делится на шарды по числу ядер (ShardedCount), а в ячейке остаётся метка SPLIT.
+//Поток списывает товар из своего шарда, при нехватке - из чужого, а когда товара мало везде - собирает все шарды
+//под блокировкой товара и раскладывает остаток заново. Каждое списание - CAS, который не уводит шард в минус,
+//поэтому товар не продаётся сверх остатка, а последняя единица продаётся, в каком бы шарде она ни лежала.
+//Чтение остатка (get) ждёт окончания сбора и раскладки, поэтому не видит пустых на это время шардов.
+//
+//Ячейки лежат блоками по CHUNK_SIZE. Рост таблицы (grow) добавляет блоки, не перенося существующие,
+//поэтому новые товары можно добавлять, не останавливая списания.
+class StockTable {
+    static final int SPLIT = Integer.MIN_VALUE;     //Метка в ячейке: остаток товара разделён на шарды
+
+    private static final int CONTENTION_SLOTS = 1024;     //Счётчики неудачных CAS; слот id % 1024 считает неудачи одного товара
+    static final int HOT_THRESHOLD = 64;
+    private static final int WINDOW_SHIFT = 27;           //Окно подсчёта - 2^27 нс
+    private static final long WINDOW_MASK = 0xFF;         //В слоте хранятся младшие 8 бит номера окна
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1 << COUNT_BITS) - 1;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private volatile AtomicIntegerArray[] chunks;
+    private final AtomicLongArray contention = new AtomicLongArray(CONTENTION_SLOTS);   //(id << 32) | (окно << COUNT_BITS) | неудачи
+    private final Map<Integer, ShardedCount> split = new ConcurrentHashMap<>();
+    private final int shards;
+
+    StockTable(int capacity) {
+        this(capacity, defaultShards());
+    }
+
+    StockTable(int capacity, int shards) {
+        chunks = new AtomicIntegerArray[0];
+        this.shards = shards;
+        grow(capacity);
+    }
+
+    //Степень двойки не меньше числа ядер, от 2 до 64
+    private static int defaultShards() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        return Math.max(2, Integer.highestOneBit(processors * 2 - 1));
+    }
+
+    int capacity() {
+        return chunks.length << CHUNK_BITS;
+    }
+
+    //Расширяет таблицу до capacity ячеек; остатки и идущие списания не затрагиваются
+    synchronized void grow(int capacity) {
+        AtomicIntegerArray[] current = chunks;
+        int needed = (capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        if (needed <= current.length) return;
+        AtomicIntegerArray[] grown = Arrays.copyOf(current, needed);
+        for (int i = current.length; i < needed; i++) grown[i] = new AtomicIntegerArray(CHUNK_SIZE);
+        chunks = grown;
+    }
+
+    private AtomicIntegerArray chunk(int id) {
+        return chunks[id >>> CHUNK_BITS];
+    }
+
+    int get(int id) {
+        AtomicIntegerArray cells = chunk(id);
+        int at = id & (CHUNK_SIZE - 1);
+        while (true) {
+            int count = cells.get(at);
+            if (count != SPLIT) return count;
+            ShardedCount sharded = split.get(id);
+            if (sharded != null) return sharded.sum();
+        }
+    }
+
+    //Задаёт остаток; разделённый товар снова хранится в одной ячейке. Используется при наполнении, обновлении каталога
+    //и восстановлении. Сначала пишется ячейка, потом убираются шарды: поток, увидевший метку SPLIT и уже не нашедший
+    //шардов, перечитывает ячейку (см. tryReserve). С split взаимно исключается, иначе метка легла бы без шардов.
+    //Отрицательный остаток сюда не доходит (его отклоняют Catalog и CatalogUpdate): Integer.MIN_VALUE совпал бы с SPLIT,
+    //и чтение остатка искало бы несуществующие шарды вечно.
+    synchronized void set(int id, int count) {
+        if (count < 0) throw new IllegalStateException("Отрицательный остаток товара " + id + ": " + count);
+        chunk(id).set(id & (CHUNK_SIZE - 1), count);
+        split.remove(id);
+    }
+
+    //Атомарно списывает qty единиц товара, если их хватает. Возвращает false, если остатка недостаточно.
+    boolean tryReserve(int id, int qty) {
+        AtomicIntegerArray cells = chunk(id);
+        int at = id & (CHUNK_SIZE - 1);
+        while (true) {
+            int current = cells.get(at);
+            while (current >= qty) {
+                int witness = cells.compareAndExchange(at, current, current - qty);
+                if (witness == current) return true;
+                current = witness;
+                contended(id);
+                Thread.onSpinWait();  //Конкуренция за один и тот же товар - даём соседнему ядру закончить CAS
+            }
+            if (current != SPLIT) return false;
+            ShardedCount sharded = split.get(id);
+            if (sharded != null) return sharded.tryReserve(qty);
+            //Шарды уже убраны set - в ячейке новый остаток
+        }
+    }
+
+    void release(int id, int qty) {
+        AtomicIntegerArray cells = chunk(id);
+        int at = id & (CHUNK_SIZE - 1);
+        while (true) {
+            int current = cells.get(at);
+            while (current != SPLIT) {
+                int witness = cells.compareAndExchange(at, current, current + qty);
+                if (witness == current) return;
+                current = witness;
+            }
+            ShardedCount sharded = split.get(id);
+            if (sharded != null) {
+                sharded.release(qty);
+                return;
+            }
+        }
+    }
+
+    //Делит остаток товара на шарды (если ещё не разделён). Шарды появляются в split раньше метки в ячейке,
+    //поэтому поток, увидевший метку, всегда найдёт шарды, пока их не убрал set.
+    void split(int id) {
+        if (isSplit(id)) return;
+        ShardedCount sharded = new ShardedCount(shards);
+        synchronized (this) {
+            synchronized (sharded) {        //Пока остаток раскладывается, медленный путь списания ждёт
+                if (split.putIfAbsent(id, sharded) != null) return;
+                int total = chunk(id).getAndSet(id & (CHUNK_SIZE - 1), SPLIT);
+                sharded.spread(total);
+            }
+        }
+    }
+
+    boolean isSplit(int id) {
+        return chunk(id).get(id & (CHUNK_SIZE - 1)) == SPLIT;
+    }
+
+    //Неудача CAS по товару id. Слот помнит, чьи неудачи он считает: неудача другого товара с тем же слотом
+    //или начало нового окна начинает счёт заново, поэтому делится только товар, набравший порог сам.
+    //Гонки между потоками теряют отдельные неудачи, что для порога не важно.
+    void contended(int id) {
+        int slot = id & (CONTENTION_SLOTS - 1);
+        long owner = (long) id << 32 | ((System.nanoTime() >>> WINDOW_SHIFT) & WINDOW_MASK) << COUNT_BITS;
+        long current = contention.get(slot);
+        long next = (current & ~COUNT_MASK) == owner ? current + 1 : owner | 1;
+        if (contention.compareAndSet(slot, current, next) && (next & COUNT_MASK) == HOT_THRESHOLD) split(id);
+    }
+
+    //Остаток одного товара, разделённый на шарды. Шард занимает свою строку кэша, поток работает с шардом
+    //по своему id (как полосы гистограмм MarketMetrics). Сумма шардов - остаток товара.
+    private static final class ShardedCount {
+        private static final int STRIDE = 16;       //64 байта между шардами
+
+        private final AtomicIntegerArray cells;
+        private final int mask;
+
+        ShardedCount(int shards) {
+            cells = new AtomicIntegerArray(shards * STRIDE);
+            mask = shards - 1;
+        }
+
+        boolean tryReserve(int qty) {
+            int home = (int) Thread.currentThread().threadId() & mask;
+            //Свой шард, затем соседние: списание целиком из одного шарда
+            for (int i = 0; i <= mask; i++) {
+                if (take((home + i) & mask, qty)) return true;
+            }
+            return collect(home, qty);
+        }
+
+        void release(int qty) {
+            cells.addAndGet(((int) Thread.currentThread().threadId() & mask) * STRIDE, qty);
+        }
+
+        //Под блокировкой шардов: сбор (collect) и первая раскладка (split) временно обнуляют шарды
+        synchronized int sum() {
+            int sum = 0;
+            for (int shard = 0; shard <= mask; shard++) sum += cells.get(shard * STRIDE);
+            return sum;
+        }
+
+        private boolean take(int shard, int qty) {
+            int at = shard * STRIDE;
+            int current = cells.get(at);
+            while (current >= qty) {
+                int witness = cells.compareAndExchange(at, current, current - qty);
+                if (witness == current) return true;
+                current = witness;
+            }
+            return false;
+        }
+
+        //Ни в одном шарде нет qty целиком: забираем все шарды, списываем из суммы и раскладываем остаток поровну.
+        //Проходы повторяются, пока приносят товар, чтобы не отказать из-за возврата в уже собранный шард.
+        private synchronized boolean collect(int home, int qty) {
+            int total = 0;
+            int collected;
+            do {
+                collected = 0;
+                for (int shard = 0; shard <= mask; shard++) collected += cells.getAndSet(shard * STRIDE, 0);
+                total += collected;
+            } while (total < qty && collected > 0);
+            boolean reserved = total >= qty;
+            if (reserved) total -= qty;
+            spread(total, home);
+            return reserved;
+        }
+
+        void spread(int total) {
+            spread(total, 0);
+        }
+
+        //Раскладывает total поровну; остаток от деления - в шард home. Добавление, а не запись:
+        //возвраты, пришедшие в шарды во время сбора, не теряются.
+        private void spread(int total, int home) {
+            int shards = mask + 1;
+            int share = total / shards;
+            for (int shard = 0; shard <= mask; shard++) {
+                int amount = share + (shard == home ? total - share * shards : 0);
+                if (amount != 0) cells.addAndGet(shard * STRIDE, amount);
+            }
+        }
+    }
+}
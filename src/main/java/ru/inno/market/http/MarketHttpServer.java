@@ -0,0 +1,269 @@
+package ru.inno.market.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ru.inno.market.core.MarketService;
+import ru.inno.market.model.Item;
+import ru.inno.market.model.Order;
+import ru.inno.market.model.OrderSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Встроенный HTTP-интерфейс к MarketService на com.sun.net.httpserver.
+//Каждый запрос обрабатывается в своём виртуальном потоке, поэтому десятки тысяч одновременных сессий
+//не упираются в размер пула; сервис и каталог потокобезопасны, блокировки в них короткие.
+//
+//  POST /orders?clientId=1&nickname=Dima          создать заказ -> {"id":0}
+//  POST /orders/{id}/items?itemId=1&quantity=2    добавить товар (со списанием со склада)
+//  POST /orders/{id}/promo?code=FIRST_ORDER,VDUD  применить акции по промокодам (через запятую)
+//  POST /orders/{id}/checkout                     оформить (оплатить) заказ
+//  POST /orders/{id}/ship                         отгрузить оплаченный заказ
+//  POST /orders/{id}/cancel                       отменить заказ
+//  GET  /orders/{id}                              состав, сумма и состояние заказа
+//  GET  /metrics                                  метрики сервиса в текстовом формате Prometheus
+//
+//Ответы - JSON. 404 - нет такого заказа или пути, 400 - некорректные параметры,
+//409 - операция отклонена сервисом (товар закончился, некорректное количество и т.п.),
+//500 - непредвиденная ошибка сервиса (тело - {"error":...}, соединение не обрывается).
+public class MarketHttpServer implements AutoCloseable {
+    private static final String ORDERS = "/orders";
+    private static final String METRICS = "/metrics";
+
+    private final MarketService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MarketHttpServer(MarketService service, HttpServer server, ExecutorService executor) {
+        this.service = service;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    //Запускает сервер на порту port (0 - любой свободный)
+    public static MarketHttpServer start(MarketService service, int port) throws UncheckedIOException {
+        if (service == null) throw new NoSuchElementException("Попытка запустить сервер для сервиса NULL!");
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+            MarketHttpServer http = new MarketHttpServer(service, server, executor);
+            server.createContext(ORDERS, http::handle);
+            server.createContext(METRICS, http::handleMetrics);
+            server.setExecutor(executor);
+            server.start();
+            return http;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось запустить HTTP-сервер на порту " + port, e);
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (BadRequest e) {
+                respond(exchange, 400, error(e.getMessage()));
+            } catch (NoSuchElementException e) {
+                respond(exchange, 409, error(e.getMessage()));
+            } catch (RuntimeException e) {
+                respond(exchange, 500, error("Внутренняя ошибка сервера: " + e.getClass().getSimpleName()));
+            }
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body;
+            try {
+                body = service.getMetrics().exportText().getBytes(StandardCharsets.UTF_8);
+            } catch (RuntimeException e) {
+                respond(exchange, 500, error("Внутренняя ошибка сервера: " + e.getClass().getSimpleName()));
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String rawPath = exchange.getRequestURI().getPath();
+        if (!rawPath.equals(ORDERS) && !rawPath.startsWith(ORDERS + "/")) {
+            respond(exchange, 404, error("Неизвестный запрос"));
+            return;
+        }
+        String[] path = rawPath.substring(ORDERS.length()).split("/");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        //path[0] - пустая строка перед первым "/"
+        if (path.length <= 1) {
+            if (!method.equals("POST")) {
+                respond(exchange, 405, error("Метод не поддерживается"));
+                return;
+            }
+            int id = service.createOrderFor(service.getClients().register(intParam(query, "clientId"), query.get("nickname")));
+            respond(exchange, 201, "{\"id\":" + id + "}");
+            return;
+        }
+        int orderId = parseInt(path[1], "id заказа");
+        Order order;
+        try {
+            order = service.getOrderInfo(orderId);
+        } catch (NoSuchElementException e) {
+            respond(exchange, 404, error(e.getMessage()));
+            return;
+        }
+        String action = path.length == 2 ? "" : path[2];
+        if (path.length > 3) action = "?";
+        switch (method + " " + action) {
+            case "GET " -> respond(exchange, 200, orderJson(order.snapshot()));
+            case "POST items" -> {
+                service.addItemsToOrder(orderId, Map.of(intParam(query, "itemId"), intParam(query, "quantity")));
+                respond(exchange, 200, orderJson(order.snapshot()));
+            }
+            case "POST promo" -> {
+                service.applyPromotions(orderId, promoParam(query));
+                respond(exchange, 200, orderJson(order.snapshot()));
+            }
+            case "POST checkout" -> {
+                service.checkout(orderId);
+                respond(exchange, 200, orderJson(order.snapshot()));
+            }
+            case "POST ship" -> {
+                service.ship(orderId);
+                respond(exchange, 200, orderJson(order.snapshot()));
+            }
+            case "POST cancel" -> {
+                service.cancel(orderId);
+                respond(exchange, 200, orderJson(order.snapshot()));
+            }
+            default -> respond(exchange, 404, error("Неизвестный запрос"));
+        }
+    }
+
+    //Корзина, сумма и признак скидки берутся из одного неизменяемого снимка, без блокировки заказа
+    private static String orderJson(OrderSnapshot order) {
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"id\":").append(order.getId())
+                .append(",\"clientId\":").append(order.getClient().getId())
+                .append(",\"version\":").append(order.getVersion())
+                .append(",\"status\":\"").append(order.getStatus()).append('"')
+                .append(",\"items\":[");
+        for (int line = 0; line < order.getLineCount(); line++) {
+            Item item = order.getLineItem(line);
+            if (line > 0) json.append(',');
+            json.append("{\"itemId\":").append(item.getId())
+                    .append(",\"name\":");
+            appendString(json, item.getName());
+            json.append(",\"quantity\":").append(order.getLineQuantity(line)).append('}');
+        }
+        json.append("],\"totalKopecks\":").append(order.getTotalKopecks())
+                .append(",\"discountApplied\":").append(order.isDiscountApplied()).append('}');
+        return json.toString();
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+                    else json.append(c);
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static int intParam(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) throw new BadRequest("Не указан параметр " + name);
+        return parseInt(value, name);
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequest("Некорректное значение " + name + ": " + value);
+        }
+    }
+
+    private List<String> promoParam(Map<String, String> query) {
+        String value = query.get("code");
+        if (value == null) throw new BadRequest("Не указан параметр code");
+        List<String> codes = List.of(value.split(","));
+        for (String code : codes) {
+            if (!service.getPromotions().hasCode(code)) throw new BadRequest("Неизвестный промокод: " + code);
+        }
+        return codes;
+    }
+
+    //Некорректный запрос клиента -> 400
+    private static final class BadRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequest(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ru.inno.market.load;
+
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.MarketMetrics;
+import ru.inno.market.core.MarketMetrics.Operation;
+import ru.inno.market.core.MarketService;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.Item;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Генератор нагрузки на MarketService по трассе (Trace).
+//
+//run - открытая модель: сессии запускаются по расписанию трассы, каждая в своём виртуальном потоке, независимо от того,
+//успевает ли сервис. Задержка операции считается от момента, когда она должна была начаться: для первой операции
+//сессии - момент прихода по расписанию, для следующих - конец предыдущей. Так медленный ответ сервиса не прячет
+//задержку запросов, которые в это время должны были прийти (поправка на координированное упущение).
+//
+//replay - те же сессии по очереди в вызывающем потоке без пауз: одна и та же трасса на одном и том же каталоге
+//всегда приводит сервис в одно и то же состояние.
+public class LoadGenerator {
+    private final MarketService service;
+
+    public LoadGenerator(MarketService service) {
+        if (service == null) throw new NoSuchElementException("Попытка создать генератор нагрузки для сервиса NULL!");
+        this.service = service;
+    }
+
+    //Каталог из items товаров с id 1..items и остатком stock каждого; первые 12 - стандартное наполнение Catalog
+    public static Catalog syntheticCatalog(int items, int stock, long seed) {
+        Catalog catalog = new Catalog();
+        Category[] categories = Category.values();
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int id = 1; id <= Math.max(items, 12); id++) {
+            Item item = id <= 12
+                    ? catalog.getItemInfo(id)
+                    : Item.ofKopecks(id, "Товар " + id, categories[id % categories.length], 1000 + random.nextInt(20_000_000));
+            catalog.addItem(item, stock);
+        }
+        return catalog;
+    }
+
+    //Id товаров 1..items для Trace.generate по синтетическому каталогу
+    public static int[] itemIds(int items) {
+        int[] ids = new int[Math.max(items, 12)];
+        for (int i = 0; i < ids.length; i++) ids[i] = i + 1;
+        return ids;
+    }
+
+    public LoadReport run(Trace trace) {
+        Run run = new Run(trace);
+        long maxLag = 0;
+        long begin = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Trace.Session session : trace.getSessions()) {
+                long intended = begin + session.arrivalNanos();
+                long now;
+                while ((now = System.nanoTime()) < intended) LockSupport.parkNanos(intended - now);
+                maxLag = Math.max(maxLag, now - intended);
+                executor.execute(() -> run.session(session, intended));
+            }
+        }
+        return run.report(System.nanoTime() - begin, maxLag);
+    }
+
+    public LoadReport replay(Trace trace) {
+        Run run = new Run(trace);
+        long begin = System.nanoTime();
+        for (Trace.Session session : trace.getSessions()) run.session(session, System.nanoTime());
+        return run.report(System.nanoTime() - begin, 0);
+    }
+
+    //Состояние одного прогона трассы
+    private final class Run {
+        private final Trace trace;
+        private final MarketMetrics latencies = new MarketMetrics(1);
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong abandoned = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        Run(Trace trace) {
+            if (trace == null) throw new NoSuchElementException("Попытка запустить нагрузку по трассе NULL!");
+            this.trace = trace;
+        }
+
+        void session(Trace.Session session, long intended) {
+            Operation operation = Operation.CREATE_ORDER;
+            int orderId = -1;
+            try {
+                orderId = service.createOrderFor(client(session.clientId()));
+                intended = done(operation, intended, false);
+
+                operation = Operation.ADD_ITEMS;
+                service.holdItemsForOrder(orderId, cart(session), trace.getHoldTtlMillis());
+                intended = done(operation, intended, false);
+
+                if (session.promoCode() != null) {
+                    operation = Operation.APPLY_DISCOUNT;
+                    service.applyPromotions(orderId, List.of(session.promoCode()));
+                    intended = done(operation, intended, false);
+                }
+                if (session.abandoned()) {
+                    abandoned.incrementAndGet();     //Брошенная корзина: резерв снимается, заказ уходит в архив
+                    cancel(orderId);
+                    return;
+                }
+
+                operation = Operation.CHECKOUT;
+                service.checkout(orderId);
+                intended = done(operation, intended, false);
+
+                operation = Operation.COMPLETE_ORDER;
+                service.ship(orderId);
+                done(operation, intended, false);
+                completed.incrementAndGet();
+            } catch (NoSuchElementException e) {
+                done(operation, intended, true);
+                failed.incrementAndGet();
+                if (orderId >= 0 && operation != Operation.COMPLETE_ORDER) cancel(orderId);
+            }
+        }
+
+        //Клиент сессии: уже зарегистрированный (с его ником) или новый без ника
+        private Client client(int clientId) {
+            Client client = service.getClients().find(clientId);
+            return client != null ? client : service.getClients().register(clientId, null);
+        }
+
+        //Прерванная или брошенная сессия отменяет свой заказ, чтобы он не оставался в памяти сервиса открытым
+        private void cancel(int orderId) {
+            try {
+                service.cancel(orderId);
+            } catch (NoSuchElementException ignored) {
+            }
+        }
+
+        //Записывает задержку операции от запланированного начала; возвращает запланированное начало следующей
+        private long done(Operation operation, long intended, boolean failed) {
+            long now = System.nanoTime();
+            latencies.recordLatency(operation, now - intended, failed);
+            return now;
+        }
+
+        private Map<Integer, Integer> cart(Trace.Session session) {
+            Map<Integer, Integer> cart = new LinkedHashMap<>();
+            for (int line = 0; line < session.lineCount(); line++) cart.put(session.itemIds()[line], session.quantities()[line]);
+            return cart;
+        }
+
+        LoadReport report(long elapsedNanos, long maxLagNanos) {
+            return new LoadReport(trace.getSessions().size(), completed.get(), abandoned.get(), failed.get(),
+                    elapsedNanos, maxLagNanos, latencies);
+        }
+    }
+}
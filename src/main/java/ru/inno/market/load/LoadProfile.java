@@ -0,0 +1,184 @@
+package ru.inno.market.load;
+
+import ru.inno.market.model.PromoCodes;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+//Параметры синтетической нагрузки для Trace.generate. Неизменяемый: методы with* возвращают изменённую копию.
+//
+//Сессия покупателя: создать заказ, зарезервировать корзину (holdItemsForOrder), с вероятностью promoRate предъявить
+//промокод, затем либо бросить корзину (abandonRate, заказ отменяется), либо оформить и отгрузить заказ.
+//Товар строки выбирается по закону Ципфа с показателем zipfExponent: товар ранга k популярнее в k^s раз первого.
+//Размер корзины - геометрическое распределение со средним meanCartSize, не больше maxCartSize строк.
+//Сессии приходят пуассоновским потоком с интенсивностью ratePerSecond (открытая модель нагрузки).
+public final class LoadProfile {
+    private final long seed;
+    private final int sessions;
+    private final double ratePerSecond;
+    private final int clients;
+    private final double zipfExponent;
+    private final double meanCartSize;
+    private final int maxCartSize;
+    private final int maxQuantity;
+    private final double promoRate;
+    private final String[] promoCodes;
+    private final double abandonRate;
+    private final long holdTtlMillis;
+
+    private LoadProfile(long seed, int sessions, double ratePerSecond, int clients, double zipfExponent, double meanCartSize,
+                        int maxCartSize, int maxQuantity, double promoRate, String[] promoCodes, double abandonRate,
+                        long holdTtlMillis) {
+        this.seed = seed;
+        this.sessions = sessions;
+        this.ratePerSecond = ratePerSecond;
+        this.clients = clients;
+        this.zipfExponent = zipfExponent;
+        this.meanCartSize = meanCartSize;
+        this.maxCartSize = maxCartSize;
+        this.maxQuantity = maxQuantity;
+        this.promoRate = promoRate;
+        this.promoCodes = promoCodes;
+        this.abandonRate = abandonRate;
+        this.holdTtlMillis = holdTtlMillis;
+    }
+
+    //10 000 сессий по 1000 в секунду от 10 000 клиентов, s = 1.1, корзина в среднем 3 строки,
+    //промокод в каждой пятой сессии, брошена каждая третья корзина
+    public static LoadProfile defaults() {
+        String[] codes = Arrays.stream(PromoCodes.values()).map(Enum::name).toArray(String[]::new);
+        return new LoadProfile(42, 10_000, 1000, 10_000, 1.1, 3, 20, 3, 0.2, codes, 0.3, 60_000);
+    }
+
+    public LoadProfile withSeed(long seed) {
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    public LoadProfile withSessions(int sessions) {
+        if (sessions < 0) throw new NoSuchElementException("Попытка задать некорректное число сессий!");
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    public LoadProfile withRate(double ratePerSecond) {
+        if (!(ratePerSecond > 0)) throw new NoSuchElementException("Попытка задать некорректную интенсивность нагрузки!");
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    public LoadProfile withClients(int clients) {
+        if (clients <= 0) throw new NoSuchElementException("Попытка задать некорректное число клиентов!");
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    public LoadProfile withZipfExponent(double zipfExponent) {
+        if (!(zipfExponent >= 0)) throw new NoSuchElementException("Попытка задать некорректный показатель Ципфа!");
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    public LoadProfile withCartSize(double meanCartSize, int maxCartSize) {
+        if (maxCartSize <= 0 || !(meanCartSize >= 1) || meanCartSize > maxCartSize)
+            throw new NoSuchElementException("Попытка задать некорректный размер корзины!");
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    //Количество товара в строке - равномерно от 1 до maxQuantity
+    public LoadProfile withMaxQuantity(int maxQuantity) {
+        if (maxQuantity <= 0) throw new NoSuchElementException("Попытка задать некорректное количество товара!");
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    //Промокод сессии выбирается равномерно из codes
+    public LoadProfile withPromo(double promoRate, String... codes) {
+        checkRate(promoRate);
+        if (codes == null || (promoRate > 0 && codes.length == 0))
+            throw new NoSuchElementException("Попытка задать нагрузку без промокодов!");
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, codes.clone(), abandonRate, holdTtlMillis);
+    }
+
+    public LoadProfile withAbandonRate(double abandonRate) {
+        checkRate(abandonRate);
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    public LoadProfile withHoldTtl(long holdTtlMillis) {
+        if (holdTtlMillis <= 0) throw new NoSuchElementException("Попытка задать некорректный срок резерва!");
+        return new LoadProfile(seed, sessions, ratePerSecond, clients, zipfExponent, meanCartSize, maxCartSize, maxQuantity,
+                promoRate, promoCodes, abandonRate, holdTtlMillis);
+    }
+
+    private static void checkRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) throw new NoSuchElementException("Попытка задать некорректную долю сессий!");
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    public double getMeanCartSize() {
+        return meanCartSize;
+    }
+
+    public int getMaxCartSize() {
+        return maxCartSize;
+    }
+
+    public int getMaxQuantity() {
+        return maxQuantity;
+    }
+
+    public double getPromoRate() {
+        return promoRate;
+    }
+
+    public String[] getPromoCodes() {
+        return promoCodes.clone();
+    }
+
+    public double getAbandonRate() {
+        return abandonRate;
+    }
+
+    public long getHoldTtlMillis() {
+        return holdTtlMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadProfile{" +
+                "seed=" + seed +
+                ", sessions=" + sessions +
+                ", ratePerSecond=" + ratePerSecond +
+                ", clients=" + clients +
+                ", zipfExponent=" + zipfExponent +
+                ", cartSize=" + meanCartSize + "/" + maxCartSize +
+                ", maxQuantity=" + maxQuantity +
+                ", promoRate=" + promoRate +
+                ", abandonRate=" + abandonRate +
+                ", holdTtlMillis=" + holdTtlMillis +
+                '}';
+    }
+}
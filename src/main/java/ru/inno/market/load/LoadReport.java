@@ -0,0 +1,101 @@
+package ru.inno.market.load;
+
+import ru.inno.market.core.MarketMetrics;
+import ru.inno.market.core.MarketMetrics.Operation;
+
+import java.util.Locale;
+
+//Итог прогона LoadGenerator. Задержки операций - с поправкой на координированное упущение:
+//отсчёт идёт от момента, когда операция должна была начаться по расписанию трассы, а не от фактического начала.
+public final class LoadReport {
+    private static final Operation[] SESSION_OPERATIONS = {
+            Operation.CREATE_ORDER, Operation.ADD_ITEMS, Operation.APPLY_DISCOUNT, Operation.CHECKOUT, Operation.COMPLETE_ORDER
+    };
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final int sessions;
+    private final long completed;
+    private final long abandoned;
+    private final long failed;
+    private final long elapsedNanos;
+    private final long maxLagNanos;
+    private final MarketMetrics latencies;
+
+    LoadReport(int sessions, long completed, long abandoned, long failed, long elapsedNanos, long maxLagNanos, MarketMetrics latencies) {
+        this.sessions = sessions;
+        this.completed = completed;
+        this.abandoned = abandoned;
+        this.failed = failed;
+        this.elapsedNanos = elapsedNanos;
+        this.maxLagNanos = maxLagNanos;
+        this.latencies = latencies;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    //Сессии, заказ которых оформлен и отгружен
+    public long getCompleted() {
+        return completed;
+    }
+
+    //Сессии, корзина которых брошена по сценарию
+    public long getAbandoned() {
+        return abandoned;
+    }
+
+    //Сессии, прерванные отказом сервиса (товар закончился, резерв истёк и т.п.)
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    //Наибольшее опоздание запуска сессии относительно расписания, нс: генератор не успевал за нагрузкой
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    //Задержка, которую не превышают quantile (0..1) вызовов операции, нс
+    public long latencyNanos(Operation operation, double quantile) {
+        return latencies.latencyNanos(operation, quantile);
+    }
+
+    public long count(Operation operation) {
+        return latencies.count(operation);
+    }
+
+    public long errors(Operation operation) {
+        return latencies.errors(operation);
+    }
+
+    public double throughputPerSecond() {
+        return elapsedNanos == 0 ? 0 : sessions * 1e9 / elapsedNanos;
+    }
+
+    //Таблица для консоли: счётчики сессий и квантили задержек операций в микросекундах
+    public String format() {
+        StringBuilder out = new StringBuilder(512);
+        out.append(String.format(Locale.ROOT, "sessions=%d completed=%d abandoned=%d failed=%d elapsed=%.3fs rate=%.1f/s maxLag=%.1fus%n",
+                sessions, completed, abandoned, failed, elapsedNanos / 1e9, throughputPerSecond(), maxLagNanos / 1e3));
+        out.append(String.format(Locale.ROOT, "%-15s %9s %7s", "operation", "count", "errors"));
+        for (double quantile : QUANTILES) out.append(String.format(Locale.ROOT, " %10s", "p" + quantile * 100 + "(us)"));
+        out.append(System.lineSeparator());
+        for (Operation operation : SESSION_OPERATIONS) {
+            out.append(String.format(Locale.ROOT, "%-15s %9d %7d", operation, count(operation), errors(operation)));
+            for (double quantile : QUANTILES) {
+                out.append(String.format(Locale.ROOT, " %10.1f", latencyNanos(operation, quantile) / 1e3));
+            }
+            out.append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
@@ -0,0 +1,200 @@
+package ru.inno.market.load;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+//Запись нагрузки: сессии покупателей с моментами прихода. Трасса целиком определяется профилем (вместе с seed)
+//и списком товаров, поэтому один и тот же seed всегда даёт одну и ту же нагрузку. Трассу можно сохранить в файл
+//(write) и проиграть позже (read + LoadGenerator.run), в том числе на другой машине.
+//
+//Файл: int MAGIC | int VERSION | long seed | long срок резерва, мс | int число сессий | сессии
+//Сессия: long момент прихода, нс от начала | int id клиента | boolean брошена | UTF промокод ("" - нет)
+//        | int число строк | строки: int id товара, int количество
+public final class Trace {
+    private static final int MAGIC = 0x4D4B5452;
+    private static final int VERSION = 1;
+
+    private final long seed;
+    private final long holdTtlMillis;
+    private final List<Session> sessions;
+
+    public Trace(long seed, long holdTtlMillis, List<Session> sessions) {
+        if (sessions == null) throw new NoSuchElementException("Попытка создать трассу без сессий!");
+        this.seed = seed;
+        this.holdTtlMillis = holdTtlMillis;
+        this.sessions = List.copyOf(sessions);
+    }
+
+    //Трасса по профилю. itemIds - товары каталога; их порядок по популярности перемешивается по seed,
+    //чтобы самыми ходовыми не оказывались всегда товары с наименьшими id.
+    public static Trace generate(LoadProfile profile, int[] itemIds) throws NoSuchElementException {
+        if (profile == null) throw new NoSuchElementException("Попытка построить трассу по профилю NULL!");
+        if (itemIds == null || itemIds.length == 0) throw new NoSuchElementException("Попытка построить трассу без товаров!");
+        SplittableRandom random = new SplittableRandom(profile.getSeed());
+        int[] ranked = itemIds.clone();
+        for (int i = ranked.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = ranked[i];
+            ranked[i] = ranked[j];
+            ranked[j] = swap;
+        }
+        ZipfSampler popularity = new ZipfSampler(ranked.length, profile.getZipfExponent());
+        String[] codes = profile.getPromoCodes();
+        double meanGapNanos = 1e9 / profile.getRatePerSecond();
+        int maxLines = Math.min(profile.getMaxCartSize(), ranked.length);
+        //Геометрическое распределение на 1, 2, ...: вероятность остановиться после каждой строки
+        double stop = 1 / profile.getMeanCartSize();
+
+        List<Session> sessions = new ArrayList<>(profile.getSessions());
+        double arrival = 0;
+        for (int s = 0; s < profile.getSessions(); s++) {
+            arrival += -Math.log(1 - random.nextDouble()) * meanGapNanos;
+            int clientId = random.nextInt(profile.getClients());
+            int lines = 1;
+            while (lines < maxLines && random.nextDouble() >= stop) lines++;
+            int[] items = new int[lines];
+            int[] quantities = new int[lines];
+            for (int line = 0; line < lines; line++) {
+                int itemId;
+                do {
+                    itemId = ranked[popularity.next(random)];
+                } while (contains(items, line, itemId));        //Строки корзины - разные товары
+                items[line] = itemId;
+                quantities[line] = 1 + random.nextInt(profile.getMaxQuantity());
+            }
+            String code = random.nextDouble() < profile.getPromoRate() ? codes[random.nextInt(codes.length)] : null;
+            boolean abandoned = random.nextDouble() < profile.getAbandonRate();
+            sessions.add(new Session((long) arrival, clientId, items, quantities, code, abandoned));
+        }
+        return new Trace(profile.getSeed(), profile.getHoldTtlMillis(), sessions);
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+
+    public void write(Path file) throws UncheckedIOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeLong(holdTtlMillis);
+            out.writeInt(sessions.size());
+            for (Session session : sessions) {
+                out.writeLong(session.arrivalNanos());
+                out.writeInt(session.clientId());
+                out.writeBoolean(session.abandoned());
+                out.writeUTF(session.promoCode() == null ? "" : session.promoCode());
+                out.writeInt(session.lineCount());
+                for (int line = 0; line < session.lineCount(); line++) {
+                    out.writeInt(session.itemIds()[line]);
+                    out.writeInt(session.quantities()[line]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать трассу нагрузки в " + file, e);
+        }
+    }
+
+    public static Trace read(Path file) throws UncheckedIOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Файл не является трассой нагрузки");
+            long seed = in.readLong();
+            long holdTtlMillis = in.readLong();
+            int count = in.readInt();
+            List<Session> sessions = new ArrayList<>(count);
+            for (int s = 0; s < count; s++) {
+                long arrival = in.readLong();
+                int clientId = in.readInt();
+                boolean abandoned = in.readBoolean();
+                String code = in.readUTF();
+                int lines = in.readInt();
+                int[] items = new int[lines];
+                int[] quantities = new int[lines];
+                for (int line = 0; line < lines; line++) {
+                    items[line] = in.readInt();
+                    quantities[line] = in.readInt();
+                }
+                sessions.add(new Session(arrival, clientId, items, quantities, code.isEmpty() ? null : code, abandoned));
+            }
+            return new Trace(seed, holdTtlMillis, sessions);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать трассу нагрузки из " + file, e);
+        }
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getHoldTtlMillis() {
+        return holdTtlMillis;
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    //Длительность трассы: момент прихода последней сессии, нс
+    public long durationNanos() {
+        return sessions.isEmpty() ? 0 : sessions.get(sessions.size() - 1).arrivalNanos();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Trace trace)) return false;
+        return seed == trace.seed && holdTtlMillis == trace.holdTtlMillis && sessions.equals(trace.sessions);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(seed, holdTtlMillis, sessions);
+    }
+
+    //Сессия покупателя: приходит в arrivalNanos от начала трассы, резервирует корзину itemIds/quantities,
+    //предъявляет promoCode (null - без промокода) и либо бросает корзину, либо оформляет и отгружает заказ
+    public record Session(long arrivalNanos, int clientId, int[] itemIds, int[] quantities, String promoCode, boolean abandoned) {
+
+        public int lineCount() {
+            return itemIds.length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Session session)) return false;
+            return arrivalNanos == session.arrivalNanos && clientId == session.clientId && abandoned == session.abandoned
+                    && Objects.equals(promoCode, session.promoCode)
+                    && Arrays.equals(itemIds, session.itemIds) && Arrays.equals(quantities, session.quantities);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(arrivalNanos, clientId, Arrays.hashCode(itemIds));
+        }
+
+        @Override
+        public String toString() {
+            return "Session{" +
+                    "arrivalNanos=" + arrivalNanos +
+                    ", clientId=" + clientId +
+                    ", items=" + Arrays.toString(itemIds) +
+                    ", quantities=" + Arrays.toString(quantities) +
+                    ", promoCode=" + promoCode +
+                    ", abandoned=" + abandoned +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ru.inno.market.load;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+//Выбор ранга 0..n-1 по закону Ципфа: P(k) пропорциональна 1 / (k + 1)^s.
+//Функция распределения считается заранее (n чисел double), выбор - один двоичный поиск по ней.
+//s = 0 - равномерное распределение.
+final class ZipfSampler {
+    private final double[] cdf;
+
+    ZipfSampler(int n, double exponent) {
+        if (n <= 0) throw new NoSuchElementException("Попытка построить распределение Ципфа без элементов!");
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) cdf[k] /= sum;
+        cdf[n - 1] = 1;
+    }
+
+    int next(SplittableRandom random) {
+        int at = Arrays.binarySearch(cdf, random.nextDouble());
+        return at >= 0 ? at : -at - 1;
+    }
+
+    int size() {
+        return cdf.length;
+    }
+}
@@ -0,0 +1,157 @@
+package ru.inno.market.model;
+
+import java.util.*;
+
+//Компактная корзина заказа: параллельные массивы товаров, их id и количеств.
+//Пока строк немного (большинство корзин), поиск - линейный проход по int[] itemIds;
+//для больших корзин строится индекс с открытой адресацией по хешу товара.
+//Снаружи корзина видна только через снимок заказа (OrderSnapshot.getItems), изменяется только через Order.
+final class Cart extends AbstractMap<Item, Integer> {
+    private static final int LINEAR_SCAN_LIMIT = 16;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private Item[] items = new Item[INITIAL_CAPACITY];
+    private int[] itemIds = new int[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private int lines;
+    private int[] slots;    //Номер строки + 1 (0 - пустая ячейка); null, пока корзина маленькая
+
+    void add(Item item, int quantity) {
+        int line = lineOf(item);
+        if (line >= 0) {
+            quantities[line] += quantity;
+            return;
+        }
+        if (lines == items.length) {
+            int capacity = lines * 2;
+            items = Arrays.copyOf(items, capacity);
+            itemIds = Arrays.copyOf(itemIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+        }
+        items[lines] = item;
+        itemIds[lines] = item.getId();
+        quantities[lines] = quantity;
+        lines++;
+        if (slots != null) {
+            if (lines * 2 > slots.length) rebuildSlots();
+            else insertSlot(lines - 1);
+        } else if (lines > LINEAR_SCAN_LIMIT) {
+            rebuildSlots();
+        }
+    }
+
+    //Уменьшает количество товара в строке; строка без товара удаляется, порядок остальных строк сохраняется
+    void subtract(Item item, int quantity) {
+        int line = lineOf(item);
+        quantities[line] -= quantity;
+        if (quantities[line] > 0) return;
+        lines--;
+        System.arraycopy(items, line + 1, items, line, lines - line);
+        System.arraycopy(itemIds, line + 1, itemIds, line, lines - line);
+        System.arraycopy(quantities, line + 1, quantities, line, lines - line);
+        items[lines] = null;
+        if (slots != null) {
+            if (lines > LINEAR_SCAN_LIMIT) rebuildSlots();
+            else slots = null;
+        }
+    }
+
+    int lineCount() {
+        return lines;
+    }
+
+    Item itemAt(int line) {
+        return items[Objects.checkIndex(line, lines)];
+    }
+
+    int itemIdAt(int line) {
+        return itemIds[Objects.checkIndex(line, lines)];
+    }
+
+    int quantityAt(int line) {
+        return quantities[Objects.checkIndex(line, lines)];
+    }
+
+    //Номер строки с товаром item или -1, если его нет в корзине
+    int lineOf(Object o) {
+        if (!(o instanceof Item item)) return -1;
+        if (slots == null) {
+            int id = item.getId();
+            for (int i = 0; i < lines; i++) {
+                if (itemIds[i] == id && items[i].equals(item)) return i;
+            }
+            return -1;
+        }
+        int mask = slots.length - 1;
+        for (int slot = spread(item.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int line = slots[slot] - 1;
+            if (items[line].equals(item)) return line;
+        }
+        return -1;
+    }
+
+    private void rebuildSlots() {
+        slots = new int[Integer.highestOneBit(lines * 4 - 1) << 1];
+        for (int i = 0; i < lines; i++) {
+            insertSlot(i);
+        }
+    }
+
+    private void insertSlot(int line) {
+        int mask = slots.length - 1;
+        int slot = spread(items[line].hashCode()) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = line + 1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public int size() {
+        return lines;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return lineOf(key) >= 0;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        int line = lineOf(key);
+        return line >= 0 ? quantities[line] : null;
+    }
+
+    @Override
+    public Set<Entry<Item, Integer>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Item, Integer>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < lines;
+                    }
+
+                    @Override
+                    public Entry<Item, Integer> next() {
+                        if (next >= lines) throw new NoSuchElementException();
+                        int line = next++;
+                        return new SimpleImmutableEntry<>(items[line], quantities[line]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return lines;
+            }
+        };
+    }
+}
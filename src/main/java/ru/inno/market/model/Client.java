@@ -1,14 +1,19 @@
 package ru.inno.market.model;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
-public class Client {
-    private int id;
-    private String nickname;
+//Неизменяемый клиент с заранее вычисленным хешем
+public final class Client {
+    private final int id;
+    private final String nickname;
+    private final int hash;
+    private volatile byte[] nicknameUtf8;  //Ник в UTF-8 для OrderCodec, кодируется при первой выгрузке
 
     public Client(int id, String nickname) {
         this.id = id;
         this.nickname = nickname;
+        this.hash = 31 * id + Objects.hashCode(nickname);
     }
 
     public int getId() {
@@ -19,16 +24,22 @@ public class Client {
         return nickname;
     }
 
+    byte[] nicknameUtf8() {
+        byte[] bytes = nicknameUtf8;
+        if (bytes == null && nickname != null) nicknameUtf8 = bytes = nickname.getBytes(StandardCharsets.UTF_8);
+        return bytes;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Client client)) return false;
-        return getId() == client.getId() && Objects.equals(getNickname(), client.getNickname());
+        return hash == client.hash && id == client.id && Objects.equals(nickname, client.nickname);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getId(), getNickname());
+        return hash;
     }
 
     @Override
@@ -1,18 +1,32 @@
 package ru.inno.market.model;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
-public class Item {
-    private int id;
-    private String name;
-    private Category category;
-    private double price;
+//Неизменяемый товар. Хеш вычисляется один раз при создании, поэтому обращения к Map<Item, ...> не создают объектов.
+public final class Item {
+    private final int id;
+    private final String name;
+    private final Category category;
+    private final long priceKopecks;
+    private final int hash;
+    private volatile byte[] nameUtf8;      //Название в UTF-8 для OrderCodec, кодируется при первой выгрузке
 
     public Item(int id, String name, Category category, double price) {
+        this(id, name, category, Money.toKopecks(price));
+    }
+
+    private Item(int id, String name, Category category, long priceKopecks) {
         this.id = id;
         this.name = name;
         this.category = category;
-        this.price = price;
+        this.priceKopecks = priceKopecks;
+        this.hash = computeHash();
+    }
+
+    //Создание товара с ценой, заданной точно в копейках
+    public static Item ofKopecks(int id, String name, Category category, long priceKopecks) {
+        return new Item(id, name, category, priceKopecks);
     }
 
     public int getId() {
@@ -28,19 +42,39 @@ public class Item {
     }
 
     public double getPrice() {
-        return price;
+        return Money.toRubles(priceKopecks);
+    }
+
+    public long getPriceKopecks() {
+        return priceKopecks;
+    }
+
+    //Одновременное первое обращение из нескольких потоков закодирует название несколько раз, результат одинаков
+    byte[] nameUtf8() {
+        byte[] bytes = nameUtf8;
+        if (bytes == null && name != null) nameUtf8 = bytes = name.getBytes(StandardCharsets.UTF_8);
+        return bytes;
     }
 
+    //Сначала дешёвые сравнения (хеш, id, цена), строка названия сравнивается последней
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Item item)) return false;
-        return getId() == item.getId() && Double.compare(item.getPrice(), getPrice()) == 0 && Objects.equals(getName(), item.getName()) && getCategory() == item.getCategory();
+        return hash == item.hash && id == item.id && priceKopecks == item.priceKopecks && category == item.category && Objects.equals(name, item.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getId(), getName(), getCategory(), getPrice());
+        return hash;
+    }
+
+    private int computeHash() {
+        int result = id;
+        result = 31 * result + Objects.hashCode(name);
+        result = 31 * result + (category == null ? 0 : category.ordinal() + 1);
+        result = 31 * result + Long.hashCode(priceKopecks);
+        return result;
     }
 
     @Override
@@ -49,7 +83,7 @@ public class Item {
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", category=" + category +
-                ", price=" + price +
+                ", price=" + getPrice() +
                 '}';
     }
 }
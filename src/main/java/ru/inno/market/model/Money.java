@@ -0,0 +1,32 @@
+package ru.inno.market.model;
+
+//Денежная арифметика в копейках (long) и скидки в базисных пунктах (1 б.п. = 0,01%).
+//Все вычисления точные и не создают объектов, в отличие от double и BigDecimal.
+public final class Money {
+    public static final int KOPECKS_IN_RUBLE = 100;
+    public static final int BPS_SCALE = 10_000;     //100% в базисных пунктах
+
+    private Money() {
+    }
+
+    public static long toKopecks(double rubles) {
+        return Math.round(rubles * KOPECKS_IN_RUBLE);
+    }
+
+    public static double toRubles(long kopecks) {
+        return (double) kopecks / KOPECKS_IN_RUBLE;
+    }
+
+    public static int toBps(double discount) {
+        return (int) Math.round(discount * BPS_SCALE);
+    }
+
+    //Размер скидки bps от суммы amount, округлённый до копейки по правилу "половина вверх"
+    public static long discountOf(long amount, int bps) {
+        return Math.floorDiv(Math.multiplyExact(amount, bps) + BPS_SCALE / 2, BPS_SCALE);
+    }
+
+    public static long applyDiscount(long amount, int bps) {
+        return amount - discountOf(amount, bps);
+    }
+}
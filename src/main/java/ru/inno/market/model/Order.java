@@ -1,88 +1,246 @@
 package ru.inno.market.model;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
+//Изменения заказа и чтение его состояния синхронизированы на самом заказе,
+//поэтому один заказ можно безопасно изменять из нескольких потоков.
+//Для частого чтения без блокировок есть snapshot(): неизменяемый снимок, который кэшируется до следующего изменения.
+//Корзину и скидку можно менять, пока заказ открыт (OrderStatus.OPEN).
 public class Order {
     private int id;
-    private Map<Item, Integer> cart;
+    private Cart cart;
     private Client client;
 
-    private double totalPrice;
+    private long totalKopecks;     //Итоговая стоимость в копейках, пересчитывается при каждом изменении
     private boolean discountApplied;
+    private OrderStatus status = OrderStatus.OPEN;
+    private long version;                      //Номер изменения заказа
+    private volatile OrderSnapshot snapshot;   //Снимок текущей версии; null - нужно построить заново
 
     public Order(int id, Client client) {
         if (client == null) throw new NoSuchElementException("Попытка создать заказ для клиента NULL!");  //Добавлена защита от передачи клиента NULL
         if (id < 0) throw new NoSuchElementException("Попытка создать заказ c id меньше 0!");  //Добавлена защита от передачи клиента NULL
         this.id = id;
         this.client = client;
-        cart = new HashMap<>();
-        totalPrice = 0;
+        cart = new Cart();
+        totalKopecks = 0;
         discountApplied = false;
     }
 
+    //Восстановление сохранённого заказа (журнал, архив): корзина и итоговые суммы берутся как есть, без пересчёта
+    public static Order restore(int id, Client client, Item[] items, int[] quantities, long totalKopecks, boolean discountApplied) {
+        return restore(id, client, items, quantities, totalKopecks, discountApplied, OrderStatus.OPEN);
+    }
+
+    public static Order restore(int id, Client client, Item[] items, int[] quantities, long totalKopecks, boolean discountApplied,
+                                OrderStatus status) {
+        if (status == null) throw new NoSuchElementException("Попытка восстановить заказ с состоянием NULL!");
+        Order order = new Order(id, client);
+        order.status = status;
+        for (int i = 0; i < items.length; i++) {
+            order.cart.add(items[i], quantities[i]);
+        }
+        order.totalKopecks = totalKopecks;
+        order.discountApplied = discountApplied;
+        return order;
+    }
+
+    //Корзина заказа (товар -> количество) только для чтения: корзина текущего снимка (snapshot), поэтому
+    //её можно обходить без блокировки заказа, а последующие изменения заказа в ней не видны
     public Map<Item, Integer> getItems() {
-        return cart;
+        return snapshot().getItems();
     }
 
     public int getId() {
         return id;
     }
 
-    public void addItem(Item item) {
+    public synchronized void addItem(Item item) {
+        addItem(item, 1);
+    }
+
+    //Добавление сразу quantity единиц одного товара
+    public synchronized void addItem(Item item, int quantity) {
         if (item == null)
             throw new NoSuchElementException("Попытка добавить в заказ товар NULL!");  //Добавлена защита от передачи товара NULL
-        int counter = cart.getOrDefault(item, 0);
-        cart.put(item, ++counter);
-        totalPrice += item.getPrice();
+        if (quantity <= 0)
+            throw new NoSuchElementException("Попытка добавить в заказ некорректное количество товара!");
+        checkOpen();
+        cart.add(item, quantity);
+        totalKopecks += item.getPriceKopecks() * quantity;
+        changed();
+    }
+
+    //Убирает quantity единиц товара из корзины. Скидка считалась для прежней корзины, поэтому снимается:
+    //итоговая стоимость пересчитывается по оставшимся строкам.
+    public synchronized void removeItem(Item item, int quantity) {
+        if (item == null)
+            throw new NoSuchElementException("Попытка убрать из заказа товар NULL!");
+        if (quantity <= 0)
+            throw new NoSuchElementException("Попытка убрать из заказа некорректное количество товара!");
+        checkOpen();
+        Integer inCart = cart.get(item);
+        if (inCart == null || inCart < quantity)
+            throw new NoSuchElementException("В заказе нет столько товара " + item.getId() + "!");
+        cart.subtract(item, quantity);
+        if (discountApplied) {
+            discountApplied = false;
+            totalKopecks = 0;
+            for (int line = 0; line < cart.lineCount(); line++) totalKopecks += cart.itemAt(line).getPriceKopecks() * cart.quantityAt(line);
+        } else {
+            totalKopecks -= item.getPriceKopecks() * quantity;
+        }
+        changed();
     }
 
-    public void applyDiscount(double discount) {
+    public synchronized void applyDiscount(double discount) {
         if (discount < 0 || discount > 1.0) throw new NoSuchElementException("Попытка применить некорректную скидку!");  //Добавлена защита от неправильной скидки
+        applyDiscountBps(Money.toBps(discount));
+    }
+
+    //Применение скидки, заданной в базисных пунктах (2000 = 20%)
+    public synchronized void applyDiscountBps(int discountBps) {
+        if (discountBps < 0 || discountBps > Money.BPS_SCALE) throw new NoSuchElementException("Попытка применить некорректную скидку!");  //Добавлена защита от неправильной скидки
+        checkOpen();
         if (!discountApplied) {
-            totalPrice *= (1- discount);
+            totalKopecks = Money.applyDiscount(totalKopecks, discountBps);
             discountApplied = true;
+            changed();
+        }
+    }
+
+    //Перевод заказа в состояние next; допустимые переходы - OrderStatus.canMoveTo
+    public synchronized void moveTo(OrderStatus next) {
+        if (next == null || !status.canMoveTo(next))
+            throw new NoSuchElementException("Недопустимый переход заказа из " + status + " в " + next + "!");
+        status = next;
+        changed();
+    }
+
+    public synchronized OrderStatus getStatus() {
+        return status;
+    }
+
+    private void checkOpen() {
+        if (status != OrderStatus.OPEN) throw new NoSuchElementException("Заказ в состоянии " + status + " нельзя изменить!");
+    }
+
+    //Вызывается под блокировкой заказа после каждого изменения
+    private void changed() {
+        version++;
+        snapshot = null;
+    }
+
+    //Снимок текущего состояния заказа. Пока заказ не меняется, возвращается один и тот же объект
+    //без блокировки; после изменения снимок строится заново при первом чтении (copy-on-write).
+    public OrderSnapshot snapshot() {
+        OrderSnapshot current = snapshot;
+        if (current != null) return current;
+        synchronized (this) {
+            current = snapshot;
+            if (current == null) {
+                int lines = cart.lineCount();
+                Item[] items = new Item[lines];
+                int[] quantities = new int[lines];
+                for (int line = 0; line < lines; line++) {
+                    items[line] = cart.itemAt(line);
+                    quantities[line] = cart.quantityAt(line);
+                }
+                current = new OrderSnapshot(id, client, version, items, quantities, totalKopecks, discountApplied, status);
+                snapshot = current;
+            }
+            return current;
         }
     }
 
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    //Применение скидки, заданной суммой в копейках (расчёт PromotionEngine). Возвращает итоговую стоимость.
+    public synchronized long applyDiscountKopecks(long discountKopecks) {
+        checkOpen();
+        if (discountApplied) throw new NoSuchElementException("К заказу уже применена скидка!");
+        if (discountKopecks < 0 || discountKopecks > totalKopecks)
+            throw new NoSuchElementException("Попытка применить некорректную скидку!");
+        totalKopecks -= discountKopecks;
+        discountApplied = true;
+        changed();
+        return totalKopecks;
+    }
+
+    //Применение скидки и чтение итоговой стоимости одним атомарным действием
+    public synchronized double applyDiscountAndGetTotal(int discountBps) {
+        applyDiscountBps(discountBps);
+        return getTotalPrice();
+    }
+
     public Client getClient() {
         return client;
     }
 
     public Map<Item, Integer> getCart() {
-        return cart;
+        return getItems();
+    }
+
+    //Построчный доступ к корзине без создания объектов Map.Entry.
+    //Для согласованного обхода всей корзины вызывать под блокировкой заказа: synchronized (order) {...}
+    public synchronized int getLineCount() {
+        return cart.lineCount();
+    }
+
+    public synchronized Item getLineItem(int line) {
+        return cart.itemAt(line);
+    }
+
+    public synchronized int getLineItemId(int line) {
+        return cart.itemIdAt(line);
+    }
+
+    public synchronized int getLineQuantity(int line) {
+        return cart.quantityAt(line);
+    }
+
+    public synchronized double getTotalPrice() {
+        return Money.toRubles(totalKopecks);
     }
 
-    public double getTotalPrice() {
-        return totalPrice;
+    public synchronized long getTotalKopecks() {
+        return totalKopecks;
     }
 
-    public boolean isDiscountApplied() {
+    public synchronized boolean isDiscountApplied() {
         return discountApplied;
     }
 
+    //Сравниваются согласованные снимки обоих заказов: поля одного заказа читаются под одной его блокировкой,
+    //а две блокировки сразу не берутся
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Order order)) return false;
-        return getId() == order.getId() && Double.compare(order.getTotalPrice(), getTotalPrice()) == 0 && isDiscountApplied() == order.isDiscountApplied() && Objects.equals(getCart(), order.getCart()) && Objects.equals(getClient(), order.getClient());
+        OrderSnapshot mine = snapshot();
+        OrderSnapshot theirs = order.snapshot();
+        return mine.getId() == theirs.getId() && mine.getTotalKopecks() == theirs.getTotalKopecks() && mine.isDiscountApplied() == theirs.isDiscountApplied() && mine.getStatus() == theirs.getStatus() && Objects.equals(mine.getItems(), theirs.getItems()) && Objects.equals(mine.getClient(), theirs.getClient());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getId(), getCart(), getClient(), getTotalPrice(), isDiscountApplied());
+        OrderSnapshot current = snapshot();
+        return Objects.hash(current.getId(), current.getItems(), current.getClient(), current.getTotalKopecks(), current.isDiscountApplied());
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return "Order{" +
                 "id=" + id +
                 ", cart=" + cart +
                 ", client=" + client +
-                ", totalPrice=" + totalPrice +
+                ", totalPrice=" + getTotalPrice() +
                 ", discountApplied=" + discountApplied +
+                ", status=" + status +
                 '}';
     }
 }
@@ -0,0 +1,184 @@
+package ru.inno.market.model;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//Компактный двоичный формат заказов, товаров и клиентов для выгрузки во внешние системы.
+//Запись идёт прямо в ByteBuffer (в куче или прямой) с его текущей позиции, без промежуточных объектов:
+//названия товаров и ники кодируются в UTF-8 один раз и хранятся в Item и Client. Порядок байт - порядок буфера, читать нужно буфером с тем же порядком.
+//Если места в буфере не хватает, выбрасывается BufferOverflowException и буфер не меняется.
+//
+//Заказ:  int размер записи | int id | long сумма, коп. | int id клиента | int число строк | byte флаги и состояние
+//        | u16 длина ника | строки корзины по LINE_SIZE байт | ник и названия товаров в UTF-8
+//Строка: int id товара | int количество | long цена, коп. | int смещение названия от начала записи
+//        | u16 длина названия | byte категория | byte выравнивание
+//Товар:  int id | long цена, коп. | byte категория | u16 длина названия | название
+//Клиент: int id | u16 длина ника | ник
+//Флаги: бит 0 - скидка применена, биты 1-2 - OrderStatus. Длина строки NULL_STRING означает null, категория -1 - null.
+//
+//Записи заказов читаются без создания объектов через OrderView.
+public final class OrderCodec {
+    static final int ORDER_SIZE = 0;
+    static final int ORDER_ID = 4;
+    static final int ORDER_TOTAL = 8;
+    static final int ORDER_CLIENT_ID = 16;
+    static final int ORDER_LINES = 20;
+    static final int ORDER_FLAGS = 24;
+    static final int ORDER_NICKNAME_LENGTH = 25;
+    static final int ORDER_HEADER_SIZE = 27;
+
+    static final int LINE_ITEM_ID = 0;
+    static final int LINE_QUANTITY = 4;
+    static final int LINE_PRICE = 8;
+    static final int LINE_NAME_OFFSET = 16;
+    static final int LINE_NAME_LENGTH = 20;
+    static final int LINE_CATEGORY = 22;
+    static final int LINE_SIZE = 24;
+
+    static final int FLAG_DISCOUNT_APPLIED = 1;
+    static final int STATUS_SHIFT = 1;
+    static final int STATUS_MASK = 3;
+    static final int NULL_STRING = 0xFFFF;
+    private static final int MAX_STRING_LENGTH = NULL_STRING - 1;
+    private static final Category[] CATEGORIES = Category.values();
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private OrderCodec() {
+    }
+
+    //Записывает заказ с корзиной. Состояние заказа читается под его блокировкой. Возвращает размер записи.
+    public static int writeOrder(Order order, ByteBuffer out) {
+        return writeOrder(order, null, out);
+    }
+
+    //То же, но с состоянием status (null - текущее состояние заказа): архив пишет заказ до его перехода в status
+    public static int writeOrder(Order order, OrderStatus status, ByteBuffer out) {
+        synchronized (order) {
+            if (status == null) status = order.getStatus();
+            int lines = order.getLineCount();
+            Client client = order.getClient();
+            byte[] nickname = client.nicknameUtf8();
+            int size = ORDER_HEADER_SIZE + lines * LINE_SIZE + stringSize(nickname);
+            for (int line = 0; line < lines; line++) {
+                size += stringSize(order.getLineItem(line).nameUtf8());
+            }
+            int start = out.position();
+            if (out.remaining() < size) throw new BufferOverflowException();
+
+            out.putInt(start + ORDER_SIZE, size);
+            out.putInt(start + ORDER_ID, order.getId());
+            out.putLong(start + ORDER_TOTAL, order.getTotalKopecks());
+            out.putInt(start + ORDER_CLIENT_ID, client.getId());
+            out.putInt(start + ORDER_LINES, lines);
+            out.put(start + ORDER_FLAGS, (byte) ((order.isDiscountApplied() ? FLAG_DISCOUNT_APPLIED : 0)
+                    | status.ordinal() << STATUS_SHIFT));
+            out.putShort(start + ORDER_NICKNAME_LENGTH, lengthField(nickname));
+            int strings = putString(out, start + ORDER_HEADER_SIZE + lines * LINE_SIZE, nickname);
+            for (int line = 0; line < lines; line++) {
+                Item item = order.getLineItem(line);
+                byte[] name = item.nameUtf8();
+                int at = start + ORDER_HEADER_SIZE + line * LINE_SIZE;
+                out.putInt(at + LINE_ITEM_ID, item.getId());
+                out.putInt(at + LINE_QUANTITY, order.getLineQuantity(line));
+                out.putLong(at + LINE_PRICE, item.getPriceKopecks());
+                out.putInt(at + LINE_NAME_OFFSET, strings - start);
+                out.putShort(at + LINE_NAME_LENGTH, lengthField(name));
+                out.put(at + LINE_CATEGORY, categoryCode(item.getCategory()));
+                out.put(at + LINE_CATEGORY + 1, (byte) 0);
+                strings = putString(out, strings, name);
+            }
+            out.position(start + size);
+            return size;
+        }
+    }
+
+    //Читает заказ с текущей позиции буфера и сдвигает позицию за запись
+    public static Order readOrder(ByteBuffer in) {
+        OrderView view = new OrderView().wrap(in, in.position());
+        Order order = view.toOrder();
+        in.position(in.position() + view.size());
+        return order;
+    }
+
+    public static int writeItem(Item item, ByteBuffer out) {
+        byte[] name = item.nameUtf8();
+        int size = 4 + 8 + 1 + 2 + stringSize(name);
+        int start = out.position();
+        if (out.remaining() < size) throw new BufferOverflowException();
+        out.putInt(start, item.getId());
+        out.putLong(start + 4, item.getPriceKopecks());
+        out.put(start + 12, categoryCode(item.getCategory()));
+        out.putShort(start + 13, lengthField(name));
+        putString(out, start + 15, name);
+        out.position(start + size);
+        return size;
+    }
+
+    public static Item readItem(ByteBuffer in) {
+        int start = in.position();
+        int nameLength = in.getShort(start + 13) & 0xFFFF;
+        Item item = Item.ofKopecks(in.getInt(start), getUtf8(in, start + 15, nameLength),
+                category(in.get(start + 12)), in.getLong(start + 4));
+        in.position(start + 15 + (nameLength == NULL_STRING ? 0 : nameLength));
+        return item;
+    }
+
+    public static int writeClient(Client client, ByteBuffer out) {
+        byte[] nickname = client.nicknameUtf8();
+        int size = 4 + 2 + stringSize(nickname);
+        int start = out.position();
+        if (out.remaining() < size) throw new BufferOverflowException();
+        out.putInt(start, client.getId());
+        out.putShort(start + 4, lengthField(nickname));
+        putString(out, start + 6, nickname);
+        out.position(start + size);
+        return size;
+    }
+
+    public static Client readClient(ByteBuffer in) {
+        int start = in.position();
+        int nicknameLength = in.getShort(start + 4) & 0xFFFF;
+        Client client = new Client(in.getInt(start), getUtf8(in, start + 6, nicknameLength));
+        in.position(start + 6 + (nicknameLength == NULL_STRING ? 0 : nicknameLength));
+        return client;
+    }
+
+    static OrderStatus status(byte flags) {
+        return STATUSES[(flags >> STATUS_SHIFT) & STATUS_MASK];
+    }
+
+    static Category category(byte code) {
+        return code < 0 ? null : CATEGORIES[code];
+    }
+
+    private static byte categoryCode(Category category) {
+        return category == null ? -1 : (byte) category.ordinal();
+    }
+
+    //Строки больше MAX_STRING_LENGTH байт не помещаются в поле длины; проверяется до начала записи
+    private static int stringSize(byte[] utf8) {
+        if (utf8 == null) return 0;
+        if (utf8.length > MAX_STRING_LENGTH)
+            throw new IllegalArgumentException("Строка длиннее " + MAX_STRING_LENGTH + " байт в UTF-8");
+        return utf8.length;
+    }
+
+    private static short lengthField(byte[] utf8) {
+        return (short) (utf8 == null ? NULL_STRING : utf8.length);
+    }
+
+    private static int putString(ByteBuffer out, int at, byte[] utf8) {
+        if (utf8 == null) return at;
+        out.put(at, utf8);
+        return at + utf8.length;
+    }
+
+    static String getUtf8(ByteBuffer in, int at, int length) {
+        if (length == NULL_STRING) return null;
+        if (in.hasArray()) return new String(in.array(), in.arrayOffset() + at, length, StandardCharsets.UTF_8);
+        byte[] bytes = new byte[length];
+        in.get(at, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,184 @@
+package ru.inno.market.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+//Неизменяемый снимок заказа на момент версии version: корзина, итоговая сумма и признак скидки согласованы между собой.
+//Снимок строит Order.snapshot() и кэширует до следующего изменения заказа, поэтому читатели страницы статуса
+//получают один и тот же объект без блокировки и без выделения памяти. Версия растёт с каждым изменением заказа.
+public final class OrderSnapshot {
+    private final int id;
+    private final Client client;
+    private final long version;
+    private final Item[] items;
+    private final int[] quantities;
+    private final long totalKopecks;
+    private final boolean discountApplied;
+    private final OrderStatus status;
+    private Map<Item, Integer> cart;    //Корзина в виде Map; строится при первом запросе (гонка безвредна)
+
+    OrderSnapshot(int id, Client client, long version, Item[] items, int[] quantities, long totalKopecks, boolean discountApplied,
+                  OrderStatus status) {
+        this.id = id;
+        this.client = client;
+        this.version = version;
+        this.items = items;
+        this.quantities = quantities;
+        this.totalKopecks = totalKopecks;
+        this.discountApplied = discountApplied;
+        this.status = status;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getLineCount() {
+        return items.length;
+    }
+
+    public Item getLineItem(int line) {
+        return items[line];
+    }
+
+    public int getLineItemId(int line) {
+        return items[line].getId();
+    }
+
+    public int getLineQuantity(int line) {
+        return quantities[line];
+    }
+
+    //Количество товара item в корзине, 0 - если его нет
+    public int getQuantity(Item item) {
+        for (int line = 0; line < items.length; line++) {
+            if (items[line].equals(item)) return quantities[line];
+        }
+        return 0;
+    }
+
+    //Корзина снимка (товар -> количество) только для чтения, в порядке строк
+    public Map<Item, Integer> getItems() {
+        Map<Item, Integer> view = cart;
+        if (view == null) {
+            view = new Lines(items, quantities);
+            cart = view;
+        }
+        return view;
+    }
+
+    public long getTotalKopecks() {
+        return totalKopecks;
+    }
+
+    public double getTotalPrice() {
+        return Money.toRubles(totalKopecks);
+    }
+
+    public boolean isDiscountApplied() {
+        return discountApplied;
+    }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OrderSnapshot that)) return false;
+        return id == that.id && version == that.version && totalKopecks == that.totalKopecks && discountApplied == that.discountApplied && status == that.status
+                && Objects.equals(client, that.client) && Arrays.equals(items, that.items) && Arrays.equals(quantities, that.quantities);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, version, totalKopecks);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderSnapshot{" +
+                "id=" + id +
+                ", version=" + version +
+                ", lines=" + items.length +
+                ", client=" + client +
+                ", totalPrice=" + getTotalPrice() +
+                ", discountApplied=" + discountApplied +
+                ", status=" + status +
+                '}';
+    }
+
+    //Строки снимка как Map: поиск - линейный проход, изменения запрещены
+    private static final class Lines extends AbstractMap<Item, Integer> {
+        private final Item[] items;
+        private final int[] quantities;
+
+        Lines(Item[] items, int[] quantities) {
+            this.items = items;
+            this.quantities = quantities;
+        }
+
+        @Override
+        public int size() {
+            return items.length;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            for (int line = 0; line < items.length; line++) {
+                if (items[line].equals(key)) return quantities[line];
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<Item, Integer>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return items.length;
+                }
+
+                @Override
+                public Iterator<Entry<Item, Integer>> iterator() {
+                    return new Iterator<>() {
+                        private int line;
+
+                        @Override
+                        public boolean hasNext() {
+                            return line < items.length;
+                        }
+
+                        @Override
+                        public Entry<Item, Integer> next() {
+                            if (line >= items.length) throw new NoSuchElementException();
+                            Entry<Item, Integer> entry = new SimpleImmutableEntry<>(items[line], quantities[line]);
+                            line++;
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.inno.market.model;
+
+//Состояние заказа. Меняется только вперёд: OPEN -> PAID -> SHIPPED, отменить можно открытый или оплаченный заказ.
+//SHIPPED и CANCELLED - завершённые заказы, они уходят из памяти сервиса в архив (OrderArchive).
+public enum OrderStatus {
+    OPEN,
+    PAID,
+    SHIPPED,
+    CANCELLED;
+
+    public boolean canMoveTo(OrderStatus next) {
+        return switch (this) {
+            case OPEN -> next == PAID || next == CANCELLED;
+            case PAID -> next == SHIPPED || next == CANCELLED;
+            case SHIPPED, CANCELLED -> false;
+        };
+    }
+
+    public boolean isCompleted() {
+        return this == SHIPPED || this == CANCELLED;
+    }
+}
@@ -0,0 +1,97 @@
+package ru.inno.market.model;
+
+import java.nio.ByteBuffer;
+
+import static ru.inno.market.model.OrderCodec.*;
+
+//Легковесное чтение заказа, записанного OrderCodec.writeOrder, прямо из буфера.
+//Один объект переиспользуется для любого числа записей: wrap() перенацеливает его на следующую,
+//поля читаются по смещениям при каждом обращении, объекты создаются только при чтении строк (nickname, lineName).
+//
+//  OrderView view = new OrderView();
+//  for (int at = 0; at < buffer.limit(); at += view.size()) {
+//      view.wrap(buffer, at);
+//      ...
+//  }
+public final class OrderView {
+    private ByteBuffer buffer;
+    private int offset;
+
+    public OrderView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    //Размер записи в байтах: следующая запись начинается с offset + size()
+    public int size() {
+        return buffer.getInt(offset + ORDER_SIZE);
+    }
+
+    public int id() {
+        return buffer.getInt(offset + ORDER_ID);
+    }
+
+    public long totalKopecks() {
+        return buffer.getLong(offset + ORDER_TOTAL);
+    }
+
+    public boolean discountApplied() {
+        return (buffer.get(offset + ORDER_FLAGS) & FLAG_DISCOUNT_APPLIED) != 0;
+    }
+
+    public OrderStatus status() {
+        return OrderCodec.status(buffer.get(offset + ORDER_FLAGS));
+    }
+
+    public int clientId() {
+        return buffer.getInt(offset + ORDER_CLIENT_ID);
+    }
+
+    public String clientNickname() {
+        int length = buffer.getShort(offset + ORDER_NICKNAME_LENGTH) & 0xFFFF;
+        return getUtf8(buffer, offset + ORDER_HEADER_SIZE + lineCount() * LINE_SIZE, length);
+    }
+
+    public int lineCount() {
+        return buffer.getInt(offset + ORDER_LINES);
+    }
+
+    public int lineItemId(int line) {
+        return buffer.getInt(lineOffset(line) + LINE_ITEM_ID);
+    }
+
+    public int lineQuantity(int line) {
+        return buffer.getInt(lineOffset(line) + LINE_QUANTITY);
+    }
+
+    public long linePriceKopecks(int line) {
+        return buffer.getLong(lineOffset(line) + LINE_PRICE);
+    }
+
+    public Category lineCategory(int line) {
+        return category(buffer.get(lineOffset(line) + LINE_CATEGORY));
+    }
+
+    public String lineName(int line) {
+        int at = lineOffset(line);
+        return getUtf8(buffer, offset + buffer.getInt(at + LINE_NAME_OFFSET), buffer.getShort(at + LINE_NAME_LENGTH) & 0xFFFF);
+    }
+
+    //Собирает заказ из записи; суммы берутся как записаны, без пересчёта
+    public Order toOrder() {
+        int lines = lineCount();
+        Item[] items = new Item[lines];
+        int[] quantities = new int[lines];
+        for (int line = 0; line < lines; line++) {
+            items[line] = Item.ofKopecks(lineItemId(line), lineName(line), lineCategory(line), linePriceKopecks(line));
+            quantities[line] = lineQuantity(line);
+        }
+        return Order.restore(id(), new Client(clientId(), clientNickname()), items, quantities, totalKopecks(), discountApplied(), status());
+    }
+
+    private int lineOffset(int line) {
+        if (line < 0 || line >= lineCount()) throw new IndexOutOfBoundsException("Строка " + line + " вне корзины заказа");
+        return offset + ORDER_HEADER_SIZE + line * LINE_SIZE;
+    }
+}
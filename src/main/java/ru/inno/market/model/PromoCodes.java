@@ -1,19 +1,23 @@
 package ru.inno.market.model;
 
 public enum PromoCodes {
-    HAPPY_NEW_YEAR(0.1),
-    FIRST_ORDER(0.2),
-    VDUD(0.11),
-    HAPPY_HOUR(0.05),
-    LOVE_DAY(0.14);
+    HAPPY_NEW_YEAR(1000),
+    FIRST_ORDER(2000),
+    VDUD(1100),
+    HAPPY_HOUR(500),
+    LOVE_DAY(1400);
 
-    private double discount;
+    private final int discountBps;     //Скидка в базисных пунктах: 2000 = 20%
 
-    PromoCodes(double discount) {
-        this.discount = discount;
+    PromoCodes(int discountBps) {
+        this.discountBps = discountBps;
     }
 
     public double getDiscount() {
-        return discount;
+        return (double) discountBps / Money.BPS_SCALE;
+    }
+
+    public int getDiscountBps() {
+        return discountBps;
     }
 }
@@ -0,0 +1,165 @@
+package ru.inno.market.model;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+//Правило скидки для PromotionEngine. Неизменяемое: методы with*/in*/for* возвращают изменённую копию.
+//
+//Область действия: все товары, товары одной категории (inCategory) или один товар (forItem).
+//Скидка задаётся ступенями по количеству товара в строке корзины: действует ступень с наибольшим порогом,
+//не превышающим количество (withTier). Правило с промокодом (withCode) действует, только если код предъявлен,
+//без кода - применяется автоматически. firstOrderOnly - только для первого заказа клиента.
+//
+//Из нескольких подходящих к строке правил решает приоритет (при равном - старше добавленное раньше): если старшее
+//правило не накопительное - действует только оно, иначе складываются скидки всех накопительных (stackable) правил
+//строки, но не больше 100%.
+public final class Promotion {
+    public static final int ANY_ITEM = -1;
+
+    private final String name;
+    private final String code;              //null - правило действует без промокода
+    private final Category category;        //null - любая категория
+    private final int itemId;               //ANY_ITEM - любой товар
+    private final int[] tierQuantities;     //Пороги количества по возрастанию
+    private final int[] tierBps;            //Скидка ступени в базисных пунктах
+    private final int priority;
+    private final boolean stackable;
+    private final boolean firstOrderOnly;
+
+    private Promotion(String name, String code, Category category, int itemId, int[] tierQuantities, int[] tierBps,
+                      int priority, boolean stackable, boolean firstOrderOnly) {
+        this.name = name;
+        this.code = code;
+        this.category = category;
+        this.itemId = itemId;
+        this.tierQuantities = tierQuantities;
+        this.tierBps = tierBps;
+        this.priority = priority;
+        this.stackable = stackable;
+        this.firstOrderOnly = firstOrderOnly;
+    }
+
+    //Скидка discountBps на любое количество любых товаров, без промокода
+    public static Promotion percent(String name, int discountBps) {
+        if (name == null) throw new NoSuchElementException("Попытка создать правило скидки без имени!");
+        checkBps(discountBps);
+        return new Promotion(name, null, null, ANY_ITEM, new int[]{1}, new int[]{discountBps}, 0, false, false);
+    }
+
+    //Правило для промокода из PromoCodes: скидка на весь заказ, FIRST_ORDER - только для первого заказа клиента
+    public static Promotion of(PromoCodes code) {
+        if (code == null) throw new NoSuchElementException("Попытка создать правило для промокода NULL!");
+        Promotion promotion = percent(code.name(), code.getDiscountBps()).withCode(code.name());
+        return code == PromoCodes.FIRST_ORDER ? promotion.firstOrderOnly() : promotion;
+    }
+
+    public Promotion withCode(String code) {
+        return new Promotion(name, code, category, itemId, tierQuantities, tierBps, priority, stackable, firstOrderOnly);
+    }
+
+    public Promotion inCategory(Category category) {
+        return new Promotion(name, code, category, itemId, tierQuantities, tierBps, priority, stackable, firstOrderOnly);
+    }
+
+    public Promotion forItem(int itemId) {
+        if (itemId < 0) throw new NoSuchElementException("Попытка создать правило для товара c id меньше 0!");
+        return new Promotion(name, code, category, itemId, tierQuantities, tierBps, priority, stackable, firstOrderOnly);
+    }
+
+    //Ступень: от minQuantity единиц товара в строке скидка discountBps. Ступень с тем же порогом заменяется.
+    public Promotion withTier(int minQuantity, int discountBps) {
+        if (minQuantity <= 0) throw new NoSuchElementException("Попытка задать некорректный порог количества!");
+        checkBps(discountBps);
+        int at = Arrays.binarySearch(tierQuantities, minQuantity);
+        int[] quantities;
+        int[] bps;
+        if (at >= 0) {
+            quantities = tierQuantities;
+            bps = tierBps.clone();
+        } else {
+            at = -at - 1;
+            quantities = new int[tierQuantities.length + 1];
+            bps = new int[quantities.length];
+            System.arraycopy(tierQuantities, 0, quantities, 0, at);
+            System.arraycopy(tierBps, 0, bps, 0, at);
+            System.arraycopy(tierQuantities, at, quantities, at + 1, tierQuantities.length - at);
+            System.arraycopy(tierBps, at, bps, at + 1, tierBps.length - at);
+            quantities[at] = minQuantity;
+        }
+        bps[at] = discountBps;
+        return new Promotion(name, code, category, itemId, quantities, bps, priority, stackable, firstOrderOnly);
+    }
+
+    public Promotion withPriority(int priority) {
+        return new Promotion(name, code, category, itemId, tierQuantities, tierBps, priority, stackable, firstOrderOnly);
+    }
+
+    public Promotion stackable() {
+        return new Promotion(name, code, category, itemId, tierQuantities, tierBps, priority, true, firstOrderOnly);
+    }
+
+    public Promotion firstOrderOnly() {
+        return new Promotion(name, code, category, itemId, tierQuantities, tierBps, priority, stackable, true);
+    }
+
+    //Скидка для строки с quantity единиц товара, б.п.; 0 - количество ниже первой ступени
+    public int discountBps(int quantity) {
+        int bps = 0;
+        for (int i = 0; i < tierQuantities.length && tierQuantities[i] <= quantity; i++) {
+            bps = tierBps[i];
+        }
+        return bps;
+    }
+
+    //Пороги ступеней по возрастанию
+    public int[] getTierQuantities() {
+        return tierQuantities.clone();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public Category getCategory() {
+        return category;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public boolean isStackable() {
+        return stackable;
+    }
+
+    public boolean isFirstOrderOnly() {
+        return firstOrderOnly;
+    }
+
+    private static void checkBps(int discountBps) {
+        if (discountBps < 0 || discountBps > Money.BPS_SCALE)
+            throw new NoSuchElementException("Попытка задать некорректную скидку!");
+    }
+
+    @Override
+    public String toString() {
+        return "Promotion{" +
+                "name='" + name + '\'' +
+                ", code=" + code +
+                ", category=" + category +
+                ", itemId=" + itemId +
+                ", tiers=" + Arrays.toString(tierQuantities) + "->" + Arrays.toString(tierBps) +
+                ", priority=" + priority +
+                ", stackable=" + stackable +
+                ", firstOrderOnly=" + firstOrderOnly +
+                '}';
+    }
+}
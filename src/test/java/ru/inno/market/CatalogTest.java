@@ -0,0 +1,570 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.CatalogLoader;
+import ru.inno.market.core.CatalogVersion;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты класса Catalog:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class CatalogTest {
+    @TempDir
+    Path directory;
+
+    private Catalog catalog;
+    int hotItemId = 10;     //"Яндекс Плюс на 12 месяцев", 1500 шт.
+
+    @BeforeEach
+    public void setUp() {
+        catalog = new Catalog();
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Резервирование уменьшает остаток, возврат - восстанавливает.")
+    public void shouldReserveAndReleaseItem() {
+        Item item = catalog.getItemById(hotItemId);
+        int count = catalog.getCountForItem(item);
+
+        assertTrue(catalog.tryReserve(hotItemId, 10));
+        assertEquals(count - 10, catalog.getCountForItem(item));
+
+        catalog.release(hotItemId, 10);
+        assertEquals(count, catalog.getCountForItem(item));
+    }
+
+    @Test
+    @Order(2)
+    @Tag("Negative")
+    @DisplayName("Нельзя зарезервировать больше, чем есть на складе.")
+    public void shouldNotReserveMoreThanStock() {
+        Item item = catalog.getItemById(hotItemId);
+        int count = catalog.getCountForItem(item);
+
+        assertFalse(catalog.tryReserve(hotItemId, count + 1));
+        assertEquals(count, catalog.getCountForItem(item));     //Неудачное резервирование не меняет остаток
+    }
+
+    @Test
+    @Order(3)
+    @Tag("Negative")
+    @DisplayName("Нельзя зарезервировать отсутствующий товар.")
+    public void shouldNotReserveWrongItem() {
+        assertThrows(NoSuchElementException.class, () -> catalog.tryReserve(1000, 1));
+        assertThrows(NoSuchElementException.class, () -> catalog.tryReserve(-1, 1));
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Конкурентная покупка одного товара не приводит к продаже сверх остатка.")
+    public void shouldNotOversellUnderConcurrency() throws Exception {
+        int threads = 8;
+        AtomicInteger sold = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 1000; i++) {
+                    try {
+                        catalog.getItemById(hotItemId);
+                        sold.incrementAndGet();
+                    } catch (NoSuchElementException e) {
+                    }    //Товар закончился
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(1500, sold.get());
+        assertFalse(catalog.tryReserve(hotItemId, 1));
+    }
+
+    @Test
+    @Order(5)
+    @DisplayName("Загрузка каталога из файла.")
+    public void shouldLoadCatalogFromFile() throws IOException {
+        Path file = directory.resolve("catalog.csv");
+        Files.writeString(file, "id;name;category;price;count\r\n" +
+                "1;Apple iPhone SE;SMARTPHONES;97990;10\r\n" +
+                "\r\n" +
+                "9;Microsoft 365 Персональный, электронный ключ;SOFTWARE;3790.5;90\r\n" +
+                "12;Лаборатория Касперского Kaspersky Premium;SOFTWARE;2039.99;70", StandardCharsets.UTF_8);
+
+        CatalogLoader.Result result = CatalogLoader.load(file);
+        Catalog loaded = result.catalog();
+
+        assertEquals(3, result.items());
+        assertEquals(new Item(1, "Apple iPhone SE", Category.SMARTPHONES, 97990), loaded.getItemInfo(1));
+        assertEquals(Item.ofKopecks(9, "Microsoft 365 Персональный, электронный ключ", Category.SOFTWARE, 379050),
+                loaded.getItemInfo(9));
+        assertEquals(203999, loaded.getItemInfo(12).getPriceKopecks());
+        assertEquals(70, loaded.getCountForItem(loaded.getItemInfo(12)));
+        assertThrows(NoSuchElementException.class, () -> loaded.getItemInfo(2));
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("Загрузка большого файла, разбираемого по частям.")
+    public void shouldLoadLargeCatalogFile() throws IOException {
+        int items = 200_000;
+        StringBuilder content = new StringBuilder();
+        for (int id = 1; id <= items; id++) {
+            content.append(id).append(";Товар ").append(id).append(';')
+                    .append(Category.values()[id % 3]).append(';').append(id).append(".01;").append(id % 100).append('\n');
+        }
+        Path file = directory.resolve("large.csv");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        Catalog loaded = Catalog.fromFile(file);
+
+        for (int id = 1; id <= items; id += 997) {
+            Item item = loaded.getItemInfo(id);
+            assertEquals("Товар " + id, item.getName());
+            assertEquals(Category.values()[id % 3], item.getCategory());
+            assertEquals(id * 100L + 1, item.getPriceKopecks());
+            assertEquals(id % 100, loaded.getCountForItem(item));
+        }
+    }
+
+    @Test
+    @Order(7)
+    @Tag("Negative")
+    @DisplayName("Некорректная строка в файле каталога.")
+    public void shouldNotLoadMalformedCatalogFile() throws IOException {
+        Path file = directory.resolve("broken.csv");
+        Files.writeString(file, "1;Apple iPhone SE;PHONES;97990;10\n", StandardCharsets.UTF_8);
+
+        assertThrows(IllegalArgumentException.class, () -> CatalogLoader.load(file));
+    }
+
+    private List<Integer> ids(List<Item> items) {
+        return items.stream().map(Item::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    @Order(8)
+    @DisplayName("Поиск товаров категории в диапазоне цен с учётом наличия на складе.")
+    public void shouldFindItemsByCategoryAndPrice() {
+        //Ноутбуки дешевле 90000: MacBook Air (89990, 5 шт.) и HUAWEI MateBook E (89999, 2 шт.)
+        assertEquals(List.of(5, 7), ids(catalog.findItems(Category.LAPTOPS, 0, 9_000_000, true, 0, 10)));
+
+        catalog.getItemById(7);
+        catalog.getItemById(7);     //HUAWEI MateBook E закончился
+
+        assertEquals(List.of(5), ids(catalog.findItems(Category.LAPTOPS, 0, 9_000_000, true, 0, 10)));
+        assertEquals(List.of(5, 7), ids(catalog.findItems(Category.LAPTOPS, 0, 9_000_000, false, 0, 10)));
+    }
+
+    @Test
+    @Order(9)
+    @DisplayName("Постраничный поиск по всему каталогу по возрастанию цены.")
+    public void shouldFindItemsPageByPage() {
+        //Все 12 товаров по возрастанию цены: 10, 12, 11, 9, 8, 2, 4, 3, 5, 7, 1, 6
+        assertEquals(List.of(10, 12, 11, 9), ids(catalog.findItems(null, 0, Long.MAX_VALUE, false, 0, 4)));
+        assertEquals(List.of(5, 7, 1, 6), ids(catalog.findItems(null, 0, Long.MAX_VALUE, false, 2, 4)));
+        assertTrue(catalog.findItems(null, 0, Long.MAX_VALUE, false, 3, 4).isEmpty());
+        assertEquals(List.of(9, 8), ids(catalog.findItems(Category.SOFTWARE, 300_000, 600_000, true, 0, 10)));
+    }
+
+    @Test
+    @Order(10)
+    @DisplayName("Индекс поиска обновляется после добавления товара в каталог.")
+    public void shouldFindNewlyAddedItem() {
+        catalog.findItems(Category.LAPTOPS, 0, Long.MAX_VALUE, false, 0, 10);      //Индекс построен
+        catalog.addItem(new Item(13, "Apple MacBook Pro 14", Category.LAPTOPS, 199990), 3);
+
+        assertEquals(List.of(7, 6, 13), ids(catalog.findItems(Category.LAPTOPS, 8_999_900, Long.MAX_VALUE, true, 0, 10)));
+    }
+
+    @Test
+    @Order(11)
+    @DisplayName("Поиск товаров по словам названия без учёта регистра, последнее слово - префикс.")
+    public void shouldSearchItemsByName() {
+        assertEquals(List.of(1, 5), ids(catalog.searchItems("apple", 10)));
+        assertEquals(List.of(5), ids(catalog.searchItems("APPLE mac", 10)));
+        assertEquals(List.of(5, 7), ids(catalog.searchItems("Ma", 10)));      //MacBook и MateBook
+        assertEquals(List.of(9), ids(catalog.searchItems("ключ", 10)));
+        assertEquals(List.of(12), ids(catalog.searchItems("лаборатория касп", 10)));
+        assertEquals(List.of(11), ids(catalog.searchItems("1с бух", 10)));
+        assertEquals(List.of(3, 4), ids(catalog.searchItems("samsung galaxy", 10)));
+        assertEquals(List.of(3), ids(catalog.searchItems("samsung galaxy", 1)));
+        assertTrue(catalog.searchItems("mac ", 10).isEmpty());     //Слово целиком, а не префикс
+        assertTrue(catalog.searchItems("apple samsung", 10).isEmpty());
+        assertTrue(catalog.searchItems("  ", 10).isEmpty());
+        assertThrows(NoSuchElementException.class, () -> catalog.searchItems(null, 10));
+    }
+
+    @Test
+    @Order(12)
+    @DisplayName("Поисковый индекс пополняется при добавлении и переименовании товаров.")
+    public void shouldSearchNewlyAddedItem() {
+        assertEquals(List.of(10), ids(catalog.searchItems("ЯНДЕКС", 10)));      //Индекс построен
+        catalog.addItem(new Item(13, "Яндекс Станция Миди", Category.SMARTPHONES, 14990), 3);
+        catalog.addItem(new Item(10, "Кинопоиск на 12 месяцев", Category.SOFTWARE, 1990), 1500);
+
+        assertEquals(List.of(13), ids(catalog.searchItems("яндекс", 10)));
+        assertEquals(List.of(10), ids(catalog.searchItems("кино", 10)));
+    }
+
+    @Test
+    @Order(13)
+    @DisplayName("Остаток, разделённый на шарды, продаётся до последней единицы и не больше.")
+    public void shouldSellSplitStockExactly() throws Exception {
+        catalog.splitStock(hotItemId);
+        assertTrue(catalog.isStockSplit(hotItemId));
+        assertFalse(catalog.isStockSplit(1));
+        Item item = catalog.getItemInfo(hotItemId);
+        assertEquals(1500, catalog.getCountForItem(item));
+
+        int threads = 8;
+        AtomicInteger sold = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int qty = 1 + t % 3;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 1000; i++) {
+                    if (catalog.tryReserve(hotItemId, qty)) sold.addAndGet(qty);
+                    if (i % 10 == 0 && catalog.tryReserve(hotItemId, 1)) catalog.release(hotItemId, 1);   //Возвраты в свой шард
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(1500 - sold.get(), catalog.getCountForItem(item));
+        assertTrue(sold.get() >= 1498, "Продано " + sold.get());      //Остаться может меньше 3 единиц
+        int left = catalog.getCountForItem(item);
+        if (left > 0) assertTrue(catalog.tryReserve(hotItemId, left));
+        assertFalse(catalog.tryReserve(hotItemId, 1));
+        assertEquals(0, catalog.getCountForItem(item));
+    }
+
+    @Test
+    @Order(14)
+    @DisplayName("Количество больше любого шарда списывается из суммы шардов, новый остаток хранится целиком.")
+    public void shouldReserveAcrossShards() {
+        catalog.splitStock(1);      //10 шт.
+        Item item = catalog.getItemInfo(1);
+
+        assertTrue(catalog.tryReserve(1, 8));
+        assertFalse(catalog.tryReserve(1, 3));
+        assertEquals(2, catalog.getCountForItem(item));
+        catalog.release(1, 5);
+        assertTrue(catalog.tryReserve(1, 7));
+        assertEquals(0, catalog.getCountForItem(item));
+
+        catalog.addItem(item, 4);
+        assertFalse(catalog.isStockSplit(1));
+        assertEquals(4, catalog.getCountForItem(item));
+    }
+
+    @Test
+    @Order(15)
+    @DisplayName("Обновление цен и ассортимента публикуется новой версией, прежняя версия не меняется.")
+    public void shouldPublishCatalogVersion() {
+        CatalogVersion before = catalog.version();
+        Item oldPhone = catalog.getItemInfo(1);
+        Item tablet = Item.ofKopecks(40, "Apple iPad Air", Category.SMARTPHONES, 6_999_000);
+
+        CatalogVersion after = catalog.update()
+                .price(1, 8_999_000)
+                .put(tablet, 3)
+                .remove(12)
+                .publish();
+
+        assertEquals(before.getNumber() + 1, after.getNumber());
+        assertSame(after, catalog.version());
+        assertSame(oldPhone, before.getItem(1));
+        assertEquals(8_999_000, catalog.getItemInfo(1).getPriceKopecks());
+        assertEquals(oldPhone.getName(), catalog.getItemInfo(1).getName());
+        assertNotEquals(oldPhone, catalog.getItemInfo(1));
+        assertEquals(10, catalog.getCountForItem(catalog.getItemInfo(1)));      //Остаток общий для версий
+        assertEquals(3, catalog.getCountForItem(tablet));
+        assertTrue(catalog.tryReserve(40, 3));
+        assertTrue(before.contains(12));
+        assertThrows(NoSuchElementException.class, () -> catalog.getItemInfo(12));
+        assertEquals(List.of(40), ids(catalog.searchItems("ipad", 10)));
+        assertEquals(List.of(), ids(catalog.searchItems("касперского", 10)));
+        assertEquals(List.of(1), ids(catalog.findItems(Category.SMARTPHONES, 8_000_000, 9_000_000, false, 0, 10)));
+    }
+
+    @Test
+    @Order(16)
+    @Tag("Negative")
+    @DisplayName("Обновление с отсутствующим товаром не публикуется целиком.")
+    public void shouldRejectUpdateOfMissingItem() {
+        CatalogVersion before = catalog.version();
+        Item phone = catalog.getItemInfo(1);
+
+        assertThrows(NoSuchElementException.class, () -> catalog.update().price(1, 1).price(99, 100).publish());
+        assertThrows(NoSuchElementException.class, () -> catalog.update().remove(-1).publish());
+        assertThrows(NoSuchElementException.class, () -> catalog.update().price(1, -1));
+        assertThrows(NoSuchElementException.class, () -> catalog.update().put(null, 1));
+
+        assertSame(before, catalog.version());
+        assertSame(phone, catalog.getItemInfo(1));
+    }
+
+    @Test
+    @Order(17)
+    @DisplayName("Читатель видит цены одной версии целиком, пока каталог переоценивается.")
+    public void shouldReadConsistentVersionsDuringRepricing() throws Exception {
+        int items = 5_000;
+        for (int id = 13; id <= items; id++) catalog.addItem(Item.ofKopecks(id, "Товар " + id, Category.SOFTWARE, 100), 1_000);
+        for (int id = 1; id <= 12; id++) catalog.update().price(id, 100).publish();
+        AtomicInteger torn = new AtomicInteger();
+        AtomicInteger sold = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch done = new CountDownLatch(1);
+        Future<?> reader = pool.submit(() -> {
+            while (done.getCount() > 0) {
+                CatalogVersion version = catalog.version();
+                long price = version.getItem(1).getPriceKopecks();
+                for (int id = 2; id <= items; id++) {
+                    if (version.getItem(id).getPriceKopecks() != price) torn.incrementAndGet();
+                }
+                if (catalog.tryReserve(1 + (int) (price % items), 1)) sold.incrementAndGet();
+            }
+            return null;
+        });
+        for (long price = 101; price <= 150; price++) {
+            var update = catalog.update();
+            for (int id = 1; id <= items; id++) update.price(id, price);
+            update.publish();
+        }
+        done.countDown();
+        reader.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(0, torn.get());
+        assertTrue(sold.get() > 0);
+        assertEquals(150, catalog.getItemInfo(items).getPriceKopecks());
+    }
+
+    @Test
+    @Order(18)
+    @DisplayName("Новый остаток разделённого товара из обновления каталога не ломает идущие списания и возвраты.")
+    public void shouldPutStockOfSplitItemDuringReservations() throws Exception {
+        Item item = catalog.getItemInfo(hotItemId);
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                while (done.getCount() > 0) {
+                    if (catalog.tryReserve(hotItemId, 1)) catalog.release(hotItemId, 1);
+                    assertTrue(catalog.getCountForItem(item) >= 0);
+                }
+                return null;
+            }));
+        }
+        for (int round = 0; round < 20_000; round++) {
+            catalog.update().put(item, 1500).publish();
+            catalog.splitStock(hotItemId);
+        }
+        done.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        catalog.update().put(item, 100).publish();
+        catalog.splitStock(hotItemId);
+        assertEquals(100, catalog.getCountForItem(item));
+        int sold = 0;
+        while (catalog.tryReserve(hotItemId, 1)) sold++;
+        assertEquals(100, sold);
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("Наполнение каталога не меняет уже полученную версию: товар попадает в следующую.")
+    public void shouldNotChangePinnedVersionOnAddItem() {
+        Item phone = catalog.getItemInfo(1);
+        catalog.addItem(Item.ofKopecks(30, "До закрепления", Category.SOFTWARE, 100), 1);
+        CatalogVersion pinned = catalog.version();
+        assertTrue(pinned.contains(30));
+
+        Item cheaper = Item.ofKopecks(1, phone.getName(), phone.getCategory(), 1);
+        catalog.addItem(cheaper, 5);
+        catalog.addItem(Item.ofKopecks(40, "Новый товар", Category.SOFTWARE, 990), 2);
+
+        assertSame(phone, pinned.getItem(1));
+        assertFalse(pinned.contains(40));
+        assertEquals(pinned.getNumber() + 1, catalog.version().getNumber());
+        assertEquals(cheaper, catalog.getItemInfo(1));
+        assertEquals(5, catalog.getCountForItem(cheaper));
+    }
+
+    @Test
+    @Order(20)
+    @DisplayName("Поиск во время пополнения каталога видит целые списки товаров по возрастанию id.")
+    public void shouldSearchWhileAddingItems() throws Exception {
+        assertTrue(catalog.searchItems("распродажа", 10).isEmpty());       //Индекс построен и дальше пополняется
+        int threads = 3;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                while (done.getCount() > 0) {
+                    List<Item> found = catalog.searchItems("распродажа", 5000);
+                    for (int i = 0; i < found.size(); i++) {
+                        assertTrue(found.get(i).getName().startsWith("Распродажа"));
+                        if (i > 0) assertTrue(found.get(i - 1).getId() < found.get(i).getId());
+                    }
+                }
+                return null;
+            }));
+        }
+        //Чередование больших и малых id: списки то дописываются, то перекодируются
+        for (int i = 0; i < 2900; i++) {
+            int id = i % 2 == 0 ? 3000 + i : 3000 - i;
+            catalog.addItem(Item.ofKopecks(id, "Распродажа " + id, Category.SOFTWARE, 100), 1);
+        }
+        done.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(2900, catalog.searchItems("распродажа", 5000).size());
+    }
+
+    @Test
+    @Order(21)
+    @Tag("Negative")
+    @DisplayName("Файл каталога с пустой или слишком большой ценой, лишними полями или разреженными id не загружается.")
+    public void shouldRejectInvalidCatalogValues() throws IOException {
+        String header = "id;name;category;price;count\n1;Apple iPhone SE;SMARTPHONES;97990;10\n\n";
+        List<String> broken = List.of(
+                "2;Xiaomi;SMARTPHONES;.;8",
+                "2;Xiaomi;SMARTPHONES;.50;8",
+                "2;Xiaomi;SMARTPHONES;19490.;8",
+                "2;Xiaomi;SMARTPHONES;92233720368547758;8",
+                "2;Xiaomi;SMARTPHONES;19490;8;лишнее",
+                "2;Xiaomi;SMARTPHONES;19490;8;");
+        for (String line : broken) {
+            Path file = directory.resolve("broken.csv");
+            Files.writeString(file, header + line + "\n", StandardCharsets.UTF_8);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> CatalogLoader.load(file), line);
+            assertTrue(e.getMessage().contains("строка каталога 4,"), e.getMessage());
+        }
+
+        Path sparse = directory.resolve("sparse.csv");
+        Files.writeString(sparse, header + Integer.MAX_VALUE + ";Xiaomi;SMARTPHONES;19490;8\n", StandardCharsets.UTF_8);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> CatalogLoader.load(sparse));
+        assertTrue(e.getMessage().contains("строка 4"), e.getMessage());
+
+        StringBuilder large = new StringBuilder();
+        for (int id = 1; id <= 200_000; id++) {
+            large.append(id).append(";Товар ").append(id).append(";SOFTWARE;").append(id == 150_000 ? "." : "10").append(";1\n");
+        }
+        Path largeFile = directory.resolve("large-broken.csv");
+        Files.writeString(largeFile, large, StandardCharsets.UTF_8);
+        e = assertThrows(IllegalArgumentException.class, () -> CatalogLoader.load(largeFile));
+        assertTrue(e.getMessage().contains("строка каталога 150000,"), e.getMessage());
+
+        Path maxPrice = directory.resolve("max-price.csv");
+        Files.writeString(maxPrice, "1;Дорогой товар;SOFTWARE;92233720368547757.99;1\n", StandardCharsets.UTF_8);
+        assertEquals(Long.MAX_VALUE - 8, CatalogLoader.load(maxPrice).catalog().getItemInfo(1).getPriceKopecks());
+    }
+
+    @Test
+    @Order(22)
+    @DisplayName("Индекс цен после обновления выводится из прежнего, товар без категории есть только в общем списке.")
+    public void shouldUpdatePriceIndexIncrementally() {
+        catalog.findItems(null, 0, Long.MAX_VALUE, false, 0, 20);     //Индекс построен
+        catalog.update()
+                .price(10, 520_000)                                        //Яндекс Плюс - вровень с Windows, id больше
+                .remove(12)
+                .put(Item.ofKopecks(13, "Подарочный сертификат", null, 300_000), 5)
+                .price(6, 100)
+                .publish();
+
+        //Было: 10, 12, 11, 9, 8, 2, 4, 3, 5, 7, 1, 6
+        assertEquals(List.of(6, 11, 13, 9, 8, 10, 2, 4, 3, 5, 7, 1),
+                ids(catalog.findItems(null, 0, Long.MAX_VALUE, false, 0, 20)));
+        assertEquals(List.of(11, 9, 8, 10), ids(catalog.findItems(Category.SOFTWARE, 0, Long.MAX_VALUE, false, 0, 20)));
+        assertEquals(List.of(6, 5, 7), ids(catalog.findItems(Category.LAPTOPS, 0, Long.MAX_VALUE, true, 0, 20)));
+        assertEquals(List.of(8, 10, 2), ids(catalog.findItems(null, 400_000, Long.MAX_VALUE, false, 0, 3)));
+        assertEquals(List.of(4, 3, 5), ids(catalog.findItems(null, 400_000, Long.MAX_VALUE, false, 1, 3)));
+
+        Catalog fresh = new Catalog();
+        fresh.addItem(Item.ofKopecks(14, "Без категории", null, 1), 1);
+        assertEquals(14, fresh.findItems(null, 0, Long.MAX_VALUE, true, 0, 1).get(0).getId());
+        assertEquals(3, fresh.findItems(Category.LAPTOPS, 0, Long.MAX_VALUE, false, 0, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    @Order(23)
+    @Tag("Negative")
+    @DisplayName("Проверить отказ на страницу за пределами int и слишком глубокую страницу товаров в наличии.")
+    public void shouldRejectTooDeepPages() {
+        assertThrows(NoSuchElementException.class,
+                () -> catalog.findItems(null, 0, Long.MAX_VALUE, false, Integer.MAX_VALUE, 2));
+        assertThrows(NoSuchElementException.class,
+                () -> catalog.findItems(null, 0, Long.MAX_VALUE, true, Catalog.MAX_IN_STOCK_OFFSET + 1, 1));
+        assertTrue(catalog.findItems(null, 0, Long.MAX_VALUE, true, Catalog.MAX_IN_STOCK_OFFSET, 1).isEmpty());
+        assertTrue(catalog.findItems(null, 0, Long.MAX_VALUE, false, 1 << 20, 1 << 10).isEmpty());
+    }
+
+    @Test
+    @Order(24)
+    @Tag("Negative")
+    @DisplayName("Проверить отказ на отрицательный остаток товара при наполнении и обновлении каталога.")
+    public void shouldRejectNegativeStock() {
+        Item item = Item.ofKopecks(13, "Новый товар", Category.SOFTWARE, 100);
+
+        assertThrows(NoSuchElementException.class, () -> catalog.addItem(item, -1));
+        assertThrows(NoSuchElementException.class, () -> catalog.addItem(item, Integer.MIN_VALUE));
+        assertThrows(NoSuchElementException.class, () -> catalog.update().put(item, Integer.MIN_VALUE));
+        assertThrows(NoSuchElementException.class, () -> catalog.getItemInfo(13));
+        catalog.addItem(item, 0);
+        assertEquals(0, catalog.getCountForItem(item));
+        assertFalse(catalog.tryReserve(13, 1));
+    }
+
+    @Test
+    @Order(25)
+    @Tag("Negative")
+    @DisplayName("Файл каталога с повторным id не загружается, в том числе если повторы попали в разные куски.")
+    public void shouldRejectDuplicateIds() throws IOException {
+        Path small = directory.resolve("duplicate.csv");
+        Files.writeString(small, "id;name;category;price;count\n1;Apple iPhone SE;SMARTPHONES;97990;10\n"
+                + "2;Xiaomi;SMARTPHONES;19490;8\n1;Другой iPhone;SMARTPHONES;1;1\n", StandardCharsets.UTF_8);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> CatalogLoader.load(small));
+        assertTrue(e.getMessage().contains("id товара 1, строка каталога 4"), e.getMessage());
+
+        StringBuilder large = new StringBuilder();
+        for (int id = 1; id <= 200_000; id++) large.append(id).append(";Товар ").append(id).append(";SOFTWARE;10;1\n");
+        large.append("7;Повтор;SOFTWARE;10;1\n");
+        Path largeFile = directory.resolve("large-duplicate.csv");
+        Files.writeString(largeFile, large, StandardCharsets.UTF_8);
+        e = assertThrows(IllegalArgumentException.class, () -> CatalogLoader.load(largeFile));
+        assertTrue(e.getMessage().contains("id товара 7, строка каталога 200001"), e.getMessage());
+    }
+}
@@ -0,0 +1,247 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import ru.inno.market.core.*;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.Item;
+import ru.inno.market.model.OrderStatus;
+import ru.inno.market.model.PromoCodes;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты шины событий изменений ChangeEventBus:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ChangeEventBusTest {
+    @TempDir
+    Path directory;
+
+    //Копии событий: сами события - переиспользуемые ячейки кольца
+    private static final class Recorder implements ChangeEventBus.Handler {
+        final List<String> events = new ArrayList<>();
+        final List<Long> sequences = new ArrayList<>();
+        int batches;
+
+        @Override
+        public synchronized void onEvent(ChangeEvent event, boolean endOfBatch) {
+            events.add(event.getType() + ":" + event.getOrderId() + ":" + event.getItemId() + ":" + event.getQuantity()
+                    + ":" + event.getAmount());
+            sequences.add(event.getSequence());
+            if (endOfBatch) batches++;
+        }
+
+        synchronized int size() {
+            return events.size();
+        }
+    }
+
+    private static void publishStock(ChangeEventBus bus, int itemId) {
+        bus.publish(ChangeEvent.Type.STOCK_RESERVED, -1, -1, itemId, 1, 0);
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Подписчик читает события пачками по порядку публикации.")
+    public void shouldDrainInBatches() {
+        ChangeEventBus bus = new ChangeEventBus(16, ChangeEventBus.Backpressure.DROP);
+        Recorder recorder = new Recorder();
+        ChangeEventBus.Subscription subscription = bus.subscribe(recorder);
+        for (int id = 1; id <= 10; id++) publishStock(bus, id);
+
+        assertEquals(10, subscription.lag());
+        assertEquals(4, subscription.drain(4));
+        assertEquals(6, subscription.drain(100));
+        assertEquals(0, subscription.drain(100));
+
+        assertEquals(0, subscription.lag());
+        assertEquals(2, recorder.batches);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, recorder.sequences.get(i));
+            assertEquals("STOCK_RESERVED:-1:" + (i + 1) + ":1:0", recorder.events.get(i));
+        }
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Каждый подписчик получает все события, опубликованные после подписки.")
+    public void shouldDeliverToEverySubscriber() {
+        ChangeEventBus bus = new ChangeEventBus(8, ChangeEventBus.Backpressure.DROP);
+        publishStock(bus, 1);         //До подписки - никто не ждёт
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        ChangeEventBus.Subscription a = bus.subscribe(first);
+        ChangeEventBus.Subscription b = bus.subscribe(second);
+        for (int round = 0; round < 5; round++) {
+            for (int id = 0; id < 6; id++) publishStock(bus, id);
+            a.drain(100);
+            b.drain(3);
+            b.drain(3);
+        }
+
+        assertEquals(0, bus.dropped());
+        assertEquals(30, first.size());
+        assertEquals(first.events, second.events);
+        assertEquals(1, first.sequences.get(0));
+    }
+
+    @Test
+    @Order(3)
+    @Tag("Negative")
+    @DisplayName("Переполненная шина DROP отбрасывает события и считает их, пока отстаёт подписчик.")
+    public void shouldDropWhenFull() {
+        ChangeEventBus bus = new ChangeEventBus(8, ChangeEventBus.Backpressure.DROP);
+        Recorder recorder = new Recorder();
+        ChangeEventBus.Subscription subscription = bus.subscribe(recorder);
+        for (int id = 0; id < 20; id++) publishStock(bus, id);
+
+        assertEquals(8, bus.published());
+        assertEquals(12, bus.dropped());
+        assertEquals(8, subscription.drain(100));
+        publishStock(bus, 100);
+        assertEquals(1, subscription.drain(100));
+        assertEquals("STOCK_RESERVED:-1:100:1:0", recorder.events.get(8));
+        assertThrows(NoSuchElementException.class, () -> new ChangeEventBus(12, ChangeEventBus.Backpressure.DROP));
+        assertThrows(NoSuchElementException.class, () -> new ChangeEventBus(8, ChangeEventBus.Backpressure.SPILL));
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Шина SPILL вытесняет не поместившиеся события на диск, откуда их можно прочитать.")
+    public void shouldSpillToDisk() {
+        try (ChangeEventBus bus = new ChangeEventBus(4, ChangeEventBus.Backpressure.SPILL, directory.resolve("events.spill"))) {
+            Recorder recorder = new Recorder();
+            ChangeEventBus.Subscription subscription = bus.subscribe(recorder);
+            for (int id = 0; id < 10; id++) publishStock(bus, id);
+
+            assertEquals(4, bus.published());
+            assertEquals(6, bus.spilled());
+            assertEquals(4, subscription.drain(100));
+
+            Recorder spilled = new Recorder();
+            assertEquals(6, bus.readSpill(spilled));
+            assertEquals(1, spilled.batches);
+            for (int i = 0; i < 6; i++) assertEquals("STOCK_RESERVED:-1:" + (i + 4) + ":1:0", spilled.events.get(i));
+        }
+    }
+
+    @Test
+    @Order(5)
+    @DisplayName("Шина BLOCK не теряет событий нескольких издателей при медленном фоновом подписчике.")
+    public void shouldBlockUntilConsumed() throws InterruptedException {
+        ChangeEventBus bus = new ChangeEventBus(16, ChangeEventBus.Backpressure.BLOCK);
+        long[] sums = new long[1];
+        ChangeEventBus.Subscription subscription = bus.subscribe((event, endOfBatch) -> sums[0] += event.getItemId());
+        subscription.start(8, TimeUnit.MICROSECONDS.toNanos(50));
+        Thread[] publishers = new Thread[4];
+        for (int t = 0; t < publishers.length; t++) {
+            publishers[t] = new Thread(() -> {
+                for (int id = 1; id <= 5_000; id++) publishStock(bus, id);
+            });
+            publishers[t].start();
+        }
+        for (Thread publisher : publishers) publisher.join();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (subscription.lag() > 0 && System.nanoTime() < deadline) Thread.sleep(1);
+        subscription.stop();
+
+        assertEquals(20_000, bus.published());
+        assertEquals(0, bus.dropped());
+        assertEquals(0, subscription.lag());
+        assertEquals(4L * 5_000 * 5_001 / 2, sums[0]);
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("Сервис и каталог публикуют события изменений заказов и остатков.")
+    public void shouldPublishServiceChanges() {
+        Catalog catalog = new Catalog();
+        MarketService service = new MarketService(catalog);
+        ChangeEventBus bus = new ChangeEventBus(64, ChangeEventBus.Backpressure.DROP);
+        Recorder recorder = new Recorder();
+        ChangeEventBus.Subscription subscription = bus.subscribe(recorder);
+        service.attachEvents(bus);
+
+        int orderId = service.createOrderFor(new Client(7, "Kate"));
+        Item item = catalog.getItemById(3);
+        service.addItemToOrder(item, orderId);
+        service.addItemsToOrder(orderId, Map.of(5, 2));
+        service.applyDiscountForOrder(orderId, PromoCodes.HAPPY_HOUR);
+        service.checkout(orderId);
+        service.cancel(orderId);
+        subscription.drain(100);
+
+        assertEquals(List.of(
+                "ORDER_CREATED:" + orderId + ":-1:0:0",
+                "STOCK_RESERVED:-1:3:1:0",
+                "ITEM_ADDED:" + orderId + ":3:1:" + item.getPriceKopecks(),
+                "STOCK_RESERVED:-1:5:2:0",
+                "ITEM_ADDED:" + orderId + ":5:2:" + catalog.getItemInfo(5).getPriceKopecks(),
+                "DISCOUNT_APPLIED:" + orderId + ":-1:0:500",
+                "STATUS_CHANGED:" + orderId + ":-1:0:" + OrderStatus.PAID.ordinal(),
+                "STATUS_CHANGED:" + orderId + ":-1:0:" + OrderStatus.CANCELLED.ordinal(),
+                "STOCK_RELEASED:-1:5:2:0"), recorder.events);
+    }
+
+    @Test
+    @Order(7)
+    @DisplayName("События файла SPILL читаются один раз и всегда идут после событий кольца.")
+    public void shouldReadSpillOnceAndInOrder() {
+        try (ChangeEventBus bus = new ChangeEventBus(4, ChangeEventBus.Backpressure.SPILL, directory.resolve("events.spill"))) {
+            Recorder recorder = new Recorder();
+            ChangeEventBus.Subscription subscription = bus.subscribe(recorder);
+            for (int id = 0; id < 6; id++) publishStock(bus, id);
+            assertEquals(4, subscription.drain(100));
+            publishStock(bus, 6);       //Место в кольце есть, но файл ещё не прочитан
+            assertEquals(4, bus.published());
+
+            assertEquals(2, subscription.drain(2));       //Кольцо прочитано - drain читает файл
+            assertEquals(1, bus.readSpill(recorder));
+            assertEquals(0, bus.readSpill(recorder));
+            publishStock(bus, 7);       //Файл прочитан - снова в кольцо
+            assertEquals(1, subscription.drain(100));
+
+            assertEquals(3, bus.spilled());
+            assertEquals(5, bus.published());
+            List<String> expected = new ArrayList<>();
+            for (int id = 0; id <= 7; id++) expected.add("STOCK_RESERVED:-1:" + id + ":1:0");
+            assertEquals(expected, recorder.events);
+        }
+    }
+
+    @Test
+    @Order(8)
+    @Tag("Negative")
+    @DisplayName("У шины SPILL один подписчик, и фоновый поток читает вытесненные события без readSpill.")
+    public void shouldDrainSpillWithSingleSubscriber() throws Exception {
+        try (ChangeEventBus bus = new ChangeEventBus(4, ChangeEventBus.Backpressure.SPILL, directory.resolve("events.spill"))) {
+            Recorder recorder = new Recorder();
+            ChangeEventBus.Subscription subscription = bus.subscribe(recorder);
+            assertThrows(NoSuchElementException.class, () -> bus.subscribe(new Recorder()));
+
+            for (int id = 0; id < 10; id++) publishStock(bus, id);
+            subscription.start(3, TimeUnit.MICROSECONDS.toNanos(100));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (recorder.size() < 10 && System.nanoTime() < deadline) Thread.sleep(1);
+            publishStock(bus, 10);      //Файл прочитан - снова в кольцо
+            while (recorder.size() < 11 && System.nanoTime() < deadline) Thread.sleep(1);
+            subscription.stop();
+
+            assertEquals(6, bus.spilled());
+            assertEquals(5, bus.published());
+            List<String> expected = new ArrayList<>();
+            for (int id = 0; id <= 10; id++) expected.add("STOCK_RESERVED:-1:" + id + ":1:0");
+            synchronized (recorder) {
+                assertEquals(expected, recorder.events);
+            }
+            bus.unsubscribe(subscription);
+            assertNotNull(bus.subscribe(new Recorder()));     //Место подписчика освободилось
+        }
+    }
+}
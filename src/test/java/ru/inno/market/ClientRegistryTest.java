@@ -0,0 +1,107 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.ClientRegistry;
+import ru.inno.market.core.MarketMetrics;
+import ru.inno.market.core.MarketService;
+import ru.inno.market.core.StockReservations;
+import ru.inno.market.model.Client;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты реестра клиентов ClientRegistry:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ClientRegistryTest {
+    private ClientRegistry registry;
+    private AtomicLong clock;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new AtomicLong();
+        registry = new ClientRegistry(60, 3, clock::get);      //Заказ в секунду, до трёх подряд
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Клиент с тем же id и ником - один и тот же объект, новый ник заменяет прежний.")
+    public void shouldRegisterClients() {
+        Client dima = registry.register(1, "Dima");
+
+        assertSame(dima, registry.register(1, "Dima"));
+        assertSame(dima, registry.find(1));
+        Client renamed = registry.register(1, "Dmitry");
+        assertEquals("Dmitry", renamed.getNickname());
+        assertSame(renamed, registry.find(1));
+        assertNull(registry.find(2));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("История заказов клиента и его первый заказ читаются по id клиента.")
+    public void shouldKeepOrderHistory() {
+        MarketService service = new MarketService(new Catalog());
+        Client dima = service.getClients().register(1, "Dima");
+        Client mike = service.getClients().register(2, "Mike");
+        int first = service.createOrderFor(dima);
+        for (int i = 0; i < 100; i++) service.createOrderFor(mike);
+        int[] more = service.createOrdersFor(List.of(dima, mike, dima));
+
+        assertArrayEquals(new int[]{first, more[0], more[2]}, service.getClients().orderIds(1));
+        assertEquals(101, service.getClients().orderCount(2));
+        assertEquals(first, service.getClients().firstOrderId(1));
+        assertEquals(-1, service.getClients().firstOrderId(3));
+        assertTrue(service.isFirstOrder(service.getOrderInfo(first)));
+        assertFalse(service.isFirstOrder(service.getOrderInfo(more[0])));
+        assertEquals(3, service.getOrdersFor(1).size());
+        assertSame(service.getOrderInfo(more[2]), service.getOrdersFor(1).get(2));
+    }
+
+    @Test
+    @Order(3)
+    @Tag("Negative")
+    @DisplayName("Проверить, что сверх лимита заказы клиента отклоняются, а лимит восстанавливается со временем.")
+    public void shouldLimitOrderRate() {
+        Catalog catalog = new Catalog();
+        MarketService service = new MarketService(catalog, new StockReservations(catalog), registry);
+        Client dima = registry.register(1, "Dima");
+        Client mike = registry.register(2, "Mike");
+        for (int i = 0; i < 3; i++) service.createOrderFor(dima);
+
+        assertThrows(NoSuchElementException.class, () -> service.createOrderFor(dima));
+        service.createOrderFor(mike);      //Лимит у каждого клиента свой
+        clock.addAndGet(999);
+        assertThrows(NoSuchElementException.class, () -> service.createOrderFor(dima));
+        clock.addAndGet(1);
+        service.createOrderFor(dima);
+        assertEquals(4, registry.orderCount(1));
+        assertThrows(NoSuchElementException.class, () -> new ClientRegistry(-1, 1, clock::get));
+    }
+
+    @Test
+    @Order(4)
+    @Tag("Negative")
+    @DisplayName("Пакет заказов, где один клиент превысил лимит, не списывает лимит остальных и не создаёт заказов.")
+    public void shouldRefundBatchOverLimit() {
+        Catalog catalog = new Catalog();
+        MarketService service = new MarketService(catalog, new StockReservations(catalog), registry);
+        Client dima = registry.register(1, "Dima");
+        Client mike = registry.register(2, "Mike");
+        for (int i = 0; i < 3; i++) service.createOrderFor(mike);
+
+        assertThrows(NoSuchElementException.class, () -> service.createOrdersFor(List.of(dima, dima, mike)));
+        assertEquals(0, registry.orderCount(1));
+        assertEquals(3, service.liveOrderCount());
+        assertEquals(1, service.getMetrics().errors(MarketMetrics.Operation.CREATE_ORDER));
+
+        int[] ids = service.createOrdersFor(List.of(dima, dima, dima));     //Лимит Димы цел
+        assertEquals(3, ids.length);
+        assertEquals(3, registry.orderCount(1));
+        assertEquals(5, service.getMetrics().count(MarketMetrics.Operation.CREATE_ORDER));
+    }
+}
@@ -0,0 +1,150 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.ItemStore;
+import ru.inno.market.core.ItemView;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Item;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты хранилища товаров вне кучи ItemStore:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ItemStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @Order(1)
+    @DisplayName("Товары читаются через ItemView без потерь, повторная запись названия не растит арену.")
+    public void shouldPutAndViewItems() {
+        Catalog catalog = new Catalog();
+        ItemStore store = ItemStore.inMemory(64, 4096);
+        store.putAll(catalog);
+        store.put(Item.ofKopecks(40, null, null, 0), 5);
+
+        assertEquals(13, store.size());
+        ItemView view = new ItemView();
+        for (int id = 1; id <= 12; id++) {
+            Item item = catalog.getItemInfo(id);
+            assertSame(view, store.view(id, view));
+            assertEquals(item, view.toItem());
+            assertEquals(catalog.getCountForItem(item), view.stock());
+            assertEquals(item.getName().getBytes(java.nio.charset.StandardCharsets.UTF_8).length, view.nameLength());
+        }
+        assertNull(store.view(40, view).name());
+        assertNull(view.category());
+        assertEquals(-1, view.nameLength());
+        assertNull(store.view(13, view));
+
+        int arena = store.arenaBytes();
+        Item phone = catalog.getItemInfo(1);
+        store.put(Item.ofKopecks(1, phone.getName(), phone.getCategory(), 1), 3);
+        store.setPrice(2, 777);
+        assertEquals(arena, store.arenaBytes());
+        assertEquals(13, store.size());
+        assertEquals(1, store.view(1, view).priceKopecks());
+        assertEquals(3, view.stock());
+        assertEquals(777, store.view(2, view).priceKopecks());
+
+        List<Integer> ids = new ArrayList<>();
+        store.forEach(item -> ids.add(item.id()));
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 40), ids);
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Хранилище в файле после переоткрытия сразу отдаёт товары, цены и остатки.")
+    public void shouldReopenMappedStore() {
+        try (ItemStore store = ItemStore.open(directory, 100_000, 4 << 20)) {
+            for (int id = 0; id < 100_000; id += 7) {
+                store.put(Item.ofKopecks(id, "Товар №" + id, Category.values()[id % Category.values().length], 100L * id), id % 50);
+            }
+            assertTrue(store.tryReserve(7, 3));
+            store.setPrice(14, 1);
+        }
+
+        try (ItemStore store = ItemStore.open(directory, 1, 0)) {      //Размеры берутся из файла
+            assertEquals(100_000, store.capacity());
+            assertEquals((100_000 + 6) / 7, store.size());
+            ItemView view = new ItemView();
+            assertEquals(Item.ofKopecks(700, "Товар №700", Category.values()[700 % Category.values().length], 70_000),
+                    store.view(700, view).toItem());
+            assertEquals(4, store.view(7, view).stock());
+            assertEquals(1, store.view(14, view).priceKopecks());
+            assertFalse(store.contains(8));
+
+            store.put(Item.ofKopecks(8, "Новый товар", Category.SOFTWARE, 990), 2);     //Арена продолжается за прежними названиями
+            assertEquals("Товар №99995", store.view(99_995, view).name());
+            assertEquals("Новый товар", store.view(8, view).name());
+
+            Catalog catalog = Catalog.fromStore(store);
+            assertEquals(store.view(700, view).toItem(), catalog.getItemInfo(700));
+            assertEquals(4, catalog.getCountForItem(catalog.getItemInfo(7)));
+        }
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Остаток в столбце списывается из нескольких потоков точно.")
+    public void shouldReserveExactlyFromManyThreads() throws Exception {
+        ItemStore store = ItemStore.inMemory(16, 256);
+        store.put(Item.ofKopecks(3, "Распродажа", Category.SMARTPHONES, 100), 1000);
+        int threads = 4;
+        AtomicInteger sold = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (store.tryReserve(3, 1)) sold.incrementAndGet();
+                    if (i % 10 == 0 && store.tryReserve(3, 2)) store.release(3, 2);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(1000, sold.get());
+        assertEquals(0, store.view(3, new ItemView()).stock());
+        assertFalse(store.tryReserve(3, 1));
+    }
+
+    @Test
+    @Order(4)
+    @Tag("Negative")
+    @DisplayName("Хранилище отклоняет товары вне ёмкости, переполнение арены и чужой файл.")
+    public void shouldRejectInvalidUsage() throws IOException {
+        ItemStore store = ItemStore.inMemory(8, 8);
+
+        assertThrows(NoSuchElementException.class, () -> store.put(Item.ofKopecks(8, "A", Category.SOFTWARE, 1), 1));
+        assertThrows(NoSuchElementException.class, () -> store.put(null, 1));
+        assertThrows(IllegalStateException.class, () -> store.put(Item.ofKopecks(1, "Очень длинное", Category.SOFTWARE, 1), 1));
+        assertFalse(store.contains(1));
+        assertThrows(NoSuchElementException.class, () -> store.tryReserve(1, 1));
+        assertThrows(NoSuchElementException.class, () -> store.setPrice(1, 1));
+        store.put(Item.ofKopecks(1, "A", Category.SOFTWARE, 1), 1);
+        assertThrows(NoSuchElementException.class, () -> store.tryReserve(1, 0));
+        assertThrows(NoSuchElementException.class, () -> store.setPrice(1, -1));
+        assertThrows(NoSuchElementException.class, () -> store.put(Item.ofKopecks(2, "B", Category.SOFTWARE, 1), -1));
+        assertFalse(store.contains(2));
+        assertThrows(NoSuchElementException.class, () -> ItemStore.inMemory(0, 8));
+
+        Path foreign = directory.resolve("foreign");
+        Files.createDirectories(foreign);
+        Files.write(foreign.resolve(ItemStore.STORE_FILE), new byte[128]);
+        assertThrows(IllegalStateException.class, () -> ItemStore.open(foreign, 8, 8));
+    }
+}
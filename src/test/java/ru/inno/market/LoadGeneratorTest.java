@@ -0,0 +1,137 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.MarketMetrics.Operation;
+import ru.inno.market.core.MarketService;
+import ru.inno.market.load.LoadGenerator;
+import ru.inno.market.load.LoadProfile;
+import ru.inno.market.load.LoadReport;
+import ru.inno.market.load.Trace;
+import ru.inno.market.model.Client;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты генератора нагрузки LoadGenerator:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class LoadGeneratorTest {
+    private static final int ITEMS = 1000;
+
+    @TempDir
+    Path directory;
+
+    private LoadProfile profile;
+
+    @BeforeEach
+    public void setUp() {
+        profile = LoadProfile.defaults().withSessions(2000).withRate(50_000).withClients(100);
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Один seed даёт одну и ту же трассу, трасса без потерь сохраняется в файл и читается обратно.")
+    public void shouldGenerateSameTraceFromSeed() {
+        Trace trace = Trace.generate(profile, LoadGenerator.itemIds(ITEMS));
+        Path file = directory.resolve("load.trace");
+        trace.write(file);
+
+        assertEquals(trace, Trace.generate(profile, LoadGenerator.itemIds(ITEMS)));
+        assertEquals(trace, Trace.read(file));
+        assertNotEquals(trace, Trace.generate(profile.withSeed(43), LoadGenerator.itemIds(ITEMS)));
+        assertEquals(2000, trace.getSessions().size());
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Популярность товаров следует закону Ципфа, поток сессий идёт с заданной интенсивностью.")
+    public void shouldFollowProfileDistributions() {
+        Trace trace = Trace.generate(profile.withSessions(20_000).withRate(1000), LoadGenerator.itemIds(ITEMS));
+        int[] lines = new int[ITEMS + 1];
+        int total = 0;
+        int promos = 0;
+        for (Trace.Session session : trace.getSessions()) {
+            for (int itemId : session.itemIds()) lines[itemId]++;
+            total += session.lineCount();
+            if (session.promoCode() != null) promos++;
+        }
+        int[] sorted = lines.clone();
+        Arrays.sort(sorted);
+        //При s = 1.1 на 1000 товарах у самого ходового товара больше 10% строк, второй - примерно вдвое реже
+        assertTrue(sorted[ITEMS] > total / 10, "Самый ходовой товар: " + sorted[ITEMS] + " из " + total);
+        assertTrue(sorted[ITEMS] > sorted[ITEMS - 1] * 1.5);
+        assertEquals(3.0, (double) total / trace.getSessions().size(), 0.2);
+        assertEquals(0.2, (double) promos / trace.getSessions().size(), 0.02);
+        assertEquals(20.0, trace.durationNanos() / 1e9, 1.0);
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Проигрывание трассы по очереди приводит каталог в одно и то же состояние.")
+    public void shouldReplayDeterministically() {
+        Trace trace = Trace.generate(profile, LoadGenerator.itemIds(ITEMS));
+        Catalog first = LoadGenerator.syntheticCatalog(ITEMS, 20, 1);
+        Catalog second = LoadGenerator.syntheticCatalog(ITEMS, 20, 1);
+
+        LoadReport firstReport = new LoadGenerator(new MarketService(first)).replay(trace);
+        LoadReport secondReport = new LoadGenerator(new MarketService(second)).replay(trace);
+
+        assertEquals(firstReport.getCompleted(), secondReport.getCompleted());
+        assertEquals(firstReport.getFailed(), secondReport.getFailed());
+        assertTrue(firstReport.getFailed() > 0, "На горячих товарах с остатком 20 должен кончиться товар");
+        for (int id = 1; id <= ITEMS; id++) {
+            assertEquals(first.getCountForItem(first.getItemInfo(id)), second.getCountForItem(second.getItemInfo(id)));
+        }
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Открытая нагрузка проходит все сессии и считает задержки каждой операции.")
+    public void shouldRunOpenLoop() {
+        Trace trace = Trace.generate(profile, LoadGenerator.itemIds(ITEMS));
+        MarketService service = new MarketService(LoadGenerator.syntheticCatalog(ITEMS, 1_000_000, 1));
+
+        LoadReport report = new LoadGenerator(service).run(trace);
+
+        assertEquals(2000, report.getCompleted() + report.getAbandoned() + report.getFailed());
+        assertEquals(0, report.getFailed());
+        assertEquals(2000, report.count(Operation.CREATE_ORDER));
+        assertEquals(report.getCompleted(), report.count(Operation.COMPLETE_ORDER));
+        assertEquals(0, service.liveOrderCount());      //Брошенные заказы отменены
+        assertEquals(report.getCompleted() + report.getAbandoned(), service.getArchive().size());
+        assertTrue(report.latencyNanos(Operation.CREATE_ORDER, 0.99) >= report.latencyNanos(Operation.CREATE_ORDER, 0.5));
+        assertTrue(report.getElapsedNanos() >= trace.durationNanos());
+        assertTrue(report.format().contains("CHECKOUT"));
+    }
+
+    @Test
+    @Order(5)
+    @Tag("Negative")
+    @DisplayName("Некорректные параметры профиля отклоняются.")
+    public void shouldRejectInvalidProfile() {
+        assertThrows(NoSuchElementException.class, () -> profile.withRate(0));
+        assertThrows(NoSuchElementException.class, () -> profile.withCartSize(5, 3));
+        assertThrows(NoSuchElementException.class, () -> profile.withAbandonRate(1.5));
+        assertThrows(NoSuchElementException.class, () -> profile.withPromo(0.5));
+        assertThrows(NoSuchElementException.class, () -> Trace.generate(profile, new int[0]));
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("Нагрузка не затирает ник уже зарегистрированного клиента.")
+    public void shouldKeepRegisteredClient() {
+        Trace trace = Trace.generate(profile.withSessions(50), LoadGenerator.itemIds(ITEMS));
+        MarketService service = new MarketService(LoadGenerator.syntheticCatalog(ITEMS, 1_000_000, 1));
+        int clientId = trace.getSessions().get(0).clientId();
+        Client client = service.getClients().register(clientId, "Mike");
+
+        new LoadGenerator(service).replay(trace);
+
+        assertSame(client, service.getClients().find(clientId));
+        assertEquals("Mike", service.getClients().find(clientId).getNickname());
+    }
+}
@@ -0,0 +1,144 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.MarketService;
+import ru.inno.market.http.MarketHttpServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты HTTP-интерфейса MarketHttpServer:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class MarketHttpServerTest {
+    private Catalog catalog;
+    private MarketHttpServer server;
+    private HttpClient http;
+    int hotItemId = 10;     //"Яндекс Плюс на 12 месяцев", 1500 шт.
+
+    @BeforeEach
+    public void setUp() {
+        catalog = new Catalog();
+        server = MarketHttpServer.start(new MarketService(catalog), 0);
+        http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    private HttpResponse<String> send(String method, String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int createOrder() throws Exception {
+        HttpResponse<String> response = send("POST", "/orders?clientId=1&nickname=Dima");
+        assertEquals(201, response.statusCode());
+        return Integer.parseInt(response.body().replaceAll("\\D", ""));
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Создание заказа, добавление товара, промокод и чтение заказа.")
+    public void shouldServeOrderScenario() throws Exception {
+        int orderId = createOrder();
+
+        HttpResponse<String> added = send("POST", "/orders/" + orderId + "/items?itemId=1&quantity=2");
+        assertEquals(200, added.statusCode());
+        assertTrue(added.body().contains("\"name\":\"Apple iPhone SE\",\"quantity\":2"));
+        assertTrue(added.body().contains("\"totalKopecks\":19598000"));
+
+        assertEquals(200, send("POST", "/orders/" + orderId + "/promo?code=FIRST_ORDER").statusCode());
+        HttpResponse<String> order = send("GET", "/orders/" + orderId);
+        assertEquals(200, order.statusCode());
+        assertTrue(order.body().contains("\"totalKopecks\":15678400,\"discountApplied\":true"));
+
+        HttpResponse<String> metrics = send("GET", "/metrics");
+        assertEquals(200, metrics.statusCode());
+        assertTrue(metrics.body().contains("market_promo_applied_total{code=\"FIRST_ORDER\"} 1"));
+    }
+
+    @Test
+    @Order(2)
+    @Tag("Negative")
+    @DisplayName("Проверить коды ответов на отсутствующий заказ, некорректные параметры и нехватку товара.")
+    public void shouldReportErrors() throws Exception {
+        int orderId = createOrder();
+
+        assertEquals(404, send("GET", "/orders/12345").statusCode());
+        assertEquals(404, send("GET", "/orders/" + orderId + "/unknown").statusCode());
+        assertEquals(400, send("POST", "/orders/" + orderId + "/items?itemId=abc&quantity=1").statusCode());
+        assertEquals(400, send("POST", "/orders/" + orderId + "/promo?code=NO_SUCH_CODE").statusCode());
+        assertEquals(400, send("POST", "/orders").statusCode());
+        assertEquals(409, send("POST", "/orders/" + orderId + "/items?itemId=7&quantity=100").statusCode());
+        assertEquals(405, send("GET", "/orders").statusCode());
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Одновременные запросы не продают ходовой товар сверх остатка.")
+    public void shouldNotOversellUnderConcurrentRequests() throws Exception {
+        int stock = catalog.getCountForItem(catalog.getItemInfo(hotItemId));
+        int requests = stock + 500;
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Semaphore connections = new Semaphore(200);      //Не больше одновременных соединений, чем выдержит очередь accept
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests; i++) {
+                futures.add(clients.submit(() -> {
+                    connections.acquire();
+                    try {
+                        int orderId = createOrder();
+                        int status = send("POST", "/orders/" + orderId + "/items?itemId=" + hotItemId + "&quantity=1").statusCode();
+                        if (status == 200) sold.incrementAndGet();
+                        else if (status == 409) rejected.incrementAndGet();
+                    } finally {
+                        connections.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get(60, TimeUnit.SECONDS);
+        }
+
+        assertEquals(stock, sold.get());
+        assertEquals(500, rejected.get());
+        assertEquals(0, catalog.getCountForItem(catalog.getItemInfo(hotItemId)));
+    }
+
+    @Test
+    @Order(4)
+    @Tag("Negative")
+    @DisplayName("Непредвиденная ошибка сервиса возвращается как 500 с телом ошибки, сервер продолжает работать.")
+    public void shouldRespond500OnUnexpectedError() throws Exception {
+        server.close();
+        catalog = new Catalog() {
+            @Override
+            public boolean tryReserveAll(Map<Integer, Integer> quantities) {
+                throw new IllegalStateException("сбой склада");
+            }
+        };
+        server = MarketHttpServer.start(new MarketService(catalog), 0);
+        int orderId = createOrder();
+
+        HttpResponse<String> response = send("POST", "/orders/" + orderId + "/items?itemId=1&quantity=1");
+
+        assertEquals(500, response.statusCode());
+        assertTrue(response.body().startsWith("{\"error\":"), response.body());
+        assertEquals(200, send("GET", "/orders/" + orderId).statusCode());
+    }
+}
@@ -0,0 +1,89 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.MarketMetrics;
+import ru.inno.market.core.MarketService;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.PromoCodes;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.inno.market.core.MarketMetrics.Operation.*;
+
+@DisplayName("Тесты метрик MarketMetrics:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class MarketMetricsTest {
+    private Catalog catalog;
+    private MarketService service;
+    private MarketMetrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        catalog = new Catalog();
+        service = new MarketService(catalog);
+        metrics = service.getMetrics();
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Вызовы, ошибки, отказы из-за нехватки товара и промокоды учитываются по операциям.")
+    public void shouldCountOperations() {
+        int orderId = service.createOrderFor(new Client(1, "Dima"));
+        service.addItemToOrder(catalog.getItemById(7), orderId);
+        service.addItemToOrder(catalog.getItemById(7), orderId);
+        assertThrows(NoSuchElementException.class, () -> catalog.getItemById(7));     //HUAWEI MateBook E закончился
+        assertThrows(NoSuchElementException.class, () -> service.addItemsToOrder(orderId, Map.of(7, 1)));
+        service.applyDiscountForOrder(orderId, PromoCodes.VDUD);
+        service.getOrderInfo(orderId);
+        assertThrows(NoSuchElementException.class, () -> service.getOrderInfo(orderId + 1));
+
+        assertSame(catalog.getMetrics(), metrics);
+        assertEquals(1, metrics.count(CREATE_ORDER));
+        assertEquals(3, metrics.count(GET_ITEM));
+        assertEquals(1, metrics.errors(GET_ITEM));
+        assertEquals(2, metrics.count(ADD_ITEM));
+        assertEquals(1, metrics.errors(ADD_ITEMS));
+        assertEquals(2, metrics.count(GET_ORDER));
+        assertEquals(1, metrics.errors(GET_ORDER));
+        assertEquals(2, metrics.stockOuts());
+        assertEquals(1, metrics.promoUses(PromoCodes.VDUD));
+        assertEquals(0, metrics.promoUses(PromoCodes.FIRST_ORDER));
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Перцентили задержек считаются с погрешностью не больше ячейки гистограммы.")
+    public void shouldEstimateLatencyPercentiles() {
+        MarketMetrics histogram = new MarketMetrics();
+        for (int i = 1; i <= 10_000; i++) histogram.recordLatency(CHECKOUT, i * 1_000L, false);     //1..10000 мкс
+
+        assertEquals(10_000, histogram.count(CHECKOUT));
+        assertEquals(0, histogram.errors(CHECKOUT));
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            double expected = quantile * 10_000 * 1_000;
+            long actual = histogram.latencyNanos(CHECKOUT, quantile);
+            assertTrue(actual >= expected && actual <= expected * 1.07,
+                    "Перцентиль " + quantile + ": " + actual + " нс, ожидалось около " + expected);
+        }
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Снимок метрик выгружается в текстовом формате Prometheus.")
+    public void shouldExportText() {
+        int orderId = service.createOrderFor(new Client(1, "Dima"));
+        service.applyDiscountForOrder(orderId, PromoCodes.HAPPY_HOUR);
+
+        String text = metrics.exportText();
+
+        assertTrue(text.contains("# TYPE market_operation_latency_seconds summary\n"));
+        assertTrue(text.contains("market_operation_latency_seconds_count{operation=\"create_order\"} 1\n"));
+        assertTrue(text.contains("market_operation_latency_seconds{operation=\"apply_discount\",quantile=\"0.99\"} "));
+        assertTrue(text.contains("market_operation_errors_total{operation=\"get_item\"} 0\n"));
+        assertTrue(text.contains("market_stock_outs_total 0\n"));
+        assertTrue(text.contains("market_promo_applied_total{code=\"HAPPY_HOUR\"} 1\n"));
+    }
+}
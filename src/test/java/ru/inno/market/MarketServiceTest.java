@@ -5,11 +5,16 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import ru.inno.market.core.Catalog;
 import ru.inno.market.core.MarketService;
+import ru.inno.market.core.StockReservations;
 import ru.inno.market.model.Client;
 import ru.inno.market.model.Item;
+import ru.inno.market.model.Money;
+import ru.inno.market.model.OrderSnapshot;
 import ru.inno.market.model.PromoCodes;
 
-import java.util.NoSuchElementException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,7 +30,7 @@ public class MarketServiceTest {
     @BeforeEach
     public void setUp() {
         catalog = new Catalog();
-        marketService = new MarketService();
+        marketService = new MarketService(catalog);
         client = new Client(1, "Mike");
         orderId = marketService.createOrderFor(client);
     }
@@ -197,4 +202,220 @@ public class MarketServiceTest {
         assertThrows(NoSuchElementException.class, () -> marketService.applyDiscountForOrder(orderId, null));
     }
 
+    @Test
+    @Order(13)
+    @DisplayName("Нагрузочный тест: конкурентное создание заказов и добавление товаров.")
+    public void shouldCreateOrdersAndAddItemsConcurrently() throws Exception {
+        int threads = 8;
+        int ordersPerThread = 2_000;
+        Item item = catalog.getItemById(10);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                List<Integer> ids = new ArrayList<>();
+                for (int i = 0; i < ordersPerThread; i++) {
+                    int id = marketService.createOrderFor(client);
+                    marketService.addItemToOrder(item, id);
+                    marketService.addItemToOrder(item, orderId);     //Общий для всех потоков заказ
+                    ids.add(id);
+                }
+                return ids;
+            }));
+        }
+        start.countDown();
+        Set<Integer> allIds = new HashSet<>();
+        for (Future<List<Integer>> f : futures) allIds.addAll(f.get(60, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertEquals(threads * ordersPerThread, allIds.size());    //Все id заказов уникальны
+        assertFalse(allIds.contains(orderId));
+        for (int id : allIds) {
+            assertEquals(1, marketService.getOrderInfo(id).getItems().get(item));
+        }
+        assertEquals(threads * ordersPerThread, marketService.getOrderInfo(orderId).getItems().get(item));
+        assertEquals(threads * ordersPerThread * item.getPrice(), marketService.getOrderInfo(orderId).getTotalPrice());
+    }
+
+    @Test
+    @Order(14)
+    @DisplayName("Пакетное добавление товаров резервирует их на складе и добавляет в заказ.")
+    public void shouldAddItemsToOrderInBatch() {
+        Item item1 = catalog.getItemInfo(1);
+        Item item2 = catalog.getItemInfo(8);
+        int count1 = catalog.getCountForItem(item1);
+        int count2 = catalog.getCountForItem(item2);
+
+        marketService.addItemsToOrder(orderId, Map.of(1, 2, 8, 5));
+
+        ru.inno.market.model.Order order = marketService.getOrderInfo(orderId);
+        assertEquals(2, order.getItems().get(item1));
+        assertEquals(5, order.getItems().get(item2));
+        assertEquals(item1.getPriceKopecks() * 2 + item2.getPriceKopecks() * 5, order.getTotalKopecks());
+        assertEquals(count1 - 2, catalog.getCountForItem(item1));
+        assertEquals(count2 - 5, catalog.getCountForItem(item2));
+    }
+
+    @Test
+    @Order(15)
+    @Tag("Negative")
+    @DisplayName("Пакет, который нельзя собрать целиком, не меняет ни заказ, ни склад.")
+    public void shouldNotAddPartOfBatch() {
+        Item item1 = catalog.getItemInfo(1);
+        Item item7 = catalog.getItemInfo(7);
+        int count1 = catalog.getCountForItem(item1);
+        int count7 = catalog.getCountForItem(item7);
+
+        assertThrows(NoSuchElementException.class,
+                () -> marketService.addItemsToOrder(orderId, Map.of(1, 1, 7, count7 + 1)));
+
+        assertTrue(marketService.getOrderInfo(orderId).getItems().isEmpty());
+        assertEquals(count1, catalog.getCountForItem(item1));
+        assertEquals(count7, catalog.getCountForItem(item7));
+    }
+
+    @Test
+    @Order(16)
+    @DisplayName("Пакетное создание заказов для списка клиентов.")
+    public void shouldCreateOrdersForClients() {
+        List<Client> clients = List.of(new Client(2, "Anna"), new Client(3, "Oleg"), client);
+
+        int[] ids = marketService.createOrdersFor(clients);
+
+        assertEquals(clients.size(), ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertNotEquals(orderId, ids[i]);
+            assertEquals(clients.get(i), marketService.getOrderInfo(ids[i]).getClient());
+        }
+    }
+
+    @Test
+    @Order(17)
+    @Tag("Negative")
+    @DisplayName("Проверить, что пакетно не создаются заказы, если в списке есть клиент null.")
+    public void shouldNotCreateOrdersWithNullClient() {
+        assertThrows(NoSuchElementException.class,
+                () -> marketService.createOrdersFor(Arrays.asList(client, null)));
+        assertThrows(NoSuchElementException.class, () -> marketService.getOrderInfo(orderId + 1));
+    }
+
+    @Test
+    @Order(18)
+    @DisplayName("Оформление заказа подтверждает временные резервы, брошенный заказ возвращает товар на склад.")
+    public void shouldConfirmHoldsOnCheckout() {
+        AtomicLong clock = new AtomicLong();
+        MarketService service = new MarketService(catalog, new StockReservations(catalog, 100, clock::get));
+        Item item = catalog.getItemInfo(itemId);
+        int count = catalog.getCountForItem(item);
+        int paid = service.createOrderFor(client);
+        int abandoned = service.createOrderFor(client);
+
+        service.holdItemsForOrder(paid, Map.of(itemId, 1), 60_000);
+        service.holdItemsForOrder(abandoned, Map.of(itemId, 1), 60_000);
+        assertEquals(count - 2, catalog.getCountForItem(item));
+        service.checkout(paid);
+
+        clock.addAndGet(60_000);
+        assertThrows(NoSuchElementException.class, () -> service.checkout(abandoned));
+        assertEquals(count - 1, catalog.getCountForItem(item));
+        assertEquals(1, service.getOrderInfo(paid).getItems().get(item));
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("Снимок заказа кэшируется до изменения, старые снимки не меняются.")
+    public void shouldCacheOrderSnapshotUntilChange() {
+        Item item = catalog.getItemInfo(itemId);
+        OrderSnapshot empty = marketService.getOrderSnapshot(orderId);
+        assertSame(empty, marketService.getOrderSnapshot(orderId));
+        assertEquals(0, empty.getLineCount());
+
+        marketService.addItemToOrder(item, orderId);
+        marketService.addItemToOrder(item, orderId);
+        OrderSnapshot added = marketService.getOrderSnapshot(orderId);
+        assertEquals(2, added.getVersion());
+        assertEquals(2, added.getQuantity(item));
+        assertEquals(2 * item.getPriceKopecks(), added.getTotalKopecks());
+        assertSame(added, marketService.getOrderSnapshot(orderId));
+
+        marketService.applyDiscountForOrder(orderId, PromoCodes.FIRST_ORDER);
+        OrderSnapshot discounted = marketService.getOrderSnapshot(orderId);
+        assertEquals(3, discounted.getVersion());
+        assertTrue(discounted.isDiscountApplied());
+        assertEquals(marketService.getOrderInfo(orderId).getTotalKopecks(), discounted.getTotalKopecks());
+        assertFalse(added.isDiscountApplied());
+        assertEquals(0, empty.getLineCount());
+        assertThrows(NoSuchElementException.class, () -> marketService.getOrderSnapshot(orderId + 1));
+    }
+
+    @Test
+    @Order(20)
+    @DisplayName("Акции применяются к заказу один раз, FIRST_ORDER - только к первому заказу клиента.")
+    public void shouldApplyPromotionsOnce() {
+        Item item = catalog.getItemInfo(itemId);
+        int secondOrderId = marketService.createOrderFor(client);
+        marketService.addItemToOrder(item, orderId);
+        marketService.addItemToOrder(item, secondOrderId);
+
+        assertEquals(item.getPrice(), marketService.applyPromotions(secondOrderId, List.of("FIRST_ORDER")));
+        assertFalse(marketService.getOrderSnapshot(secondOrderId).isDiscountApplied());     //Нулевая скидка заказ не помечает
+        assertEquals(Money.toRubles(Money.applyDiscount(item.getPriceKopecks(), 2000)),
+                marketService.applyPromotions(orderId, List.of("FIRST_ORDER")));
+        assertTrue(marketService.getOrderSnapshot(orderId).isDiscountApplied());
+        assertThrows(NoSuchElementException.class, () -> marketService.applyPromotions(orderId, List.of("VDUD")));
+        assertEquals(1, marketService.getMetrics().promoUses("FIRST_ORDER"));     //Только применение, давшее скидку
+    }
+
+    @Test
+    @Order(21)
+    @DisplayName("Заказ оценивается по версии каталога, закреплённой при первом добавлении товара.")
+    public void shouldPriceOrderByPinnedCatalogVersion() {
+        long oldPrice = catalog.getItemInfo(itemId).getPriceKopecks();
+        marketService.addItemsToOrder(orderId, Map.of(itemId, 1));
+        long pinned = marketService.catalogVersionOf(orderId).getNumber();
+
+        catalog.update().price(itemId, oldPrice * 2).publish();
+        marketService.addItemsToOrder(orderId, Map.of(itemId, 1));
+        int secondOrderId = marketService.createOrderFor(client);
+        marketService.addItemsToOrder(secondOrderId, Map.of(itemId, 1));
+
+        ru.inno.market.model.Order order = marketService.getOrderInfo(orderId);
+        assertEquals(1, order.getCart().size());         //Одна строка: товар той же версии
+        assertEquals(2 * oldPrice, order.getTotalKopecks());
+        assertEquals(pinned, marketService.catalogVersionOf(orderId).getNumber());
+        assertEquals(pinned + 1, marketService.catalogVersionOf(secondOrderId).getNumber());
+        assertEquals(2 * oldPrice, marketService.getOrderInfo(secondOrderId).getTotalKopecks());
+        assertEquals(7, catalog.getCountForItem(catalog.getItemInfo(itemId)));
+        assertThrows(NoSuchElementException.class, () -> marketService.catalogVersionOf(secondOrderId + 1));
+    }
+
+    @Test
+    @Order(22)
+    @Tag("Negative")
+    @DisplayName("Товар с истёкшим резервом убирается из заказа, повторное оформление оплачивает только взятый товар.")
+    public void shouldDropExpiredHoldsFromOrder() {
+        AtomicLong clock = new AtomicLong();
+        MarketService service = new MarketService(catalog, new StockReservations(catalog, 100, clock::get));
+        Item held = catalog.getItemInfo(itemId);
+        Item taken = catalog.getItemInfo(8);
+        int heldCount = catalog.getCountForItem(held);
+        int id = service.createOrderFor(client);
+        service.addItemsToOrder(id, Map.of(8, 2));
+        service.holdItemsForOrder(id, Map.of(itemId, 3), 60_000);
+        service.applyDiscountForOrder(id, PromoCodes.HAPPY_HOUR);
+
+        clock.addAndGet(60_000);
+        assertThrows(NoSuchElementException.class, () -> service.checkout(id));
+        ru.inno.market.model.Order order = service.getOrderInfo(id);
+        assertEquals(Map.of(taken, 2), order.getItems());
+        assertFalse(order.isDiscountApplied());      //Скидка считалась для прежней корзины
+        assertEquals(2 * taken.getPriceKopecks(), order.getTotalKopecks());
+        assertEquals(heldCount, catalog.getCountForItem(held));
+
+        service.checkout(id);
+        assertEquals(ru.inno.market.model.OrderStatus.PAID, service.getOrderInfo(id).getStatus());
+        assertEquals(2 * taken.getPriceKopecks(), service.getOrderInfo(id).getTotalKopecks());
+    }
 }
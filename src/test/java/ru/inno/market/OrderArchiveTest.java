@@ -0,0 +1,232 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import ru.inno.market.core.*;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.Item;
+import ru.inno.market.model.OrderStatus;
+import ru.inno.market.model.OrderView;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты жизненного цикла заказов и архива OrderArchive:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class OrderArchiveTest {
+    @TempDir
+    Path directory;
+
+    private Catalog catalog;
+    private Client client;
+
+    @BeforeEach
+    public void setUp() {
+        catalog = new Catalog();
+        client = new Client(1, "Mike");
+    }
+
+    private ru.inno.market.model.Order order(int id, OrderStatus status) {
+        ru.inno.market.model.Order order = new ru.inno.market.model.Order(id, client);
+        order.addItem(catalog.getItemInfo(1 + id % 12), 1 + id % 3);
+        order.addItem(catalog.getItemInfo(9));
+        order.moveTo(OrderStatus.PAID);
+        if (status != OrderStatus.PAID) order.moveTo(status);
+        return order;
+    }
+
+    private MarketService service(OrderArchive archive) {
+        return new MarketService(catalog, new StockReservations(catalog), new ClientRegistry(), archive);
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Заказы читаются из архива без потерь, записи переходят в новые сегменты.")
+    public void shouldAppendAndReadAcrossSegments() {
+        OrderArchive archive = OrderArchive.inMemory(1024);
+        List<ru.inno.market.model.Order> orders = new ArrayList<>();
+        for (int id = 0; id < 100; id++) {
+            ru.inno.market.model.Order order = order(id, id % 2 == 0 ? OrderStatus.SHIPPED : OrderStatus.CANCELLED);
+            archive.append(order);
+            orders.add(order);
+        }
+
+        assertEquals(100, archive.size());
+        for (ru.inno.market.model.Order order : orders) {
+            assertEquals(order, archive.read(order.getId()));
+        }
+        assertFalse(archive.contains(100));
+        assertNull(archive.read(100));
+        List<Integer> ids = new ArrayList<>();
+        archive.forEach(view -> ids.add(view.id()));
+        assertEquals(100, ids.size());
+        assertEquals(OrderStatus.CANCELLED, archive.view(1, new OrderView()).status());
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Файловый архив после перезапуска отдаёт те же заказы и дописывается дальше.")
+    public void shouldReopenArchiveFile() {
+        List<ru.inno.market.model.Order> orders = new ArrayList<>();
+        try (OrderArchive archive = OrderArchive.open(directory, 1024)) {
+            for (int id = 0; id < 50; id++) {
+                orders.add(order(id, OrderStatus.SHIPPED));
+                archive.append(orders.get(id));
+            }
+        }
+
+        try (OrderArchive archive = OrderArchive.open(directory, 1024)) {
+            assertEquals(50, archive.size());
+            for (ru.inno.market.model.Order order : orders) assertEquals(order, archive.read(order.getId()));
+            archive.append(order(50, OrderStatus.CANCELLED));
+        }
+
+        try (OrderArchive archive = OrderArchive.open(directory, 1024)) {
+            assertEquals(51, archive.size());
+            assertEquals(OrderStatus.CANCELLED, archive.read(50).getStatus());
+        }
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Оформленный и отгруженный заказ уходит в архив, отменённый возвращает товар на склад.")
+    public void shouldArchiveCompletedOrders() {
+        MarketService service = service(OrderArchive.inMemory());
+        Item item = catalog.getItemInfo(8);
+        int count = catalog.getCountForItem(item);
+        int shipped = service.createOrderFor(client);
+        int cancelled = service.createOrderFor(client);
+        service.addItemsToOrder(shipped, Map.of(8, 2));
+        service.addItemsToOrder(cancelled, Map.of(8, 1));
+        service.holdItemsForOrder(cancelled, Map.of(8, 3), 60_000);
+        assertEquals(count - 6, catalog.getCountForItem(item));
+
+        service.checkout(shipped);
+        assertEquals(OrderStatus.PAID, service.getOrderSnapshot(shipped).getStatus());
+        service.ship(shipped);
+        service.cancel(cancelled);
+
+        assertEquals(0, service.liveOrderCount());
+        assertEquals(2, service.getArchive().size());
+        assertEquals(count - 2, catalog.getCountForItem(item));
+        assertEquals(OrderStatus.SHIPPED, service.getOrderInfo(shipped).getStatus());
+        assertEquals(2, service.getOrderSnapshot(shipped).getQuantity(item));
+        assertEquals(OrderStatus.CANCELLED, service.getOrdersFor(client.getId()).get(1).getStatus());
+    }
+
+    @Test
+    @Order(4)
+    @Tag("Negative")
+    @DisplayName("Оплаченный и завершённый заказ нельзя изменить, переходы назад запрещены.")
+    public void shouldRejectChangesOfClosedOrders() {
+        MarketService service = service(OrderArchive.inMemory());
+        Item item = catalog.getItemInfo(8);
+        int orderId = service.createOrderFor(client);
+        assertThrows(NoSuchElementException.class, () -> service.ship(orderId));
+        service.checkout(orderId);
+        int count = catalog.getCountForItem(item);
+
+        assertThrows(NoSuchElementException.class, () -> service.addItemsToOrder(orderId, Map.of(8, 1)));
+        assertThrows(NoSuchElementException.class, () -> service.holdItemsForOrder(orderId, Map.of(8, 1), 60_000));
+        assertThrows(NoSuchElementException.class, () -> service.addItemToOrder(item, orderId));
+        assertThrows(NoSuchElementException.class, () -> service.checkout(orderId));
+        assertEquals(count, catalog.getCountForItem(item));
+        service.ship(orderId);
+        assertThrows(NoSuchElementException.class, () -> service.cancel(orderId));
+        assertThrows(NoSuchElementException.class, () -> service.addItemToOrder(item, orderId));
+    }
+
+    @Test
+    @Order(5)
+    @DisplayName("После перезапуска с журналом и файловым архивом завершённые заказы не возвращаются в память.")
+    public void shouldRecoverWithJournalAndArchive() {
+        int paid;
+        int shipped;
+        try (OrderArchive archive = OrderArchive.open(directory); OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService service = service(archive);
+            journal.recover(service);
+            service.attachJournal(journal);
+            shipped = service.createOrderFor(client);
+            service.addItemsToOrder(shipped, Map.of(8, 2));
+            service.checkout(shipped);
+            journal.snapshot(service);
+            paid = service.createOrderFor(client);
+            service.addItemsToOrder(paid, Map.of(10, 1));
+            service.checkout(paid);
+            service.ship(shipped);
+        }
+
+        try (OrderArchive archive = OrderArchive.open(directory); OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService service = service(archive);
+            journal.recover(service);
+            assertEquals(1, service.liveOrderCount());
+            assertEquals(1, archive.size());
+            assertEquals(OrderStatus.PAID, service.getOrderInfo(paid).getStatus());
+            assertEquals(OrderStatus.SHIPPED, service.getOrderInfo(shipped).getStatus());
+            assertEquals(2, service.getClients().orderCount(client.getId()));
+            assertEquals(paid + 1, service.createOrderFor(client));
+        }
+    }
+
+    @Test
+    @Order(6)
+    @Tag("Negative")
+    @DisplayName("Архив читается до первой повреждённой записи и дописывается с её места.")
+    public void shouldStopAtCorruptedRecord() throws IOException {
+        List<ru.inno.market.model.Order> orders = new ArrayList<>();
+        try (OrderArchive archive = OrderArchive.open(directory, 1024)) {
+            for (int id = 0; id < 50; id++) {
+                orders.add(order(id, OrderStatus.SHIPPED));
+                archive.append(orders.get(id));
+            }
+        }
+        try (FileChannel file = FileChannel.open(directory.resolve(OrderArchive.ARCHIVE_FILE), StandardOpenOption.WRITE)) {
+            file.write(ByteBuffer.wrap(new byte[]{0x55}), 600);      //Середина первого сегмента
+        }
+
+        int intact;
+        try (OrderArchive archive = OrderArchive.open(directory, 1024)) {
+            intact = archive.size();
+            assertTrue(intact > 0 && intact < 10, "Целых записей: " + intact);
+            for (int id = 0; id < intact; id++) assertEquals(orders.get(id), archive.read(id));
+            assertFalse(archive.contains(intact));
+            assertFalse(archive.contains(49));      //Следующие сегменты тоже отброшены
+            archive.append(order(99, OrderStatus.CANCELLED));
+        }
+
+        try (OrderArchive archive = OrderArchive.open(directory, 1024)) {
+            assertEquals(intact + 1, archive.size());
+            assertEquals(OrderStatus.CANCELLED, archive.read(99).getStatus());
+        }
+    }
+
+    @Test
+    @Order(7)
+    @Tag("Negative")
+    @DisplayName("Заказ, который не удалось записать в архив, остаётся в прежнем состоянии и в памяти.")
+    public void shouldKeepOrderWhenArchiveFails() {
+        MarketService service = service(OrderArchive.inMemory(64));
+        ChangeEventBus bus = new ChangeEventBus(16, ChangeEventBus.Backpressure.DROP);
+        service.attachEvents(bus);
+        int orderId = service.createOrderFor(client);
+        service.addItemsToOrder(orderId, Map.of(8, 2, 9, 1));
+        service.checkout(orderId);
+        ChangeEventBus.Subscription subscription = bus.subscribe((event, endOfBatch) -> fail("Событие " + event.getType()));
+
+        assertThrows(IllegalStateException.class, () -> service.ship(orderId));
+
+        assertEquals(OrderStatus.PAID, service.getOrderInfo(orderId).getStatus());
+        assertEquals(1, service.liveOrderCount());
+        assertEquals(0, service.getArchive().size());
+        assertEquals(0, subscription.drain(16));
+    }
+}
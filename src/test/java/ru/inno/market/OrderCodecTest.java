@@ -0,0 +1,118 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.Item;
+import ru.inno.market.model.OrderCodec;
+import ru.inno.market.model.OrderView;
+import ru.inno.market.model.PromoCodes;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты двоичного формата OrderCodec:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class OrderCodecTest {
+    private Catalog catalog;
+    private ru.inno.market.model.Order order;
+
+    @BeforeEach
+    public void setUp() {
+        catalog = new Catalog();
+        order = new ru.inno.market.model.Order(7, new Client(3, "Дима 😀"));
+        order.addItem(catalog.getItemInfo(1), 2);
+        order.addItem(catalog.getItemInfo(9));      //Кириллица в названии
+        order.addItem(catalog.getItemInfo(12), 3);
+        order.applyDiscountBps(PromoCodes.FIRST_ORDER.getDiscountBps());
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Заказ с корзиной записывается и читается обратно без потерь (буфер в куче и прямой).")
+    public void shouldRoundTripOrder() {
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024)}) {
+            int size = OrderCodec.writeOrder(order, buffer);
+            assertEquals(size, buffer.position());
+
+            buffer.flip();
+            ru.inno.market.model.Order copy = OrderCodec.readOrder(buffer);
+            assertEquals(size, buffer.position());
+            assertEquals(order.getId(), copy.getId());
+            assertEquals(order.getClient(), copy.getClient());
+            assertEquals(order.getItems(), copy.getItems());
+            assertEquals(order.getTotalKopecks(), copy.getTotalKopecks());
+            assertTrue(copy.isDiscountApplied());
+        }
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Поля заказа читаются из буфера через OrderView без сборки объектов.")
+    public void shouldReadOrdersThroughView() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        ru.inno.market.model.Order empty = new ru.inno.market.model.Order(8, new Client(4, null));
+        for (int i = 0; i < 100; i++) OrderCodec.writeOrder(i % 2 == 0 ? order : empty, buffer);
+
+        OrderView view = new OrderView();
+        int records = 0;
+        for (int at = 0; at < buffer.position(); at += view.size(), records++) {
+            view.wrap(buffer, at);
+            if (records % 2 == 0) {
+                assertEquals(7, view.id());
+                assertEquals(3, view.clientId());
+                assertEquals("Дима 😀", view.clientNickname());
+                assertEquals(3, view.lineCount());
+                assertEquals(9, view.lineItemId(1));
+                assertEquals("Microsoft 365 Персональный, электронный ключ", view.lineName(1));
+                assertEquals(Category.SOFTWARE, view.lineCategory(2));
+                assertEquals(3, view.lineQuantity(2));
+                assertEquals(catalog.getItemInfo(12).getPriceKopecks(), view.linePriceKopecks(2));
+                assertEquals(order.getTotalKopecks(), view.totalKopecks());
+                assertTrue(view.discountApplied());
+            } else {
+                assertEquals(8, view.id());
+                assertNull(view.clientNickname());
+                assertEquals(0, view.lineCount());
+                assertFalse(view.discountApplied());
+            }
+        }
+        assertEquals(100, records);
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Товар и клиент записываются и читаются обратно.")
+    public void shouldRoundTripItemAndClient() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        Item item = catalog.getItemInfo(11);
+        Item unnamed = Item.ofKopecks(20, null, null, 1);
+        OrderCodec.writeItem(item, buffer);
+        OrderCodec.writeItem(unnamed, buffer);
+        OrderCodec.writeClient(order.getClient(), buffer);
+
+        buffer.flip();
+        assertEquals(item, OrderCodec.readItem(buffer));
+        Item copy = OrderCodec.readItem(buffer);
+        assertEquals(unnamed, copy);
+        assertNull(copy.getCategory());
+        assertEquals(order.getClient(), OrderCodec.readClient(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    @Order(4)
+    @Tag("Negative")
+    @DisplayName("Проверить, что при нехватке места в буфере запись не начинается.")
+    public void shouldNotWritePartialOrder() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.putInt(42);
+
+        assertThrows(BufferOverflowException.class, () -> OrderCodec.writeOrder(order, buffer));
+        assertEquals(4, buffer.position());
+        assertEquals(0, buffer.getInt(4));
+    }
+}
@@ -0,0 +1,334 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.MarketService;
+import ru.inno.market.core.OrderJournal;
+import ru.inno.market.core.StockReservations;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.Item;
+import ru.inno.market.model.OrderStatus;
+import ru.inno.market.model.PromoCodes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты журнала заказов OrderJournal:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class OrderJournalTest {
+    @TempDir
+    Path directory;
+
+    private Client client;
+
+    @BeforeEach
+    public void setUp() {
+        client = new Client(1, "Mike");
+    }
+
+    //Запуск сервиса поверх журнала: восстановление состояния и подключение журнала
+    private MarketService start(OrderJournal journal) {
+        MarketService service = new MarketService(new Catalog());
+        journal.recover(service);
+        service.attachJournal(journal);
+        return service;
+    }
+
+    //Несколько заказов с товарами и скидкой. Возвращает id последнего заказа.
+    private int placeOrders(MarketService service) {
+        int orderId = 0;
+        for (int i = 0; i < 3; i++) {
+            orderId = service.createOrderFor(client);
+            service.addItemToOrder(service.getCatalog().getItemById(1 + i), orderId);
+            service.addItemsToOrder(orderId, Map.of(8, 2, 10, 3));
+        }
+        service.applyPromotions(orderId - 1, List.of("VDUD"));
+        service.applyDiscountForOrder(orderId, PromoCodes.HAPPY_HOUR);
+        service.addItemToOrder(service.getCatalog().getItemById(12), orderId);     //Товар после скидки
+        return orderId;
+    }
+
+    private void assertSameState(MarketService expected, MarketService actual, int lastOrderId) {
+        for (int id = 0; id <= lastOrderId; id++) {
+            assertEquals(expected.getOrderInfo(id), actual.getOrderInfo(id));
+        }
+        for (int itemId = 1; itemId <= 12; itemId++) {
+            Item item = expected.getCatalog().getItemInfo(itemId);
+            assertEquals(expected.getCatalog().getCountForItem(item), actual.getCatalog().getCountForItem(item));
+        }
+        //Нумерация заказов продолжается, а не начинается заново
+        assertEquals(lastOrderId + 1, actual.createOrderFor(client));
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Заказы и остатки восстанавливаются из журнала после перезапуска.")
+    public void shouldRecoverFromJournal() {
+        MarketService before;
+        int lastOrderId;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            before = start(journal);
+            lastOrderId = placeOrders(before);
+        }
+
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService after = start(journal);
+            assertSameState(before, after, lastOrderId);
+        }
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Восстановление из снимка и журнала, записанного после снимка.")
+    public void shouldRecoverFromSnapshotAndJournal() {
+        MarketService before;
+        int lastOrderId;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            before = start(journal);
+            placeOrders(before);
+            journal.snapshot(before);
+            lastOrderId = placeOrders(before);
+            journal.commit();
+        }
+
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService after = start(journal);
+            assertSameState(before, after, lastOrderId);
+        }
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Несколько перезапусков подряд со снимками не теряют и не дублируют изменения.")
+    public void shouldSurviveSeveralRestarts() {
+        MarketService service = null;
+        int lastOrderId = 0;
+        for (int restart = 0; restart < 3; restart++) {
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                service = start(journal);
+                lastOrderId = placeOrders(service);
+                if (restart == 1) journal.snapshot(service);
+            }
+        }
+
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            assertSameState(service, start(journal), lastOrderId);
+        }
+    }
+
+    @Test
+    @Order(4)
+    @Tag("Negative")
+    @DisplayName("Повреждённый хвост журнала отбрасывается, целые записи восстанавливаются.")
+    public void shouldIgnoreTornTail() throws IOException {
+        MarketService before;
+        int lastOrderId;
+        long end;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            before = start(journal);
+            lastOrderId = placeOrders(before);
+        }
+        //Имитация недописанной записи: правдоподобная длина и мусор вместо тела
+        try (FileChannel channel = FileChannel.open(directory.resolve("orders.journal.1"), StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            end = findEnd(channel);
+            channel.write(ByteBuffer.allocate(12).putInt(4).putInt(12345).putInt(-1).flip(), end);
+        }
+
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService after = start(journal);
+            assertSameState(before, after, lastOrderId);
+        }
+    }
+
+    @Test
+    @Order(5)
+    @Tag("Negative")
+    @DisplayName("Скидка и акции, отклонённые для оплаченного заказа, не попадают в журнал и не ломают восстановление.")
+    public void shouldNotJournalRejectedDiscount() {
+        MarketService before;
+        int orderId;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            before = start(journal);
+            orderId = before.createOrderFor(client);
+            before.addItemsToOrder(orderId, Map.of(8, 2));
+            before.checkout(orderId);
+            assertThrows(NoSuchElementException.class, () -> before.applyDiscountForOrder(orderId, PromoCodes.HAPPY_HOUR));
+            assertThrows(NoSuchElementException.class, () -> before.applyPromotions(orderId, List.of("VDUD")));
+        }
+
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService after = start(journal);
+            assertEquals(before.getOrderInfo(orderId), after.getOrderInfo(orderId));
+            assertFalse(after.getOrderInfo(orderId).isDiscountApplied());
+            assertEquals(OrderStatus.PAID, after.getOrderInfo(orderId).getStatus());
+        }
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("Цены и ассортимент из обновлений каталога переживают перезапуск - и через снимок, и через журнал.")
+    public void shouldRecoverCatalogUpdates() {
+        MarketService before;
+        int first;
+        int second;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            before = start(journal);
+            first = before.createOrderFor(client);
+            before.addItemsToOrder(first, Map.of(11, 1, 2, 1));
+            before.getCatalog().update()
+                    .price(2, 12_345)
+                    .put(Item.ofKopecks(40, "Новый товар", Category.SOFTWARE, 990), 7)
+                    .remove(11)
+                    .publish();
+            journal.snapshot(before);
+            before.getCatalog().update()
+                    .price(40, 555)
+                    .put(Item.ofKopecks(41, null, null, 10), 3)
+                    .remove(12)
+                    .publish();
+            second = before.createOrderFor(client);
+            before.addItemsToOrder(second, Map.of(40, 2, 2, 1));
+        }
+
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService after = start(journal);
+            Catalog expected = before.getCatalog();
+            Catalog actual = after.getCatalog();
+            assertEquals(expected.version().getNumber(), actual.version().getNumber());
+            for (int itemId = 0; itemId <= 41; itemId++) {
+                assertEquals(expected.version().contains(itemId), actual.version().contains(itemId), "товар " + itemId);
+                if (!expected.version().contains(itemId)) continue;
+                Item item = expected.getItemInfo(itemId);
+                assertEquals(item, actual.getItemInfo(itemId));
+                assertEquals(expected.getCountForItem(item), actual.getCountForItem(item));
+            }
+            //Первый заказ хранит товар, которого больше нет в каталоге
+            assertEquals(before.getOrderInfo(first), after.getOrderInfo(first));
+            assertEquals(before.getOrderInfo(second), after.getOrderInfo(second));
+            assertEquals(5, actual.getCountForItem(actual.getItemInfo(40)));
+        }
+    }
+
+    @Test
+    @Order(7)
+    @DisplayName("Строки с истёкшим резервом, убранные из заказа, не возвращаются после восстановления.")
+    public void shouldRecoverRemovedExpiredLines() {
+        AtomicLong clock = new AtomicLong();
+        MarketService before;
+        int orderId;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            Catalog catalog = new Catalog();
+            before = new MarketService(catalog, new StockReservations(catalog, 100, clock::get));
+            journal.recover(before);
+            before.attachJournal(journal);
+            orderId = before.createOrderFor(client);
+            before.addItemsToOrder(orderId, Map.of(8, 2));
+            before.holdItemsForOrder(orderId, Map.of(1, 1), 60_000);
+            clock.addAndGet(60_000);
+            assertThrows(NoSuchElementException.class, () -> before.checkout(orderId));
+        }
+
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService after = start(journal);
+            assertEquals(before.getOrderInfo(orderId), after.getOrderInfo(orderId));
+            assertEquals(1, after.getOrderInfo(orderId).getLineCount());
+        }
+    }
+
+    @Test
+    @Order(8)
+    @DisplayName("Незакрытые резервы после восстановления снимаются: товар возвращается на склад, строка убирается из заказа.")
+    public void shouldReleaseOpenHoldsOnRecovery() {
+        int orderId;
+        int snapshotOrderId;
+        int stockBefore;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService before = start(journal);
+            Item phone = before.getCatalog().getItemInfo(1);
+            stockBefore = before.getCatalog().getCountForItem(phone);
+            snapshotOrderId = before.createOrderFor(client);
+            before.holdItemsForOrder(snapshotOrderId, Map.of(1, 2), 60_000);
+            journal.snapshot(before);       //Резерв попадает в снимок
+            orderId = before.createOrderFor(client);
+            before.addItemsToOrder(orderId, Map.of(8, 1));
+            before.holdItemsForOrder(orderId, Map.of(1, 1), 60_000);
+            int paidId = before.createOrderFor(client);
+            before.holdItemsForOrder(paidId, Map.of(1, 3), 60_000);
+            before.checkout(paidId);        //Подтверждённый резерв остаётся списанным
+            stockBefore -= 3;
+            assertEquals(stockBefore - 3, before.getCatalog().getCountForItem(phone));
+        }
+
+        for (int restart = 0; restart < 2; restart++) {
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                MarketService after = start(journal);
+                Catalog catalog = after.getCatalog();
+                assertEquals(stockBefore, catalog.getCountForItem(catalog.getItemInfo(1)));
+                assertEquals(1, after.getOrderInfo(orderId).getLineCount());
+                assertEquals(0, after.getOrderInfo(snapshotOrderId).getLineCount());
+            }
+        }
+    }
+
+    @Test
+    @Order(9)
+    @DisplayName("Заказы, создаваемые во время снимков, не теряются; файлы учтённых поколений удаляются.")
+    public void shouldNotLoseChangesDuringSnapshot() throws Exception {
+        MarketService before;
+        int lastOrderId;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            before = start(journal);
+            MarketService service = before;
+            ExecutorService pool = Executors.newSingleThreadExecutor();
+            Future<Integer> writer = pool.submit(() -> {
+                int orderId = 0;
+                for (int i = 0; i < 2000; i++) orderId = service.createOrderFor(client);
+                return orderId;
+            });
+            for (int i = 0; i < 5; i++) journal.snapshot(before);
+            lastOrderId = writer.get(30, TimeUnit.SECONDS);
+            pool.shutdown();
+            journal.snapshot(before);
+            service.createOrderFor(client);
+            lastOrderId++;
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of("orders.journal.7", "orders.snapshot"), files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            MarketService after = start(journal);
+            assertSameState(before, after, lastOrderId);
+        }
+    }
+
+    //Конец записей журнала: первая нулевая длина
+    private long findEnd(FileChannel channel) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        long position = 16;
+        while (true) {
+            length.clear();
+            channel.read(length, position);
+            int bodyLength = length.getInt(0);
+            if (bodyLength == 0) return position;
+            position += 8 + bodyLength;
+        }
+    }
+}
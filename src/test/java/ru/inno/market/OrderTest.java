@@ -4,11 +4,18 @@ import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import ru.inno.market.core.Catalog;
+import ru.inno.market.model.Category;
 import ru.inno.market.model.Client;
 import ru.inno.market.model.Item;
 import ru.inno.market.model.PromoCodes;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -274,4 +281,99 @@ public class OrderTest {
         //Добавляем ещё одну единицу товара
         assertThrows(NoSuchElementException.class, () -> order.addItem(catalog.getItemById(itemRec.item().getId())));
     }
+
+    private static LongStream getRandomSeeds() {
+        return LongStream.range(0, 200);
+    }
+
+    @Order(18)
+    @ParameterizedTest(name = "seed = {0}")
+    @MethodSource("getRandomSeeds")
+    @DisplayName("Стоимость случайной корзины совпадает с эталонным расчётом на BigDecimal")
+    public void shouldMatchBigDecimalTotal(long seed) {
+        Random random = new Random(seed);
+        Category[] categories = Category.values();
+        PromoCodes promo = PromoCodes.values()[random.nextInt(PromoCodes.values().length)];
+        int lines = 1 + random.nextInt(50);
+        int discountAt = random.nextInt(lines + 1);     //Скидка может быть применена посреди наполнения корзины
+
+        BigDecimal expected = BigDecimal.ZERO;
+        for (int i = 0; i < lines; i++) {
+            if (i == discountAt) {
+                order.applyDiscountBps(promo.getDiscountBps());
+                expected = applyReferenceDiscount(expected, promo);
+            }
+            long price = 1 + random.nextInt(50_000_000);    //До 500 000 рублей с копейками
+            order.addItem(Item.ofKopecks(i, "Товар " + i, categories[i % categories.length], price));
+            expected = expected.add(BigDecimal.valueOf(price).movePointLeft(2));
+        }
+        if (discountAt == lines) {
+            order.applyDiscountBps(promo.getDiscountBps());
+            expected = applyReferenceDiscount(expected, promo);
+        }
+
+        assertEquals(expected.movePointRight(2).longValueExact(), order.getTotalKopecks());
+        assertEquals(expected.doubleValue(), order.getTotalPrice());
+    }
+
+    //Эталонный расчёт скидки: процент от суммы с округлением до копейки "половина вверх"
+    private static BigDecimal applyReferenceDiscount(BigDecimal total, PromoCodes promo) {
+        BigDecimal discount = total.multiply(BigDecimal.valueOf(promo.getDiscount()))
+                .setScale(2, RoundingMode.HALF_UP);
+        return total.subtract(discount);
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("Большая корзина: количество каждого товара учитывается верно")
+    public void shouldCountItemsInLargeCart() {
+        int lines = 40;     //Больше порога линейного поиска в корзине
+        for (int round = 1; round <= 3; round++) {
+            for (int i = 0; i < lines; i++) {
+                order.addItem(Item.ofKopecks(i, "Товар " + i, Category.SOFTWARE, 100L * (i + 1)), round);
+            }
+        }
+
+        assertEquals(lines, order.getCart().size());
+        for (int i = 0; i < lines; i++) {
+            assertEquals(6, order.getCart().get(Item.ofKopecks(i, "Товар " + i, Category.SOFTWARE, 100L * (i + 1))));
+        }
+        //Товар с тем же id, но другой ценой - это другой товар
+        assertFalse(order.getCart().containsKey(Item.ofKopecks(1, "Товар 1", Category.SOFTWARE, 1)));
+    }
+
+    @Test
+    @Order(20)
+    @Tag("Negative")
+    @DisplayName("Корзину нельзя изменить в обход заказа")
+    public void shouldNotModifyCartDirectly() {
+        ItemAndItemCountRecord ir = getGoodItem(0);
+        order.addItem(ir.item());
+
+        assertThrows(UnsupportedOperationException.class, () -> order.getCart().put(ir.item(), 100));
+        assertThrows(UnsupportedOperationException.class, () -> order.getItems().remove(ir.item()));
+        assertEquals(1, order.getCart().get(ir.item()));
+    }
+
+    @Test
+    @Order(21)
+    @DisplayName("Корзина, полученная из заказа, не меняется вместе с заказом и обходится без блокировки")
+    public void shouldReturnCartSnapshot() {
+        ItemAndItemCountRecord ir1 = getGoodItem(0);
+        ItemAndItemCountRecord ir2 = getGoodItem(ir1.item().getId());
+        order.addItem(ir1.item(), 2);
+        Map<Item, Integer> cart = order.getItems();
+
+        order.addItem(ir2.item());
+        order.addItem(ir1.item());
+
+        assertEquals(Map.of(ir1.item(), 2), cart);
+        assertEquals(Map.of(ir1.item(), 3, ir2.item(), 1), order.getCart());
+        assertEquals(List.of(ir1.item(), ir2.item()), List.copyOf(order.getCart().keySet()));     //Порядок строк
+        ru.inno.market.model.Order copy = new ru.inno.market.model.Order(orderId, client);
+        copy.addItem(ir1.item(), 3);
+        copy.addItem(ir2.item());
+        assertEquals(order, copy);
+        assertEquals(order.hashCode(), copy.hashCode());
+    }
 }
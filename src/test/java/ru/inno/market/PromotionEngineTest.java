@@ -0,0 +1,129 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.PromotionEngine;
+import ru.inno.market.model.Category;
+import ru.inno.market.model.Client;
+import ru.inno.market.model.OrderSnapshot;
+import ru.inno.market.model.Promotion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты движка акций PromotionEngine:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class PromotionEngineTest {
+    private Catalog catalog;
+    private PromotionEngine engine;
+    private ru.inno.market.model.Order order;
+
+    @BeforeEach
+    public void setUp() {
+        catalog = new Catalog();
+        engine = new PromotionEngine();
+        order = new ru.inno.market.model.Order(1, new Client(1, "Dima"));
+        order.addItem(catalog.getItemInfo(1));         //Apple iPhone SE, 9 799 000 коп.
+        order.addItem(catalog.getItemInfo(8), 3);      //Microsoft Windows 11 Pro, 3 x 520 000 коп.
+    }
+
+    private long discount(OrderSnapshot snapshot, String... codes) {
+        return engine.discountKopecks(snapshot, List.of(codes), true);
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Скидка на категорию действует только на товары этой категории.")
+    public void shouldApplyCategoryScope() {
+        engine.add(Promotion.percent("software", 1000).inCategory(Category.SOFTWARE));
+
+        assertEquals(156_000, discount(order.snapshot()));
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Ступени скидки выбираются по количеству товара в строке.")
+    public void shouldApplyQuantityTiers() {
+        engine.add(Promotion.percent("bulk", 0).forItem(8).withTier(3, 1500).withTier(5, 2500));
+
+        assertEquals(234_000, discount(order.snapshot()));
+        order.addItem(catalog.getItemInfo(8), 2);
+        assertEquals(650_000, discount(order.snapshot()));
+        order.addItem(catalog.getItemInfo(9));
+        assertEquals(650_000, discount(order.snapshot()));
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Накопительные скидки складываются, старшая ненакопительная действует одна.")
+    public void shouldResolveStackingByPriority() {
+        engine.add(Promotion.percent("base", 500).withPriority(1).stackable());
+        engine.add(Promotion.percent("soft", 1000).withCode("SOFT").inCategory(Category.SOFTWARE).withPriority(2).stackable());
+        engine.add(Promotion.percent("vip", 3000).withCode("VIP").withPriority(5));
+        engine.add(Promotion.percent("low", 5000).withCode("LOW"));
+        OrderSnapshot snapshot = order.snapshot();
+
+        assertEquals(489_950 + 234_000, discount(snapshot, "SOFT", "LOW"));     //5% на телефон, 10% + 5% на софт
+        assertEquals(2_939_700 + 468_000, discount(snapshot, "VIP", "SOFT"));   //30% на всё
+        assertEquals(489_950 + 78_000, discount(snapshot));
+
+        assertTrue(engine.remove("base"));
+        assertEquals(4_899_500 + 780_000, discount(snapshot, "LOW"));
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Правило с тысячами соседей находится по индексу товара и категории.")
+    public void shouldIndexThousandsOfRules() {
+        List<Promotion> promotions = new ArrayList<>();
+        for (int id = 1_000; id < 4_000; id++) {
+            promotions.add(Promotion.percent("item-" + id, 9000).forItem(id));
+            promotions.add(Promotion.percent("code-" + id, 9000).withCode("CODE" + id).inCategory(Category.SOFTWARE));
+        }
+        promotions.add(Promotion.percent("windows", 2000).forItem(8).inCategory(Category.SOFTWARE));
+        engine.addAll(promotions);
+
+        assertEquals(6_001, engine.size());
+        assertEquals(312_000, discount(order.snapshot()));
+        assertEquals(1_404_000, discount(order.snapshot(), "CODE1234"));     //Равный приоритет - старше добавленное раньше
+    }
+
+    @Test
+    @Order(5)
+    @Tag("Negative")
+    @DisplayName("Проверить отказ на неизвестный промокод, повтор имени правила и правило только для первого заказа.")
+    public void shouldRejectInvalidInput() {
+        engine.add(Promotion.percent("first", 2000).withCode("FIRST").firstOrderOnly());
+
+        assertThrows(NoSuchElementException.class, () -> discount(order.snapshot(), "NO_SUCH_CODE"));
+        assertThrows(NoSuchElementException.class, () -> engine.add(Promotion.percent("first", 1000)));
+        assertThrows(NoSuchElementException.class, () -> Promotion.percent("bad", 10_001));
+        assertEquals(0, engine.discountKopecks(order.snapshot(), List.of("FIRST"), false));
+        assertEquals(2_271_800, engine.discountKopecks(order.snapshot(), List.of("FIRST"), true));
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("Движок сообщает только промокоды, давшие скидку, а не все предъявленные.")
+    public void shouldReportUsedCodes() {
+        engine.add(Promotion.percent("base", 500).withPriority(1).stackable());
+        engine.add(Promotion.percent("soft", 1000).withCode("SOFT").inCategory(Category.SOFTWARE).withPriority(2).stackable());
+        engine.add(Promotion.percent("vip", 3000).withCode("VIP").withPriority(5));
+        engine.add(Promotion.percent("low", 5000).withCode("LOW"));
+        engine.add(Promotion.percent("first", 2000).withCode("FIRST").firstOrderOnly());
+        OrderSnapshot snapshot = order.snapshot();
+        List<String> used = new ArrayList<>();
+
+        engine.discountKopecks(snapshot, List.of("SOFT", "LOW"), true, used);
+        assertEquals(List.of("SOFT"), used);
+        used.clear();
+        engine.discountKopecks(snapshot, List.of("VIP", "SOFT"), true, used);
+        assertEquals(List.of("VIP"), used);
+        used.clear();
+        engine.discountKopecks(snapshot, List.of("FIRST"), false, used);
+        assertEquals(List.of(), used);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.inno.market;
+
+import org.junit.jupiter.api.*;
+import ru.inno.market.core.Catalog;
+import ru.inno.market.core.StockReservations;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тесты временных резервов StockReservations:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class StockReservationsTest {
+    private static final long TICK = 100;
+
+    private Catalog catalog;
+    private AtomicLong clock;       //Управляемые часы, мс
+    private StockReservations reservations;
+    int itemId = 10;                //"Яндекс Плюс на 12 месяцев", 1500 шт.
+
+    @BeforeEach
+    public void setUp() {
+        catalog = new Catalog();
+        clock = new AtomicLong(1_000_000);
+        reservations = new StockReservations(catalog, TICK, clock::get);
+    }
+
+    private int stock() {
+        return catalog.getCountForItem(catalog.getItemInfo(itemId));
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Неподтверждённый резерв по истечении срока возвращает товар на склад.")
+    public void shouldReturnExpiredHoldToStock() {
+        int count = stock();
+        long hold = reservations.hold(itemId, 5, 1_000);
+        assertEquals(count - 5, stock());
+
+        clock.addAndGet(900);
+        assertEquals(0, reservations.expire());
+        assertEquals(count - 5, stock());
+
+        clock.addAndGet(100);
+        assertEquals(1, reservations.expire());
+        assertEquals(count, stock());
+        assertEquals(0, reservations.activeHolds());
+        assertFalse(reservations.confirm(hold));
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Подтверждённый резерв оставляет товар списанным, снятый - возвращает на склад.")
+    public void shouldConfirmAndCancelHolds() {
+        int count = stock();
+        long confirmed = reservations.hold(itemId, 3, 1_000);
+        long cancelled = reservations.hold(itemId, 2, 1_000);
+
+        assertTrue(reservations.confirm(confirmed));
+        assertTrue(reservations.cancel(cancelled));
+        assertFalse(reservations.cancel(cancelled));
+        clock.addAndGet(10_000);
+        assertEquals(0, reservations.expire());
+        assertEquals(count - 3, stock());
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Набор резервов подтверждается целиком или снимается целиком.")
+    public void shouldConfirmAllOrNothing() {
+        int count = stock();
+        int count7 = catalog.getCountForItem(catalog.getItemInfo(7));
+        long[] holds = reservations.holdAll(Map.of(itemId, 4), 500);
+        long[] longHolds = reservations.holdAll(Map.of(7, 1), 5_000);
+        assertNull(reservations.holdAll(Map.of(7, 1_000), 5_000));     //Столько нет на складе
+
+        clock.addAndGet(1_000);
+        assertFalse(reservations.confirmAll(new long[]{holds[0], longHolds[0]}));
+        assertEquals(count, stock());
+        assertEquals(count7, catalog.getCountForItem(catalog.getItemInfo(7)));
+        assertEquals(0, reservations.activeHolds());
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Каждый из множества резервов со сроками от тика до суток истекает точно в свой тик.")
+    public void shouldExpireEachHoldOnItsTick() {
+        catalog.addItem(catalog.getItemInfo(itemId), 1_000_000);
+        SplittableRandom random = new SplittableRandom(7);
+        int holds = 20_000;
+        long[] expiresAt = new long[holds];
+        long start = clock.get();
+        for (int i = 0; i < holds; i++) {
+            //Сроки на всех уровнях колеса: от 1 тика до суток
+            long ttl = random.nextInt(4) == 0 ? 1 + random.nextLong(86_400_000) : 1 + random.nextLong(100_000);
+            assertTrue(reservations.hold(itemId, 1, ttl) >= 0);
+            expiresAt[i] = start / TICK + (ttl + TICK - 1) / TICK;
+        }
+        Arrays.sort(expiresAt);
+
+        int expired = 0;
+        int expected = 0;
+        for (long tick = start / TICK; expired < holds; tick += 1 + random.nextInt(3_000)) {
+            clock.set(tick * TICK);
+            expired += reservations.expire();
+            while (expected < holds && expiresAt[expected] <= tick) expected++;
+            assertEquals(expected, expired);
+        }
+        assertEquals(1_000_000, stock());
+    }
+
+    @Test
+    @Order(5)
+    @Tag("Negative")
+    @DisplayName("Проверить, что не создаются резервы на некорректный срок и отсутствующий товар.")
+    public void shouldNotHoldWithWrongArguments() {
+        assertThrows(NoSuchElementException.class, () -> reservations.hold(itemId, 1, 0));
+        assertThrows(NoSuchElementException.class, () -> reservations.hold(100, 1, 1_000));
+        assertThrows(NoSuchElementException.class, () -> reservations.hold(itemId, 0, 1_000));
+        assertEquals(-1, reservations.hold(itemId, 1_000_000, 1_000));
+        assertFalse(reservations.confirm(12345L));
+    }
+}
@@ -0,0 +1,92 @@
+package ru.inno.market.core;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Тест в пакете core: счётчики конкуренции и шарды StockTable снаружи пакета не видны
+@DisplayName("Тесты таблицы остатков StockTable:")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class StockTableTest {
+    private StockTable stock;
+
+    @BeforeEach
+    public void setUp() {
+        stock = new StockTable(4096, 4);
+    }
+
+    //Неудачи CAS по товару, пока он не разделится; окно подсчёта может смениться посередине, поэтому с запасом
+    private void contendUntilSplit(int id) {
+        for (int i = 0; i < StockTable.HOT_THRESHOLD * 10 && !stock.isSplit(id); i++) stock.contended(id);
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Товар, набравший порог неудачных CAS, делится на шарды автоматически, остаток сохраняется.")
+    public void shouldSplitHotItemAutomatically() {
+        stock.set(5, 1000);
+
+        contendUntilSplit(5);
+
+        assertTrue(stock.isSplit(5));
+        assertEquals(1000, stock.get(5));
+        assertTrue(stock.tryReserve(5, 1000));
+        assertFalse(stock.tryReserve(5, 1));
+    }
+
+    @Test
+    @Order(2)
+    @Tag("Negative")
+    @DisplayName("Неудачи разных товаров с общим слотом счётчика не складываются.")
+    public void shouldNotSplitItemsSharingContentionSlot() {
+        int other = 5 + 1024;
+        stock.set(5, 10);
+        stock.set(other, 10);
+
+        for (int i = 0; i < StockTable.HOT_THRESHOLD * 10; i++) {
+            stock.contended(5);
+            stock.contended(other);
+        }
+
+        assertFalse(stock.isSplit(5));
+        assertFalse(stock.isSplit(other));
+        contendUntilSplit(other);
+        assertTrue(stock.isSplit(other));
+        assertFalse(stock.isSplit(5));
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Пока шарды собираются и раскладываются заново, остаток не читается нулём.")
+    public void shouldNotReadZeroWhileCollecting() throws Exception {
+        stock.set(7, 1000);
+        stock.split(7);
+        int threads = 3;
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                //Больше доли любого шарда - списание идёт через сбор всех шардов
+                for (int i = 0; i < 20_000; i++) {
+                    if (stock.tryReserve(7, 300)) stock.release(7, 300);
+                }
+                return null;
+            }));
+        }
+        Future<?> reader = pool.submit(() -> {
+            while (done.getCount() > 0) assertTrue(stock.get(7) >= 1000 - 300 * threads);
+            return null;
+        });
+        for (int t = 0; t < threads; t++) futures.get(t).get(30, TimeUnit.SECONDS);
+        done.countDown();
+        reader.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(1000, stock.get(7));
+    }
+}